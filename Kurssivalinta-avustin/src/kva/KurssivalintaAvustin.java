@@ -23,6 +23,7 @@ import javafx.scene.control.ButtonType;
 import javafx.stage.Stage;
 import kva.logiikka.Sovelluslogiikka;
 import kva.logiikka.lataus.KurssitarjottimenLataaja;
+import kva.logiikka.lataus.Tilannekuva;
 import kva.logiikka.lataus.TestiLataaja;//Tätä ei poisteta, sillä sitä voi tarvita testaamiseen.
 import kva.logiikka.lataus.WebEngineLataaja;
 import kva.ui.Kayttoliittyma;
@@ -35,7 +36,9 @@ import kva.ui.Kayttoliittyma;
  * {@link kva.logiikka.lataus.KurssitarjottimenLataaja} ja käynnistää sovelluksen 
  * {@code Kayttoliittyman} metodilla {@code luo}.
  * <p>
- * Tämänhetkinen toteutus käyttää {@code KurssitarjottimenLataajana} {@link kva.logiikka.lataus.TestiLataaja}a.
+ * Tämänhetkinen toteutus käyttää {@code KurssitarjottimenLataajana} {@link kva.logiikka.lataus.WebEngineLataaja}a. 
+ * Viimeksi ladatusta {@code Kurssitarjottimesta} tallennetaan {@link kva.logiikka.lataus.Tilannekuva} 
+ * sen oletussijaintiin.
  *
  * @author Väinö Viinikka
  * @since Kurssivalinta-avustin 1.0
@@ -48,6 +51,7 @@ public class KurssivalintaAvustin extends Application {
         //KurssitarjottimenLataaja lataaja = new TestiLataaja();
         
         Sovelluslogiikka logiikka = new Sovelluslogiikka(lataaja);
+        logiikka.setTilannekuvanSijainti(Tilannekuva.oletusSijainti());
         Kayttoliittyma kayttis = new Kayttoliittyma(logiikka);
         kayttis.luo(primaryStage);
         
@@ -17,17 +17,21 @@
 package kva.logiikka;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableSet;
 import javafx.collections.SetChangeListener;
 import kva.logiikka.lataus.LuotavaRyhma;
+import kva.logiikka.tapahtumat.ValintaJulkaisija;
+import kva.logiikka.tapahtumat.ValintaMuutos;
+import kva.logiikka.tapahtumat.ValintaTapahtuma.TapahtumaTyyppi;
 
 /**Säiliöluokka kurssitarjottimen {@code Ryhmille}.
  * <p>
@@ -40,21 +44,81 @@ import kva.logiikka.lataus.LuotavaRyhma;
  * joilla on samat {@code Moduulit}, eikä useampaa ryhmaa, jotka sijaitsevat samassa 
  * palkissa. Kun käyttäjä valitsee {@code Ryhman}, mahdollisten päällekkäisten {@code Ryhmien} 
  * valinta poistetaan.
+ * <p>
+ * Päällekkäisyydet tarkistetaan bittijoukoilla: jokainen palkki saa luomisen yhteydessä
+ * indeksin, ja jokaisella {@code Ryhmalla} on bittijoukko palkeistaan. {@code Kurssitarjotin}
+ * pitää lisäksi yllä valittujen {@code Ryhmien} varaamien palkkien bittijoukkoa, joten
+ * päällekkäisyyden tarkistus ei riipu {@code Ryhmien} määrästä.
+ * <p>
+ * {@code Kurssitarjottimen} luomisen yhteydessä samaa palkkia tai periodia kuvaavat
+ * tunnisteet korvataan yhdellä yhteisellä oliolla, ja palkit sekä {@code Moduulit}
+ * numeroidaan juoksevasti, jotta valintoja voidaan käsitellä taulukoilla.
+ * <p>
+ * {@code Kurssitarjotin} kuuntelee valittujen {@code Ryhmien} joukkoa yhdellä kuuntelijalla, 
+ * joka välittää {@link kva.logiikka.tapahtumat.ValintaTapahtuma}t vain muutoksen 
+ * kohteena olevalle {@code Ryhmalle} ja sen kanssa saman {@code Moduulin Ryhmille}. 
+ * Yhden valinnan käsittely ei siis riipu {@code Kurssitarjottimen} koosta.
+ * <p>
+ * {@code Kurssitarjottimen} rakenne ei muutu luomisen jälkeen. Metodit {@link #getKaikkiRyhmat()} 
+ * ja {@link #getMahdollisetPalkit()} palauttavat muokattavat kopiot, mutta toistuviin 
+ * läpikäynteihin on tarkoitettu metodit {@link #getRyhmienNakyma()}, {@link #getPalkkienNakyma()} 
+ * ja {@link #getPeriodienNakyma()}, jotka palauttavat joka kerta saman muuttumattoman 
+ * näkymän kopioimatta mitään.
+ * <p>
+ * Useita valintoja voi muuttaa kerralla metodilla {@link #muutaValintoja(java.util.Collection, java.util.Collection)}, 
+ * joka ratkaisee päällekkäisyydet kerran ja välittää {@code ValintaTapahtumat} vasta, 
+ * kun kaikki muutokset on tehty.
+ * <p>
+ * Valinnoista pidetään yllä myös muuttumatonta {@link kva.logiikka.ValintaTila}a, 
+ * jonka saa metodilla {@link #getValintaTila()}. Tallennetun tilan voi palauttaa 
+ * metodilla {@link #setValintaTila(kva.logiikka.ValintaTila)}, joka tekee vain 
+ * tilojen väliset muutokset.
+ * <p>
+ * Valintojen muutokset tallennetaan rajallisen pituiseen historiaan, josta niitä 
+ * voi kumota metodilla {@link #kumoa()} ja tehdä uudelleen metodilla {@link #teeUudelleen()}. 
+ * Samat muutokset julkaistaan {@link #getJulkaisija()}-metodin palauttaman 
+ * {@link kva.logiikka.tapahtumat.ValintaJulkaisija}n tilaajille.
  *
  * @author Väinö Viinikka
  * @since Kurssivalinta-avustin 1.0
  */
 public class Kurssitarjotin {
     
+    /**Kumottavissa olevien muutosten oletusarvoinen enimmäismäärä.
+     * 
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public static final int HISTORIAN_OLETUSPITUUS = 100;
+    
     private Set<Ryhma> ryhmat;
     private Set<Moduuli> moduulit;
     private List<PalkinTunniste> mahdollisetPalkit;
+    private final List<PeriodinTunniste> mahdollisetPeriodit;
+    private final HashMap<PalkinTunniste, List<Ryhma>> palkkienRyhmat;
+    private final List<List<Ryhma>> moduulienRyhmat;
+    private final HashMap<Moduuli, Integer> moduulienIndeksit;
+    private int[] moduulienValinnat;
+    private Ryhma[] moduulienValitut;
+    private int[] palkkienVaraukset;
+    private final BitSet varatutPalkit;
+    private final Ryhma[] ryhmatIndekseittain;
+    private ValintaTila valintaTila = ValintaTila.TYHJA;
+    private final ValintaHistoria historia = new ValintaHistoria(HISTORIAN_OLETUSPITUUS);
+    private int kasittelyssa;
+    private final ValintaJulkaisija julkaisija = new ValintaJulkaisija();
+    private long muutoksia;
     private final ObservableSet<Ryhma> valitutRyhmat;
+    private final Set<Ryhma> ryhmienNakyma;
+    private final List<PalkinTunniste> palkkienNakyma;
+    private final List<PeriodinTunniste> periodienNakyma;
+    private boolean erassa;
+    private final long rakennusaika;
     
     /**Luo uuden {@code Kurssitarjottimen}.
      * <p>
      * Konstruktori on tarkoitettu ensisijaisesti kutsuttavaksi {@link kva.logiikka.Sovelluslogiikka}sta, 
-     * mutta sen luomiselle muualla ei ole periaatteellista estettä.
+     * mutta sen luomiselle muualla ei ole periaatteellista estettä. Konstruktori 
+     * käyttää {@link kva.logiikka.KurssitarjotinRakentaja}a.
      * 
      * @param ryhmat lista {@link kva.logiikka.lataus.LuotavaRyhma}-olioista, joiden 
      *        perusteella {@code Kurssitarjotin} luo {@code Ryhmansa}
@@ -69,51 +133,560 @@ public class Kurssitarjotin {
      *         {@code null} tai sisältää {@code null}-arvon
      */
     public Kurssitarjotin(Collection<LuotavaRyhma> ryhmat, Collection<Moduuli> moduulit, List<PeriodinTunniste> periodienJarjestys) {
+        this(new KurssitarjotinRakentaja()
+                .lisaaRyhmat(ryhmat)
+                .lisaaModuulit(moduulit)
+                .setPeriodienJarjestys(periodienJarjestys));
+    }
+    
+    /**Luo uuden {@code Kurssitarjottimen} {@code KurssitarjotinRakentajan} tietojen perusteella.
+     * 
+     * @param rakentaja rakentaja, jolle {@code Kurssitarjottimen} tiedot on annettu
+     * @see kva.logiikka.KurssitarjotinRakentaja#rakenna()
+     */
+    Kurssitarjotin(KurssitarjotinRakentaja rakentaja) {
+        long alku = System.nanoTime();
+        rakentaja.valmistele();
         this.ryhmat = new HashSet<>();
-        this.moduulit = new HashSet<>(moduulit);
-        this.mahdollisetPalkit = new ArrayList<>();
+        this.moduulit = new HashSet<>(rakentaja.getModuulit());
+        this.mahdollisetPalkit = new ArrayList<>(rakentaja.getPalkit());
+        this.mahdollisetPeriodit = new ArrayList<>(rakentaja.getPeriodit());
+        this.palkkienRyhmat = new HashMap<>();
+        this.moduulienRyhmat = new ArrayList<>();
+        this.moduulienIndeksit = rakentaja.getModuulienIndeksit();
+        this.varatutPalkit = new BitSet();
+        this.ryhmatIndekseittain = new Ryhma[rakentaja.getRyhmat().size()];
         this.valitutRyhmat = FXCollections.observableSet(new HashSet<>());
+        this.ryhmienNakyma = Collections.unmodifiableSet(this.ryhmat);
+        this.palkkienNakyma = Collections.unmodifiableList(mahdollisetPalkit);
+        this.periodienNakyma = Collections.unmodifiableList(mahdollisetPeriodit);
         
         valitutRyhmat.addListener((SetChangeListener.Change<? extends Ryhma> change) -> {
-            if(change.wasAdded()) {
-                HashSet<Ryhma> poistettavat = new HashSet<>();
-                valitutRyhmat.stream()
-                        .filter((ryhma) -> {
-                            if(ryhma.getModuuli().equals(change.getElementAdded().getModuuli())) {
-                                return true;
-                            }
-                            return change.getElementAdded().getSijainnit().stream()
-                                    .anyMatch((tunniste) -> (ryhma.getSijainnit().contains(tunniste)));
-                        })
-                        .filter((ryhma) -> !change.getElementAdded().equals(ryhma))
-                        .forEach((ryhma) -> poistettavat.add(ryhma));
-                valitutRyhmat.removeAll(poistettavat);
+            kasittelyssa++;
+            try {
+                kasitteleMuutos(change);
+            } finally {
+                kasittelyssa--;
+            }
+            if(kasittelyssa == 0 && !erassa) {
+                julkaise(historia.paata());
             }
         });
         
-        HashMap<String, Moduuli> etsintaaVarten = new HashMap<>();
-        moduulit.forEach((moduuli) -> etsintaaVarten.put(moduuli.getKoodi(), moduuli));
+        rakentaja.getModuulit().forEach((moduuli) -> moduulienRyhmat.add(new ArrayList<>()));
+        HashMap<PalkinTunniste, Integer> palkkienIndeksit = new HashMap<>();
+        List<List<Ryhma>> palkeittain = new ArrayList<>(mahdollisetPalkit.size());
+        for(int i = 0; i < mahdollisetPalkit.size(); i++) {
+            palkkienIndeksit.put(mahdollisetPalkit.get(i), i);
+            palkeittain.add(new ArrayList<>());
+        }
         
-        ryhmat.forEach((ryhmanPohja) -> {
-            if(!etsintaaVarten.containsKey(ryhmanPohja.getKurssikoodi())) {
-                throw new IllegalArgumentException("Kurssikoodille \"" + ryhmanPohja.getKurssikoodi() + "\" ei löydy Moduulia.");
-            }
-            this.ryhmat.add(new Ryhma(ryhmanPohja, etsintaaVarten.get(ryhmanPohja.getKurssikoodi()), this));
-            ryhmanPohja.getSijainnit().stream()
-                    .filter((palkki) -> !mahdollisetPalkit.contains(palkki))
-                    .forEach((palkki) -> mahdollisetPalkit.add(palkki));
-        });
+        List<LuotavaRyhma> pohjat = rakentaja.getRyhmat();
+        for(int i = 0; i < pohjat.size(); i++) {
+            Moduuli moduuli = rakentaja.getRyhmanModuuli(i);
+            Ryhma ryhma = new Ryhma(pohjat.get(i), moduuli, this);
+            ryhma.setIndeksi(i);
+            ryhma.setModuulinIndeksi(moduulienIndeksit.get(moduuli));
+            ryhma.yhdistaSijainnit(rakentaja.getRyhmanSijainnit(i));
+            BitSet palkit = new BitSet(mahdollisetPalkit.size());
+            for(PalkinTunniste palkki : ryhma.getSijaintijoukko()) {
+                int indeksi = palkkienIndeksit.get(palkki);
+                palkit.set(indeksi);
+                palkeittain.get(indeksi).add(ryhma);
+            }
+            ryhma.setPalkit(palkit);
+            this.ryhmat.add(ryhma);
+            ryhmatIndekseittain[i] = ryhma;
+            moduulienRyhmat.get(ryhma.getModuulinIndeksi()).add(ryhma);
+        }
+        for(int i = 0; i < mahdollisetPalkit.size(); i++) {
+            palkkienRyhmat.put(mahdollisetPalkit.get(i), Collections.unmodifiableList(palkeittain.get(i)));
+        }
         
-        Comparator<PalkinTunniste> vertailija = Comparator.comparing((sijainti) -> {
-            PeriodinTunniste kokeilu = new PeriodinTunniste(sijainti.getOppilaitos(), sijainti.getPeriodi());
-            int tulos = periodienJarjestys.indexOf(kokeilu);
-            if(tulos == -1) {
-                throw new IllegalArgumentException("Periodin " + kokeilu.toString() + " paikkaa ei kerrottu.");
+        palkkienVaraukset = new int[mahdollisetPalkit.size()];
+        moduulienValinnat = new int[moduulienRyhmat.size()];
+        moduulienValitut = new Ryhma[moduulienRyhmat.size()];
+        rakennusaika = System.nanoTime() - alku;
+    }
+    
+    /**Palauttaa, kuinka kauan {@code Kurssitarjottimen} luominen kesti.
+     * <p>
+     * Aika mitataan kummallakin konstruktorilla luoduille {@code Kurssitarjottimille}, 
+     * ja se sisältää palkkien yhdistämisen, {@code Moduulien} numeroinnin sekä 
+     * {@code Ryhmien} luomisen.
+     * 
+     * @return luomisen kesto nanosekunteina
+     * @see kva.logiikka.KurssitarjotinRakentaja#getRakennusaika()
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public long getRakennusaika() {
+        return rakennusaika;
+    }
+    
+    /**Päivittää valintojen kirjanpidon, poistaa päällekkäiset valinnat ja välittää 
+     * {@code ValintaTapahtumat}, kun valittujen {@code Ryhmien} joukko muuttuu.
+     * 
+     * @param change valittujen {@code Ryhmien} joukon muutos
+     */
+    private void kasitteleMuutos(SetChangeListener.Change<? extends Ryhma> change) {
+        if(change.wasAdded()) {
+            Ryhma lisatty = change.getElementAdded();
+            valintaTila = valintaTila.lisaa(lisatty.getIndeksi());
+            historia.kirjaa(lisatty.getIndeksi(), true);
+            varaa(lisatty, 1);
+            moduulienValinnat[lisatty.getModuulinIndeksi()]++;
+            moduulienValitut[lisatty.getModuulinIndeksi()] = lisatty;
+            if(erassa) {
+                return;
             }
-            return tulos;
-        });
-        Comparator<PalkinTunniste> vertailija2 = vertailija.thenComparing(PalkinTunniste::getJarjestysluku);
-        mahdollisetPalkit.sort(vertailija2);
+            HashSet<Ryhma> poistettavat = new HashSet<>(getPaallekkaisetValinnat(lisatty));
+            if(moduulienValinnat[lisatty.getModuulinIndeksi()] > 1) {
+                for(Ryhma ryhma : moduulienRyhmat.get(lisatty.getModuulinIndeksi())) {
+                    if(ryhma != lisatty && valitutRyhmat.contains(ryhma)) {
+                        poistettavat.add(ryhma);
+                    }
+                }
+            }
+            valitutRyhmat.removeAll(poistettavat);
+            ilmoita(lisatty, TapahtumaTyyppi.VALITTU, TapahtumaTyyppi.VALITTU_MUUALTA);
+        } else {
+            valintaTila = valintaTila.poista(change.getElementRemoved().getIndeksi());
+            historia.kirjaa(change.getElementRemoved().getIndeksi(), false);
+            varaa(change.getElementRemoved(), -1);
+            poistaModuulinValinta(change.getElementRemoved());
+            if(erassa) {
+                return;
+            }
+            ilmoita(change.getElementRemoved(), TapahtumaTyyppi.VALINTA_POISTETTU, TapahtumaTyyppi.VALINTA_POISTETTU_MUUALTA);
+        }
+    }
+    
+    /**Päivittää {@code Moduulin} valintojen määrän ja valitun {@code Ryhman}, kun 
+     * {@code Ryhman} valinta poistetaan.
+     * 
+     * @param poistettu valinnasta poistettu {@code Ryhma}
+     */
+    private void poistaModuulinValinta(Ryhma poistettu) {
+        int indeksi = poistettu.getModuulinIndeksi();
+        moduulienValinnat[indeksi]--;
+        if(moduulienValitut[indeksi] == poistettu) {
+            moduulienValitut[indeksi] = null;
+            if(moduulienValinnat[indeksi] > 0) {
+                for(Ryhma ryhma : moduulienRyhmat.get(indeksi)) {
+                    if(valitutRyhmat.contains(ryhma)) {
+                        moduulienValitut[indeksi] = ryhma;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**Palauttaa, kuinka monta {@code Moduulin Ryhmaa} on valittu.
+     * 
+     * @param moduulinIndeksi {@code Moduulin} indeksi
+     * @return valittujen {@code Ryhmien} määrä
+     */
+    int getModuulinValinnat(int moduulinIndeksi) {
+        return moduulienValinnat[moduulinIndeksi];
+    }
+    
+    /**Palauttaa annetun {@code Moduulin} valitun {@code Ryhman}.
+     * <p>
+     * Tieto pidetään yllä valintojen muuttuessa, joten metodi ei käy läpi valittuja 
+     * {@code Ryhmia}.
+     * 
+     * @param moduuli {@code Moduuli}, jonka valittu {@code Ryhma} halutaan
+     * @return {@code Moduulin} valittu {@code Ryhma}, tai {@code null}, jos yhtäkään 
+     *         {@code Moduulin Ryhmaa} ei ole valittu tai {@code Moduuli} ei kuulu 
+     *         {@code Kurssitarjottimeen}
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public Ryhma getValittuRyhma(Moduuli moduuli) {
+        Integer indeksi = moduulienIndeksit.get(moduuli);
+        return indeksi == null ? null : moduulienValitut[indeksi];
+    }
+    
+    /**Muuttaa useita valintoja kerralla.
+     * <p>
+     * Ensin poistetaan {@code poistettavien} valinnat, minkä jälkeen {@code valittavat} 
+     * valitaan annetussa järjestyksessä. Jos valittava {@code Ryhma} on päällekkäin 
+     * jo valitun tai aiemmin samassa kutsussa valitun {@code Ryhman} kanssa tai sillä 
+     * on sama {@code Moduuli}, myöhemmin valittu jää voimaan, kuten yksittäisillä valinnoilla.
+     * <p>
+     * Päällekkäisyydet ratkaistaan kerran, ja valittujen {@code Ryhmien} joukkoa 
+     * muutetaan vain lopputuloksen erotuksen verran. {@code ValintaTapahtumat} välitetään 
+     * vasta lopuksi, ja kullekin muuttuneelle {@code Moduulille} vain kerran: ensin 
+     * aiemmin valitun {@code Ryhman} poisto ja sitten uuden valinta.
+     * <p>
+     * Jos metodia kutsutaan {@code ValintaKuuntelijasta} yksittäisen valinnan muutoksen 
+     * aikana, kutsun muutokset kuuluvat samaan kumottavaan ja julkaistavaan muutokseen 
+     * kuin ulompi valinta.
+     * 
+     * @param valittavat valittavat {@code Ryhmat}
+     * @param poistettavat {@code Ryhmat}, joiden valinta poistetaan
+     * @throws java.lang.IllegalArgumentException jos jokin {@code Ryhmista} ei kuulu 
+     *         tähän {@code Kurssitarjottimeen}
+     * @throws java.lang.IllegalStateException jos metodia kutsutaan {@code ValintaKuuntelijasta} 
+     *         toisen {@code muutaValintoja}-kutsun aikana
+     * @throws java.lang.NullPointerException jos jokin parametreistä on tai sisältää {@code null}-arvon
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public void muutaValintoja(Collection<Ryhma> valittavat, Collection<Ryhma> poistettavat) {
+        if(erassa) {
+            throw new IllegalStateException("Valintoja muutetaan jo.");
+        }
+        for(Ryhma ryhma : valittavat) {
+            tarkistaOma(ryhma);
+        }
+        for(Ryhma ryhma : poistettavat) {
+            tarkistaOma(ryhma);
+        }
+        
+        LinkedHashSet<Ryhma> lopullinen = new LinkedHashSet<>(valitutRyhmat);
+        lopullinen.removeAll(poistettavat);
+        for(Ryhma lisattava : valittavat) {
+            for(Ryhma ryhma : moduulienRyhmat.get(lisattava.getModuulinIndeksi())) {
+                if(ryhma != lisattava) {
+                    lopullinen.remove(ryhma);
+                }
+            }
+            for(int i = lisattava.seuraavaPalkki(0); i >= 0; i = lisattava.seuraavaPalkki(i + 1)) {
+                for(Ryhma ryhma : palkkienRyhmat.get(mahdollisetPalkit.get(i))) {
+                    if(ryhma != lisattava) {
+                        lopullinen.remove(ryhma);
+                    }
+                }
+            }
+            lopullinen.add(lisattava);
+        }
+        
+        ArrayList<Ryhma> poistot = new ArrayList<>();
+        for(Ryhma ryhma : valitutRyhmat) {
+            if(!lopullinen.contains(ryhma)) {
+                poistot.add(ryhma);
+            }
+        }
+        ArrayList<Ryhma> lisaykset = new ArrayList<>();
+        for(Ryhma ryhma : lopullinen) {
+            if(!valitutRyhmat.contains(ryhma)) {
+                lisaykset.add(ryhma);
+            }
+        }
+        if(poistot.isEmpty() && lisaykset.isEmpty()) {
+            return;
+        }
+        
+        LinkedHashSet<Integer> muuttuneet = new LinkedHashSet<>();
+        poistot.forEach((ryhma) -> muuttuneet.add(ryhma.getModuulinIndeksi()));
+        lisaykset.forEach((ryhma) -> muuttuneet.add(ryhma.getModuulinIndeksi()));
+        HashMap<Integer, Ryhma> aiemmat = new HashMap<>();
+        muuttuneet.forEach((indeksi) -> aiemmat.put(indeksi, moduulienValitut[indeksi]));
+        
+        erassa = true;
+        try {
+            valitutRyhmat.removeAll(poistot);
+            valitutRyhmat.addAll(lisaykset);
+        } finally {
+            erassa = false;
+            if(kasittelyssa == 0) {
+                julkaise(historia.paata());
+            }
+        }
+        
+        for(int indeksi : muuttuneet) {
+            Ryhma aiempi = aiemmat.get(indeksi);
+            Ryhma uusi = moduulienValitut[indeksi];
+            if(aiempi == uusi) {
+                continue;
+            }
+            if(aiempi != null) {
+                ilmoita(aiempi, TapahtumaTyyppi.VALINTA_POISTETTU, TapahtumaTyyppi.VALINTA_POISTETTU_MUUALTA);
+            }
+            if(uusi != null) {
+                ilmoita(uusi, TapahtumaTyyppi.VALITTU, TapahtumaTyyppi.VALITTU_MUUALTA);
+            }
+        }
+    }
+    
+    /**Palauttaa valittujen {@code Ryhmien} nykyisen tilan.
+     * <p>
+     * {@code ValintaTila} on muuttumaton, ja {@code Kurssitarjotin} päivittää sitä jokaisen 
+     * valinnan muutoksen yhteydessä jakaen muuttumattomat osat edellisen tilan kanssa. 
+     * Palautettu tila on siis valittujen {@code Ryhmien} tilannekuva, joka ei muutu, 
+     * vaikka valintoja myöhemmin muutettaisiin. Siitä voi haarauttaa vaihtoehtoisia 
+     * suunnitelmia metodeilla {@link kva.logiikka.ValintaTila#lisaa(int)} ja 
+     * {@link kva.logiikka.ValintaTila#poista(int)} {@code Ryhmien} indekseillä.
+     * 
+     * @return valintojen nykyinen tila
+     * @see kva.logiikka.Ryhma#getIndeksi()
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public ValintaTila getValintaTila() {
+        return valintaTila;
+    }
+    
+    /**Ottaa annetun {@code ValintaTilan} käyttöön.
+     * <p>
+     * Nykyistä ja annettua tilaa verrataan metodilla {@link kva.logiikka.ValintaTila#erot(kva.logiikka.ValintaTila, java.util.function.IntConsumer, java.util.function.IntConsumer)}, 
+     * ja erot tehdään yhdellä {@link #muutaValintoja(java.util.Collection, java.util.Collection)}-kutsulla. 
+     * Tilaan jälkikäteen lisätyt päällekkäiset {@code Ryhmat} ratkaistaan kuten 
+     * {@code muutaValintoja}-metodissa, joten käyttöön otettu tila voi poiketa annetusta.
+     * 
+     * @param tila käyttöön otettava tila
+     * @throws java.lang.IllegalArgumentException jos tila sisältää indeksin, jolla 
+     *         ei ole {@code Ryhmaa} tässä {@code Kurssitarjottimessa}
+     * @throws java.lang.IllegalStateException jos metodia kutsutaan {@code ValintaKuuntelijasta} 
+     *         {@code muutaValintoja}-kutsun aikana
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public void setValintaTila(ValintaTila tila) {
+        ArrayList<Ryhma> valittavat = new ArrayList<>();
+        ArrayList<Ryhma> poistettavat = new ArrayList<>();
+        tila.erot(valintaTila, (indeksi) -> valittavat.add(getRyhma(indeksi)), (indeksi) -> poistettavat.add(getRyhma(indeksi)));
+        muutaValintoja(valittavat, poistettavat);
+    }
+    
+    /**Palauttaa {@code Ryhman}, jolla on annettu indeksi.
+     * 
+     * @param indeksi {@code Ryhman} indeksi
+     * @return {@code Ryhma}, jonka {@link kva.logiikka.Ryhma#getIndeksi()} on {@code indeksi}
+     * @throws java.lang.IllegalArgumentException jos indeksillä ei ole {@code Ryhmaa}
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public Ryhma getRyhma(int indeksi) {
+        if(indeksi < 0 || indeksi >= ryhmatIndekseittain.length) {
+            throw new IllegalArgumentException("Indeksillä " + indeksi + " ei ole ryhmää.");
+        }
+        return ryhmatIndekseittain[indeksi];
+    }
+    
+    /**Palauttaa {@code ValintaJulkaisijan}, joka julkaisee jokaisen valintojen muutoksen 
+     * yhtenä {@link kva.logiikka.tapahtumat.ValintaMuutos}-oliona.
+     * <p>
+     * Muutokseksi lasketaan sama kokonaisuus kuin metodissa {@link #kumoa()}, ja myös 
+     * kumoamiset ja uudelleen tekemiset julkaistaan.
+     * 
+     * @return {@code Kurssitarjottimen ValintaJulkaisija}
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public ValintaJulkaisija getJulkaisija() {
+        return julkaisija;
+    }
+    
+    /**Julkaisee valmiin muutoksen {@code ValintaJulkaisijan} tilaajille.
+     * 
+     * @param muutos valmis muutos, tai {@code null}, jos valinnat eivät muuttuneet
+     */
+    private void julkaise(ValintaHistoria.Muutos muutos) {
+        if(muutos == null) {
+            return;
+        }
+        muutoksia++;
+        if(!julkaisija.onTilaajia() || julkaisija.onSuljettu()) {
+            return;
+        }
+        julkaisija.julkaise(new ValintaMuutos(this, muutoksia, ryhmiksi(muutos.getLisatyt()), ryhmiksi(muutos.getPoistetut()), valintaTila));
+    }
+    
+    private List<Ryhma> ryhmiksi(int[] indeksit) {
+        ArrayList<Ryhma> lista = new ArrayList<>(indeksit.length);
+        for(int indeksi : indeksit) {
+            lista.add(ryhmatIndekseittain[indeksi]);
+        }
+        return lista;
+    }
+    
+    /**Vapauttaa {@code Kurssitarjottimen}, kun sitä ei enää käytetä.
+     * <p>
+     * Metodi poistaa kaikkien {@code Ryhmien ValintaKuuntelijat}, sulkee 
+     * {@code ValintaJulkaisijan} ja tyhjentää muutoshistorian, jotta kuuntelijat ja 
+     * tilaajat eivät pidä {@code Kurssitarjotinta} tai se niitä muistissa. Valintoja voi 
+     * yhä muuttaa, mutta muutoksista ei enää ilmoiteta eikä niitä voi kumota.
+     * 
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public void vapauta() {
+        ryhmat.forEach(Ryhma::poistaValintaKuuntelijat);
+        julkaisija.sulje();
+        historia.tyhjenna();
+        historia.setPituus(0);
+    }
+    
+    /**Kumoaa viimeisimmän valintojen muutoksen.
+     * <p>
+     * Muutokseksi lasketaan yksi valinta tai valinnan poisto kaikkine päällekkäisyyksien 
+     * vuoksi poistettuine valintoineen, sekä yksi {@link #muutaValintoja(java.util.Collection, java.util.Collection)}- 
+     * tai {@link #setValintaTila(kva.logiikka.ValintaTila)}-kutsu. Muutos kumotaan yhdellä 
+     * {@code muutaValintoja}-kutsulla, joten kumoaminen vie aikaa vain muutoksen koon 
+     * mukaan historian pituudesta riippumatta.
+     * 
+     * @return {@code true}, jos muutos kumottiin, ja {@code false}, jos kumottavaa ei ollut
+     * @throws java.lang.IllegalStateException jos metodia kutsutaan {@code ValintaKuuntelijasta} 
+     *         {@code muutaValintoja}-kutsun aikana
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public boolean kumoa() {
+        ValintaHistoria.Muutos muutos = historia.getKumottava();
+        if(muutos == null) {
+            return false;
+        }
+        palauta(muutos.getPoistetut(), muutos.getLisatyt());
+        historia.kumottu();
+        return true;
+    }
+    
+    /**Tekee uudelleen viimeisimmän kumotun valintojen muutoksen.
+     * <p>
+     * Uudelleen tehtävät muutokset unohdetaan, kun valintoja muutetaan muuten kuin 
+     * metodeilla {@link #kumoa()} ja {@code teeUudelleen()}.
+     * 
+     * @return {@code true}, jos muutos tehtiin, ja {@code false}, jos uudelleen tehtävää ei ollut
+     * @throws java.lang.IllegalStateException jos metodia kutsutaan {@code ValintaKuuntelijasta} 
+     *         {@code muutaValintoja}-kutsun aikana
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public boolean teeUudelleen() {
+        ValintaHistoria.Muutos muutos = historia.getTehtava();
+        if(muutos == null) {
+            return false;
+        }
+        palauta(muutos.getLisatyt(), muutos.getPoistetut());
+        historia.tehty();
+        return true;
+    }
+    
+    /**Kertoo, onko historiassa kumottavia muutoksia.
+     * 
+     * @return {@code true}, jos {@link #kumoa()} kumoaisi muutoksen
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public boolean voiKumota() {
+        return historia.getKumottava() != null;
+    }
+    
+    /**Kertoo, onko historiassa uudelleen tehtäviä muutoksia.
+     * 
+     * @return {@code true}, jos {@link #teeUudelleen()} tekisi muutoksen
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public boolean voiTehdaUudelleen() {
+        return historia.getTehtava() != null;
+    }
+    
+    /**Asettaa, kuinka monta muutosta voidaan enintään kumota. Jos historiassa on 
+     * enemmän muutoksia, vanhimmat poistetaan.
+     * 
+     * @param pituus kumottavissa olevien muutosten enimmäismäärä. Oletus on 
+     *        {@value #HISTORIAN_OLETUSPITUUS}, ja 0 poistaa historian käytöstä.
+     * @throws java.lang.IllegalArgumentException jos {@code pituus} on negatiivinen
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public void setHistorianPituus(int pituus) {
+        historia.setPituus(pituus);
+    }
+    
+    /**Palauttaa kumottavissa olevien muutosten enimmäismäärän.
+     * 
+     * @return muutosten enimmäismäärä
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public int getHistorianPituus() {
+        return historia.getPituus();
+    }
+    
+    /**Poistaa kaikki kumottavat ja uudelleen tehtävät muutokset.
+     * 
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public void tyhjennaHistoria() {
+        historia.tyhjenna();
+    }
+    
+    /**Tekee historiaan tallennetun muutoksen tai sen vastakohdan kirjaamatta sitä 
+     * uutena muutoksena.
+     * 
+     * @param valittavat valittavien {@code Ryhmien} indeksit
+     * @param poistettavat {@code Ryhmien} indeksit, joiden valinta poistetaan
+     */
+    private void palauta(int[] valittavat, int[] poistettavat) {
+        List<Ryhma> lisattavat = ryhmiksi(valittavat);
+        List<Ryhma> poistot = ryhmiksi(poistettavat);
+        historia.setPalautetaan(true);
+        try {
+            muutaValintoja(lisattavat, poistot);
+        } finally {
+            historia.setPalautetaan(false);
+        }
+    }
+    
+    private void tarkistaOma(Ryhma ryhma) {
+        if(ryhma.getTarjotin() != this) {
+            throw new IllegalArgumentException("Ryhmä " + ryhma.getKoodi() + " ei kuulu tähän kurssitarjottimeen.");
+        }
+    }
+    
+    /**Välittää valinnan muutoksen muuttuneelle {@code Ryhmalle} ja sen kanssa saman 
+     * {@code Moduulin Ryhmille}.
+     * 
+     * @param kohde valittu tai valinnasta poistettu {@code Ryhma}
+     * @param kohteelle kohteelle välitettävän tapahtuman tyyppi
+     * @param muille saman {@code Moduulin} muille {@code Ryhmille} välitettävän tapahtuman tyyppi
+     */
+    private void ilmoita(Ryhma kohde, TapahtumaTyyppi kohteelle, TapahtumaTyyppi muille) {
+        for(Ryhma ryhma : moduulienRyhmat.get(kohde.getModuulinIndeksi())) {
+            ryhma.ilmoita(ryhma == kohde ? kohteelle : muille);
+        }
+    }
+    
+    /**Päivittää valittujen {@code Ryhmien} varaamat palkit, kun {@code Ryhma} valitaan 
+     * tai sen valinta poistetaan.
+     * 
+     * @param ryhma valittu tai valinnasta poistettu {@code Ryhma}
+     * @param muutos 1, jos {@code Ryhma} valittiin, ja -1, jos sen valinta poistettiin
+     */
+    private void varaa(Ryhma ryhma, int muutos) {
+        BitSet palkit = ryhma.getPalkit();
+        for(int i = palkit.nextSetBit(0); i >= 0; i = palkit.nextSetBit(i + 1)) {
+            palkkienVaraukset[i] += muutos;
+            varatutPalkit.set(i, palkkienVaraukset[i] > 0);
+        }
+    }
+    
+    /**Palauttaa ne valitut {@code Ryhmat}, jotka sijaitsevat samassa palkissa kuin 
+     * annettu {@code Ryhma}.
+     * <p>
+     * Jos annettu {@code Ryhma} ei ole päällekkäin minkään valinnan kanssa, tulos 
+     * selviää yhdellä bittijoukkojen vertailulla. Muutoin vertaillaan vain valittuja 
+     * {@code Ryhmia}.
+     * 
+     * @param ryhma {@code Ryhma}, jonka päällekkäisyydet halutaan tietää
+     * @return lista päällekkäisistä valituista {@code Ryhmista}, johon {@code ryhma} 
+     *         itse ei kuulu, tai tyhjä lista, jos päällekkäisyyksiä ei ole
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public List<Ryhma> getPaallekkaisetValinnat(Ryhma ryhma) {
+        ArrayList<Ryhma> paallekkaiset = new ArrayList<>();
+        if(!ryhma.getPalkit().intersects(varatutPalkit)) {
+            return paallekkaiset;
+        }
+        for(Ryhma valittu : valitutRyhmat) {
+            if(!valittu.equals(ryhma) && valittu.getPalkit().intersects(ryhma.getPalkit())) {
+                paallekkaiset.add(valittu);
+            }
+        }
+        return paallekkaiset;
+    }
+    
+    /**Kertoo, onko annettu {@code Ryhma} päällekkäin jonkin muun valitun {@code Ryhman} kanssa.
+     * 
+     * @param ryhma tarkistettava {@code Ryhma}
+     * @return {@code true}, jos jokin muu valittu {@code Ryhma} sijaitsee samassa palkissa
+     * @see #getPaallekkaisetValinnat(kva.logiikka.Ryhma)
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public boolean onPaallekkainen(Ryhma ryhma) {
+        return !getPaallekkaisetValinnat(ryhma).isEmpty();
     }
     
     /**Palauttaa kaikki {@code Kurssitarjottimen Ryhmat}.
@@ -127,6 +700,33 @@ public class Kurssitarjotin {
         return new HashSet<>(ryhmat);
     }
     
+    /**Palauttaa kaikki {@code Kurssitarjottimen Ryhmat} muuttumattomana näkymänä.
+     * <p>
+     * Toisin kuin {@link #getKaikkiRyhmat()}, metodi ei kopioi {@code Ryhmia}, vaan 
+     * palauttaa joka kerta saman näkymän.
+     * 
+     * @return muuttumaton joukko {@code Ryhma}-olioista
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public Set<Ryhma> getRyhmienNakyma() {
+        return ryhmienNakyma;
+    }
+    
+    /**Palauttaa ne {@code Ryhmat}, joiden sijainteihin annettu palkki kuuluu.
+     * <p>
+     * Hakemisto palkeista {@code Ryhmiin} luodaan {@code Kurssitarjottimen} luomisen
+     * yhteydessä, joten metodi ei käy läpi kaikkia {@code Ryhmia} eikä kopioi niitä.
+     * 
+     * @param palkki palkki, jonka {@code Ryhmat} halutaan
+     * @return muuttumaton lista palkin {@code Ryhmista} siinä järjestyksessä, jossa ne 
+     *         annettiin konstruktorille, tai tyhjä lista, jos palkkia ei ole {@code Kurssitarjottimessa}
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public List<Ryhma> getPalkinRyhmat(PalkinTunniste palkki) {
+        List<Ryhma> palkinRyhmat = palkkienRyhmat.get(palkki);
+        return palkinRyhmat == null ? Collections.emptyList() : palkinRyhmat;
+    }
+    
     /**Palauttaa tällä hetkellä valituiksi merkityt {@code Ryhmat} {@link javafx.collections.ObservableSet}-muodossa.
      * <p>
      * Kursseja voi merkitä valituiksi tai ei-valituiksi yhtä hyvin komennoilla 
@@ -150,6 +750,19 @@ public class Kurssitarjotin {
         return new ArrayList<>(mahdollisetPalkit);
     }
     
+    /**Palauttaa {@code Kurssitarjottimen} palkit muuttumattomana näkymänä samassa 
+     * järjestyksessä kuin {@link #getMahdollisetPalkit()}.
+     * <p>
+     * Palkin indeksi näkymässä on sama, jota {@link kva.logiikka.Ryhma#seuraavaPalkki(int)} 
+     * käyttää.
+     * 
+     * @return muuttumaton lista {@code PalkinTunnisteista}
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public List<PalkinTunniste> getPalkkienNakyma() {
+        return palkkienNakyma;
+    }
+    
     /**Palauttaa listan {@code Kurssitarjottimen Ryhmien} mahdollisista periodeista.
      * <p>
      * Lista palautetaan siinä järjestyksessä, jossa periodit tulee käyttöliittymässä 
@@ -158,10 +771,17 @@ public class Kurssitarjotin {
      * @return lista mahdollisia sijainteja kuvaavista {@link kva.logiikka.PeriodinTunniste}
      */
     public List<PeriodinTunniste> getMahdollisetPeriodit() {
-        return mahdollisetPalkit.stream()
-                .map((palkki) -> palkki.getPeriodinTunniste())
-                .distinct()
-                .collect(Collectors.toList());
+        return new ArrayList<>(mahdollisetPeriodit);
+    }
+    
+    /**Palauttaa {@code Kurssitarjottimen} periodit muuttumattomana näkymänä samassa 
+     * järjestyksessä kuin {@link #getMahdollisetPeriodit()}.
+     * 
+     * @return muuttumaton lista {@code PeriodinTunnisteista}
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public List<PeriodinTunniste> getPeriodienNakyma() {
+        return periodienNakyma;
     }
     
     /**Palauttaa sen {@code Kurssitarjottimen Moduulin}, jolla on annettu koodi.
@@ -0,0 +1,262 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import kva.logiikka.lataus.LuotavaRyhma;
+
+/**Rakentaja, joka koostaa {@link kva.logiikka.Kurssitarjotin}-olion {@code LuotavistaRyhmista},
+ * {@code Moduuleista} ja periodien järjestyksestä.
+ * <p>
+ * Tiedot lisätään rakentajalle missä järjestyksessä tahansa, minkä jälkeen {@code Kurssitarjotin}
+ * luodaan metodilla {@link #rakenna()}. Rakentaminen etenee lineaarisessa ajassa
+ * {@code Ryhmien} sijaintien määrään nähden: samat palkit yhdistetään hajautustaulun
+ * avulla, ja palkit järjestetään periodien valmiiksi lasketun järjestysnumeron mukaan.
+ * Viimeisimmän rakentamisen kesto saadaan metodilla {@link #getRakennusaika()}.
+ * <p>
+ * Samalla rakentajalla voi luoda useita {@code Kurssitarjottimia}. Ne eivät jaa
+ * {@code Ryhmia} eivätkä valintoja keskenään.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.Kurssitarjotin
+ * @since Kurssivalinta-avustin 1.1
+ */
+public class KurssitarjotinRakentaja {
+
+    private final ArrayList<LuotavaRyhma> ryhmat = new ArrayList<>();
+    private final ArrayList<Moduuli> moduulit = new ArrayList<>();
+    private final ArrayList<PeriodinTunniste> periodienJarjestys = new ArrayList<>();
+    private long rakennusaika = -1;
+
+    private HashMap<Moduuli, Integer> moduulienIndeksit;
+    private ArrayList<Moduuli> eriModuulit;
+    private ArrayList<Moduuli> ryhmienModuulit;
+    private ArrayList<List<PalkinTunniste>> ryhmienSijainnit;
+    private ArrayList<PalkinTunniste> palkit;
+    private ArrayList<PeriodinTunniste> periodit;
+
+    /**Lisää rakentajalle {@code LuotavanRyhman}.
+     *
+     * @param ryhma lisättävä {@code LuotavaRyhma}
+     * @return tämä rakentaja
+     * @throws java.lang.NullPointerException jos {@code ryhma} on {@code null}
+     */
+    public KurssitarjotinRakentaja lisaaRyhma(LuotavaRyhma ryhma) {
+        ryhmat.add(Objects.requireNonNull(ryhma));
+        return this;
+    }
+
+    /**Lisää rakentajalle kokoelman {@code LuotaviaRyhmia}.
+     *
+     * @param lisattavat lisättävät {@code LuotavatRyhmat}
+     * @return tämä rakentaja
+     * @throws java.lang.NullPointerException jos {@code lisattavat} on tai sisältää {@code null}-arvon
+     */
+    public KurssitarjotinRakentaja lisaaRyhmat(Collection<LuotavaRyhma> lisattavat) {
+        lisattavat.forEach(this::lisaaRyhma);
+        return this;
+    }
+
+    /**Lisää rakentajalle {@code Moduulin}.
+     * <p>
+     * Jos rakentajalle lisätään useita samakoodisia {@code Moduuleja}, {@code Ryhmat}
+     * liitetään viimeisenä lisättyyn.
+     *
+     * @param moduuli lisättävä {@code Moduuli}
+     * @return tämä rakentaja
+     * @throws java.lang.NullPointerException jos {@code moduuli} on {@code null}
+     */
+    public KurssitarjotinRakentaja lisaaModuuli(Moduuli moduuli) {
+        moduulit.add(Objects.requireNonNull(moduuli));
+        return this;
+    }
+
+    /**Lisää rakentajalle kokoelman {@code Moduuleja}.
+     *
+     * @param lisattavat lisättävät {@code Moduulit}
+     * @return tämä rakentaja
+     * @throws java.lang.NullPointerException jos {@code lisattavat} on tai sisältää {@code null}-arvon
+     */
+    public KurssitarjotinRakentaja lisaaModuulit(Collection<Moduuli> lisattavat) {
+        lisattavat.forEach(this::lisaaModuuli);
+        return this;
+    }
+
+    /**Asettaa periodien keskinäisen järjestyksen, jossa käyttöliittymän tulisi
+     * esittää ne.
+     *
+     * @param jarjestys periodien tunnisteet esitysjärjestyksessä
+     * @return tämä rakentaja
+     * @throws java.lang.NullPointerException jos {@code jarjestys} on tai sisältää {@code null}-arvon
+     */
+    public KurssitarjotinRakentaja setPeriodienJarjestys(List<PeriodinTunniste> jarjestys) {
+        jarjestys.forEach(Objects::requireNonNull);
+        periodienJarjestys.clear();
+        periodienJarjestys.addAll(jarjestys);
+        return this;
+    }
+
+    /**Luo uuden {@code Kurssitarjottimen} rakentajalle annettujen tietojen perusteella.
+     *
+     * @return uusi {@code Kurssitarjotin}
+     * @throws java.lang.IllegalArgumentException jos jonkin {@code Ryhman Moduulia}
+     *         ei ole lisätty
+     * @throws java.lang.IllegalArgumentException jos periodien järjestys ei sisällä
+     *         kaikkia {@code Ryhmien} sijainneissa esiintyviä periodeja
+     */
+    public Kurssitarjotin rakenna() {
+        Kurssitarjotin tarjotin = new Kurssitarjotin(this);
+        rakennusaika = tarjotin.getRakennusaika();
+        return tarjotin;
+    }
+
+    /**Palauttaa, kuinka kauan edellinen {@link #rakenna()}-kutsu kesti.
+     *
+     * @return rakentamisen kesto nanosekunteina, tai -1, jos {@code Kurssitarjotinta}
+     *         ei ole vielä rakennettu
+     * @see kva.logiikka.Kurssitarjotin#getRakennusaika()
+     */
+    public long getRakennusaika() {
+        return rakennusaika;
+    }
+
+    /**Yhdistää samat palkit ja periodit yhteisiksi olioiksi, numeroi {@code Moduulit}
+     * ja järjestää palkit. {@code Kurssitarjotin} kutsuu metodia rakentajaa
+     * käyttävän konstruktorinsa alussa.
+     *
+     * @throws java.lang.IllegalArgumentException jos jonkin {@code Ryhman Moduulia}
+     *         ei ole lisätty tai sen periodin paikkaa ei ole kerrottu
+     */
+    void valmistele() {
+        HashMap<String, Moduuli> koodit = new HashMap<>();
+        moduulienIndeksit = new HashMap<>();
+        eriModuulit = new ArrayList<>();
+        for(Moduuli moduuli : moduulit) {
+            koodit.put(moduuli.getKoodi(), moduuli);
+            if(moduulienIndeksit.putIfAbsent(moduuli, eriModuulit.size()) == null) {
+                eriModuulit.add(moduuli);
+            }
+        }
+
+        HashMap<PeriodinTunniste, Integer> periodienIndeksit = new HashMap<>();
+        HashMap<PeriodinTunniste, PeriodinTunniste> periodienTunnisteet = new HashMap<>();
+        for(PeriodinTunniste periodi : periodienJarjestys) {
+            periodienIndeksit.putIfAbsent(periodi, periodienIndeksit.size());
+            periodienTunnisteet.putIfAbsent(periodi, periodi);
+        }
+
+        HashMap<PalkinTunniste, PalkinTunniste> palkkienTunnisteet = new HashMap<>();
+        ryhmienModuulit = new ArrayList<>(ryhmat.size());
+        ryhmienSijainnit = new ArrayList<>(ryhmat.size());
+        palkit = new ArrayList<>();
+        for(LuotavaRyhma pohja : ryhmat) {
+            Moduuli moduuli = koodit.get(pohja.getKurssikoodi());
+            if(moduuli == null) {
+                throw new IllegalArgumentException("Kurssikoodille \"" + pohja.getKurssikoodi() + "\" ei löydy Moduulia.");
+            }
+            ryhmienModuulit.add(moduuli);
+
+            List<PalkinTunniste> sijainnit = pohja.getSijainnit();
+            for(int i = 0; i < sijainnit.size(); i++) {
+                PalkinTunniste sijainti = sijainnit.get(i);
+                PalkinTunniste yhteinen = palkkienTunnisteet.get(sijainti);
+                if(yhteinen == null) {
+                    PeriodinTunniste periodi = periodienTunnisteet.get(sijainti.getPeriodinTunniste());
+                    if(periodi == null) {
+                        throw new IllegalArgumentException("Periodin " + sijainti.getPeriodinTunniste().toString() + " paikkaa ei kerrottu.");
+                    }
+                    yhteinen = new PalkinTunniste(periodi, sijainti.getPalkki(), sijainti.getJarjestysluku());
+                    palkkienTunnisteet.put(yhteinen, yhteinen);
+                    palkit.add(yhteinen);
+                }
+                sijainnit.set(i, yhteinen);
+            }
+            ryhmienSijainnit.add(sijainnit);
+        }
+
+        Comparator<PalkinTunniste> vertailija = Comparator.comparingInt((sijainti) -> periodienIndeksit.get(sijainti.getPeriodinTunniste()));
+        palkit.sort(vertailija.thenComparingInt(PalkinTunniste::getJarjestysluku));
+
+        LinkedHashSet<PeriodinTunniste> eriPeriodit = new LinkedHashSet<>();
+        palkit.forEach((palkki) -> eriPeriodit.add(palkki.getPeriodinTunniste()));
+        periodit = new ArrayList<>(eriPeriodit);
+    }
+
+    /**Palauttaa valmistellut {@code LuotavatRyhmat} lisäysjärjestyksessä.
+     *
+     * @return lista {@code LuotavistaRyhmista}
+     */
+    List<LuotavaRyhma> getRyhmat() {
+        return ryhmat;
+    }
+
+    /**Palauttaa annetun indeksin {@code Ryhman Moduulin}.
+     *
+     * @param ryhma {@code Ryhman} indeksi {@link #getRyhmat()}-listalla
+     * @return {@code Ryhman Moduuli}
+     */
+    Moduuli getRyhmanModuuli(int ryhma) {
+        return ryhmienModuulit.get(ryhma);
+    }
+
+    /**Palauttaa annetun indeksin {@code Ryhman} sijainnit yhteisinä {@code PalkinTunnisteina}.
+     *
+     * @param ryhma {@code Ryhman} indeksi {@link #getRyhmat()}-listalla
+     * @return {@code Ryhman} sijainnit
+     */
+    List<PalkinTunniste> getRyhmanSijainnit(int ryhma) {
+        return ryhmienSijainnit.get(ryhma);
+    }
+
+    /**Palauttaa eri {@code Moduulit} siinä järjestyksessä, jossa ne numeroitiin.
+     *
+     * @return lista {@code Moduuleista}
+     */
+    List<Moduuli> getModuulit() {
+        return eriModuulit;
+    }
+
+    /**Palauttaa {@code Moduulien} numeroinnin.
+     *
+     * @return hajautustaulu {@code Moduuleista} niiden indekseihin
+     */
+    HashMap<Moduuli, Integer> getModuulienIndeksit() {
+        return moduulienIndeksit;
+    }
+
+    /**Palauttaa eri palkit siinä järjestyksessä, jossa ne tulee esittää.
+     *
+     * @return lista yhteisistä {@code PalkinTunnisteista}
+     */
+    List<PalkinTunniste> getPalkit() {
+        return palkit;
+    }
+
+    /**Palauttaa ne periodit, joissa on palkkeja, siinä järjestyksessä, jossa ne tulee esittää.
+     *
+     * @return lista yhteisistä {@code PeriodinTunnisteista}
+     */
+    List<PeriodinTunniste> getPeriodit() {
+        return periodit;
+    }
+}
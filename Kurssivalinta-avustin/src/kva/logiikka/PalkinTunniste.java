@@ -25,7 +25,8 @@ import java.util.Objects;
  * olla sijainteinaan useita {@code PalkinTunnisteita}, esimerkiksi yksi kummallekin 
  * periodinpuolikkaalle.
  * <p>
- * {@code PalkinTunnisteen} sisältämiä tietoja ei voi muuttaa luomisen jälkeen.
+ * {@code PalkinTunnisteen} sisältämiä tietoja ei voi muuttaa luomisen jälkeen. Siksi
+ * sen hajautusarvo ja {@code PeriodinTunniste} lasketaan valmiiksi luomisen yhteydessä.
  *
  * @author Väinö Viinikka
  * @see kva.logiikka.Ryhma
@@ -33,10 +34,10 @@ import java.util.Objects;
  */
 public class PalkinTunniste {
     
-    private final String oppilaitos;
-    private final String periodi;
+    private final PeriodinTunniste periodinTunniste;
     private final String palkki;
     private final int jarjestysluku;
+    private final int hash;
     
     /**Luo uuden {@code PalkinTunnisteen}.
      * 
@@ -47,12 +48,11 @@ public class PalkinTunniste {
      * @param palkki sen palkin nimi tai numero, jossa ryhmään liittyvä opetus pidetään
      * @param jarjestysluku määrittää järjestyksen, jossa {@code PalkinTunnisteet} 
      *        esitetään käyttöliittymässä
+     * @throws java.lang.NullPointerException jos {@code oppilaitos} tai {@code periodi} 
+     *        on {@code null}
      */
     public PalkinTunniste(String oppilaitos, String periodi, String palkki, int jarjestysluku) {
-        this.oppilaitos = oppilaitos;
-        this.periodi = periodi;
-        this.palkki = palkki;
-        this.jarjestysluku = jarjestysluku;
+        this(new PeriodinTunniste(oppilaitos, periodi), palkki, jarjestysluku);
     }
     
     /**Luo uuden {@code PalkinTunnisteen}.
@@ -65,7 +65,10 @@ public class PalkinTunniste {
      *        esitetään käyttöliittymässä
      */
     public PalkinTunniste(PeriodinTunniste periodi, String palkki, int jarjestysluku) {
-        this(periodi.getOppilaitos(), periodi.getPeriodi(), palkki, jarjestysluku);
+        this.periodinTunniste = periodi;
+        this.palkki = palkki;
+        this.jarjestysluku = jarjestysluku;
+        this.hash = 89 * periodi.hashCode() + Objects.hashCode(palkki);
     }
 
     /**Luo uuden {@code PalkinTunnisteen} järjestysluvulla {@code Integer.MAX_VALUE}.
@@ -75,6 +78,8 @@ public class PalkinTunniste {
      * @param periodi sen periodin tai periodinpuolikkaan nimi, jossa ryhmään liittyvä 
      *        opetus pidetään
      * @param palkki sen palkin nimi tai numero, jossa ryhmään liittyvä opetus pidetään
+     * @throws java.lang.NullPointerException jos {@code oppilaitos} tai {@code periodi} 
+     *        on {@code null}
      */
     public PalkinTunniste(String oppilaitos, String periodi, String palkki) {
         this(oppilaitos, periodi, palkki, Integer.MAX_VALUE);
@@ -88,7 +93,7 @@ public class PalkinTunniste {
      * @param palkki sen palkin nimi tai numero, jossa ryhmään liittyvä opetus pidetään
      */
     public PalkinTunniste(PeriodinTunniste periodi, String palkki) {
-        this(periodi.getOppilaitos(), periodi.getPeriodi(), palkki);
+        this(periodi, palkki, Integer.MAX_VALUE);
     }
 
     /**Palauttaa sen oppilaitoksen nimen, jossa sijaitsevaa palkkia {@code PalkinTunniste} 
@@ -97,7 +102,7 @@ public class PalkinTunniste {
      * @return oppilaitoksen nimi
      */
     public String getOppilaitos() {
-        return oppilaitos;
+        return periodinTunniste.getOppilaitos();
     }
 
     /**Palauttaa sen periodin tai periodinpuolikkaan nimen, jossa sijaitsevaa palkkia 
@@ -106,7 +111,7 @@ public class PalkinTunniste {
      * @return periodin tai periodinpuolikkaan nimi
      */
     public String getPeriodi() {
-        return periodi;
+        return periodinTunniste.getPeriodi();
     }
 
     /**Palauttaa sen palkin nimen, joka määrittää {@code Ryhmaan} liittyvän opetuksen 
@@ -120,11 +125,13 @@ public class PalkinTunniste {
     
     /**Palauttaa {@code PeriodinTunnisteen}, joka sisältää tiedot {@code PalkinTunnisteen} 
      * oppilaitoksesta ja periodista.
+     * <p>
+     * Metodi palauttaa joka kerta saman olion.
      * 
      * @return {@code PeriodinTunniste}, joka kuvaa palkin sisältävää periodia.
      */
     public PeriodinTunniste getPeriodinTunniste() {
-        return new PeriodinTunniste(oppilaitos, periodi);
+        return periodinTunniste;
     }
     
     /**Palauttaa {@code PalkinTunnisteen} järjestysluvun.
@@ -149,15 +156,11 @@ public class PalkinTunniste {
         if(toinen == null) {
             return false;
         }
-        return getPeriodinTunniste().equals(toinen.getPeriodinTunniste());
+        return periodinTunniste.equals(toinen.periodinTunniste);
     }
 
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 89 * hash + Objects.hashCode(this.oppilaitos);
-        hash = 89 * hash + Objects.hashCode(this.periodi);
-        hash = 89 * hash + Objects.hashCode(this.palkki);
         return hash;
     }
 
@@ -173,13 +176,13 @@ public class PalkinTunniste {
             return false;
         }
         final PalkinTunniste other = (PalkinTunniste) obj;
-        if (!Objects.equals(this.oppilaitos, other.oppilaitos)) {
+        if (this.hash != other.hash) {
             return false;
         }
-        if (!Objects.equals(this.periodi, other.periodi)) {
+        if (!Objects.equals(this.palkki, other.palkki)) {
             return false;
         }
-        if (!Objects.equals(this.palkki, other.palkki)) {
+        if (!this.periodinTunniste.equals(other.periodinTunniste)) {
             return false;
         }
         return true;
@@ -187,6 +190,6 @@ public class PalkinTunniste {
 
     @Override
     public String toString() {
-        return "PalkinTunniste{" + "oppilaitos=" + oppilaitos + ", periodi=" + periodi + ", palkki=" + palkki + '}';
+        return "PalkinTunniste{" + "oppilaitos=" + getOppilaitos() + ", periodi=" + getPeriodi() + ", palkki=" + palkki + '}';
     }
 }
@@ -35,6 +35,7 @@ public class PeriodinTunniste {
     
     private final String oppilaitos;
     private final String periodi;
+    private final int hash;
 
     /**Luo uuden {@code PeriodinTunnisteen}.
      * 
@@ -47,6 +48,7 @@ public class PeriodinTunniste {
     public PeriodinTunniste(String oppilaitos, String periodi) {
         this.oppilaitos = Objects.requireNonNull(oppilaitos);
         this.periodi = Objects.requireNonNull(periodi);
+        this.hash = 71 * (71 * 3 + oppilaitos.hashCode()) + periodi.hashCode();
     }
 
     /**Kertoo, minkä oppilaitoksen kurssitarjottimesta on kyse.
@@ -67,9 +69,6 @@ public class PeriodinTunniste {
 
     @Override
     public int hashCode() {
-        int hash = 3;
-        hash = 71 * hash + Objects.hashCode(this.oppilaitos);
-        hash = 71 * hash + Objects.hashCode(this.periodi);
         return hash;
     }
 
@@ -85,6 +84,9 @@ public class PeriodinTunniste {
             return false;
         }
         final PeriodinTunniste other = (PeriodinTunniste) obj;
+        if (this.hash != other.hash) {
+            return false;
+        }
         if (!Objects.equals(this.oppilaitos, other.oppilaitos)) {
             return false;
         }
@@ -17,9 +17,13 @@
 package kva.logiikka;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Objects;
-import javafx.collections.SetChangeListener;
+import java.util.Set;
 import kva.logiikka.lataus.LuotavaRyhma;
 import kva.logiikka.tapahtumat.ValintaKuuntelija;
 import kva.logiikka.tapahtumat.ValintaTapahtuma;
@@ -34,6 +38,10 @@ import kva.logiikka.tapahtumat.ValintaTapahtuma.TapahtumaTyyppi;
  * <p>
  * {@link kva.logiikka.Kurssitarjotin} luo omat {@code Ryhmansa} sille annettujen 
  * tietojen pohjalta. {@code Ryhmien} sisältämiä tietoja ei voi muuttaa jälkikäteen.
+ * <p>
+ * {@code Kurssitarjotin} välittää valintojen muutokset ainoastaan niille {@code Ryhmille}, 
+ * joita ne koskevat, eli valitulle tai valinnasta poistetulle {@code Ryhmalle} ja sen 
+ * kanssa saman {@code Moduulin Ryhmille}.
  *
  * @author Väinö Viinikka
  * @since Kurssivalinta-avustin 1.0
@@ -43,7 +51,13 @@ public class Ryhma {
     private Kurssitarjotin tarjotin;
     private Moduuli moduuli;
     private String ryhmakoodi;
+    private String ryhmatunniste;
     private ArrayList<PalkinTunniste> sijainnit;
+    private List<PalkinTunniste> sijaintienNakyma;
+    private Set<PalkinTunniste> sijaintijoukko;
+    private BitSet palkit = new BitSet();
+    private int indeksi;
+    private int moduulinIndeksi;
     private Collection<ValintaKuuntelija> valintaKuuntelijat;
 
     /**Luo uuden {@code Ryhman} annettujen tietojen perusteella.
@@ -68,34 +82,31 @@ public class Ryhma {
         }
         
         ryhmakoodi = pohja.getRyhmakoodi();
+        ryhmatunniste = pohja.getRyhmatunniste();
         sijainnit = pohja.getSijainnit();
+        sijaintienNakyma = Collections.unmodifiableList(sijainnit);
+        sijaintijoukko = Collections.unmodifiableSet(new LinkedHashSet<>(sijainnit));
         
         this.moduuli = moduuli;
         this.tarjotin = tarjotin;
         
         valintaKuuntelijat = new ArrayList<>();
-        SetChangeListener<Ryhma> kuuntelija = (muutos) -> {
-            TapahtumaTyyppi tyyppi = null;
-            
-            if(muutos.wasAdded()) {
-                if(this.equals(muutos.getElementAdded())) {
-                    tyyppi = TapahtumaTyyppi.VALITTU;
-                } else if(this.getModuuli().equals(muutos.getElementAdded().getModuuli())) {
-                    tyyppi = TapahtumaTyyppi.VALITTU_MUUALTA;
-                }
-            } else {
-                if(this.equals(muutos.getElementRemoved())) {
-                    tyyppi = TapahtumaTyyppi.VALINTA_POISTETTU;
-                } else if(this.getModuuli().equals(muutos.getElementRemoved().getModuuli())) {
-                    tyyppi = TapahtumaTyyppi.VALINTA_POISTETTU_MUUALTA;
-                }
-            }
-            final TapahtumaTyyppi t = tyyppi;
-            if(tyyppi != null) {
-                valintaKuuntelijat.forEach((vk) -> vk.tilaMuuttui(new ValintaTapahtuma(this, t)));
-            }
-        };
-        tarjotin.getValitutRyhmat().addListener(kuuntelija);
+    }
+    
+    /**Ilmoittaa {@code Ryhman ValintaKuuntelijoille} valinnan muutoksesta.
+     * <p>
+     * {@code Kurssitarjotin} kutsuu metodia, kun muutos koskee tätä {@code Ryhmaa}.
+     * 
+     * @param tyyppi muutoksen tyyppi tämän {@code Ryhman} kannalta
+     */
+    void ilmoita(TapahtumaTyyppi tyyppi) {
+        if(valintaKuuntelijat.isEmpty()) {
+            return;
+        }
+        ValintaTapahtuma tapahtuma = new ValintaTapahtuma(this, tyyppi);
+        for(ValintaKuuntelija kuuntelija : new ArrayList<>(valintaKuuntelijat)) {
+            kuuntelija.tilaMuuttui(tapahtuma);
+        }
     }
     
     /**Palauttaa {@code Moduulin}, joka sisältää tiedot ryhmän kuvaamasta opintokokonaisuudesta.
@@ -132,8 +143,7 @@ public class Ryhma {
      * @return ryhmäkoodin pistettä seuraava osa
      */
     public String getRyhmatunniste() {
-        String[] arr = ryhmakoodi.split("[.]");
-        return arr[arr.length - 1];
+        return ryhmatunniste;
     }
 
     /**Palauttaa listan {@code RyhmanSijainneista}, jotka kuvaavat {@code Ryhman} 
@@ -146,6 +156,117 @@ public class Ryhma {
     public ArrayList<PalkinTunniste> getSijainnit() {
         return new ArrayList<>(sijainnit);
     }
+
+    /**Palauttaa {@code Ryhman} sijainnit muuttumattomana näkymänä, jota ei kopioida.
+     *
+     * @return muuttumaton lista sijainteja kuvaavista {@code PalkinTunniste}-olioista
+     *         samassa järjestyksessä kuin {@link #getSijainnit()}
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public List<PalkinTunniste> getSijaintienNakyma() {
+        return sijaintienNakyma;
+    }
+
+    /**Palauttaa {@code Ryhman} seuraavan palkin indeksin, joka on vähintään annettu luku.
+     * <p>
+     * Indeksit viittaavat {@code Kurssitarjottimen} {@link kva.logiikka.Kurssitarjotin#getPalkkienNakyma()}-listaan. 
+     * Metodilla {@code Ryhman} palkit voi käydä läpi luomatta uusia olioita:
+     * <pre>{@code
+     * for(int i = ryhma.seuraavaPalkki(0); i >= 0; i = ryhma.seuraavaPalkki(i + 1)) {
+     *     PalkinTunniste palkki = tarjotin.getPalkkienNakyma().get(i);
+     * }
+     * }</pre>
+     *
+     * @param alkaen pienin palautettava indeksi
+     * @return seuraavan palkin indeksi, tai -1, jos palkkeja ei ole enempää
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public int seuraavaPalkki(int alkaen) {
+        return palkit.nextSetBit(alkaen);
+    }
+
+    /**Palauttaa {@code Ryhman} sijainnit joukkona, jota ei kopioida.
+     * <p>
+     * Joukko on muuttumaton, ja sen avulla voi tarkistaa {@code Ryhman} sijainnin
+     * vakioajassa, esimerkiksi {@code getSijaintijoukko().contains(palkki)}.
+     * Sijainnit ovat samassa järjestyksessä kuin {@link #getSijainnit()}-listalla.
+     *
+     * @return muuttumaton joukko sijainteja kuvaavista {@code PalkinTunniste}-olioista
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public Set<PalkinTunniste> getSijaintijoukko() {
+        return sijaintijoukko;
+    }
+
+    /**Palauttaa {@code Ryhman} sijainnit bittijoukkona, jossa kunkin palkin bitti on
+     * sen indeksi {@code Kurssitarjottimen} {@link kva.logiikka.Kurssitarjotin#getMahdollisetPalkit()}-listalla.
+     * <p>
+     * Bittijoukkoa ei kopioida, eikä sitä saa muuttaa.
+     *
+     * @return {@code Ryhman} palkkien bittijoukko
+     */
+    BitSet getPalkit() {
+        return palkit;
+    }
+
+    /**Asettaa {@code Ryhman} palkkien bittijoukon. {@code Kurssitarjotin} kutsuu metodia
+     * kerran, kun palkkien järjestys on selvitetty. Sitä ennen bittijoukko on tyhjä.
+     *
+     * @param palkit {@code Ryhman} palkkien bittijoukko
+     */
+    void setPalkit(BitSet palkit) {
+        this.palkit = palkit;
+    }
+
+    /**Palauttaa {@code Ryhman} juoksevan numeron {@code Kurssitarjottimessa}.
+     * <p>
+     * Indeksit alkavat nollasta ja ovat {@code Kurssitarjottimen} sisällä yksikäsitteisiä. 
+     * Niitä käytetään {@link kva.logiikka.ValintaTila}n alkioina.
+     *
+     * @return {@code Ryhman} indeksi
+     * @see kva.logiikka.Kurssitarjotin#getRyhma(int)
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public int getIndeksi() {
+        return indeksi;
+    }
+
+    /**Asettaa {@code Ryhman} juoksevan numeron. {@code Kurssitarjotin} kutsuu
+     * metodia kerran {@code Ryhmaa} luodessaan.
+     *
+     * @param indeksi {@code Ryhman} indeksi
+     */
+    void setIndeksi(int indeksi) {
+        this.indeksi = indeksi;
+    }
+
+    /**Palauttaa {@code Ryhman Moduulin} juoksevan numeron {@code Kurssitarjottimessa}.
+     *
+     * @return {@code Moduulin} indeksi
+     */
+    int getModuulinIndeksi() {
+        return moduulinIndeksi;
+    }
+
+    /**Asettaa {@code Ryhman Moduulin} juoksevan numeron. {@code Kurssitarjotin} kutsuu
+     * metodia kerran {@code Ryhmaa} luodessaan.
+     *
+     * @param moduulinIndeksi {@code Moduulin} indeksi
+     */
+    void setModuulinIndeksi(int moduulinIndeksi) {
+        this.moduulinIndeksi = moduulinIndeksi;
+    }
+
+    /**Korvaa {@code Ryhman} sijainnit {@code Kurssitarjottimen} yhteisillä {@code PalkinTunnisteilla}.
+     * {@code Kurssitarjotin} kutsuu metodia kerran {@code Ryhmaa} luodessaan.
+     *
+     * @param yhteiset {@code Ryhman} sijainnit samassa järjestyksessä yhteisinä {@code PalkinTunnisteina}
+     */
+    void yhdistaSijainnit(List<PalkinTunniste> yhteiset) {
+        sijainnit = new ArrayList<>(yhteiset);
+        sijaintienNakyma = Collections.unmodifiableList(sijainnit);
+        sijaintijoukko = Collections.unmodifiableSet(new LinkedHashSet<>(sijainnit));
+    }
     
     /**Kertoo, onko kyseinen ryhmä valittu vai ei.
      * 
@@ -178,9 +299,8 @@ public class Ryhma {
      * @return {@code true}, jos moduuli on valittu muualta, muuten {@code false}
      */
     public boolean onValittuMuualta() {
-        return tarjotin.getValitutRyhmat().stream()
-                .filter((ryhma) -> ryhma.getModuuli().equals(getModuuli()))
-                .anyMatch((ryhma) -> !ryhma.equals(this));
+        int valinnat = tarjotin.getModuulinValinnat(moduulinIndeksi);
+        return valinnat > 1 || (valinnat == 1 && !OnValittu());
     }
     
     /**Lisää {@code Ryhmalle} uuden {@code ValintaKuuntelijan}.
@@ -207,6 +327,13 @@ public class Ryhma {
         valintaKuuntelijat.remove(kuuntelija);
     }
 
+    /**Poistaa {@code Ryhmalta} kaikki {@code ValintaKuuntelijat}. {@code Kurssitarjotin} 
+     * kutsuu metodia, kun se vapautetaan.
+     */
+    void poistaValintaKuuntelijat() {
+        valintaKuuntelijat.clear();
+    }
+
     @Override
     public String toString() {
         return "Ryhma{ryhmakoodi=" + ryhmakoodi + ", moduuli=" + moduuli + ", sijainnit=" + sijainnit + '}';
@@ -16,9 +16,14 @@
  */
 package kva.logiikka;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Consumer;
 import javafx.beans.property.ReadOnlyObjectProperty;
@@ -26,21 +31,44 @@ import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.ReadOnlyStringProperty;
 import javafx.beans.property.ReadOnlyStringWrapper;
 import kva.logiikka.lataus.KurssitarjottimenLataaja;
+import kva.logiikka.lataus.Tilannekuva;
 
 /**Ylin säiliöluokka Kurssivalinta-avustimen sovelluslogiikalle, sisältää {@code Kurssitarjottimen}.
  * <p>
  * {@link kva.logiikka.Kurssitarjotin} luodaan komennoilla {@link #lataaPeriodienNimet(java.util.function.Consumer, java.util.function.Consumer, java.lang.Object...)} 
  * ja {@link #lataaKurssitarjotin(java.util.Collection, java.util.function.Consumer, java.util.function.Consumer)}.
  * Lataamiseen käytetään konstruktoriparametrina annettua {@link kva.logiikka.lataus.KurssitarjottimenLataaja}a.
+ * <p>
+ * Ladatut {@code Kurssitarjottimet} pidetään muistissa periodijoukon mukaan. Jos samat
+ * periodit valitaan uudelleen, {@code Kurssitarjotin} palautetaan välimuistista
+ * valintoineen käyttämättä lataajaa. Välimuistiin mahtuu konstruktorissa annettu määrä
+ * {@code Kurssitarjottimia}, ja kun se täyttyy, poistetaan pisimpään käyttämättä ollut. 
+ * {@code Kurssitarjotin}, joka ei ole enää käytössä eikä välimuistissa, vapautetaan 
+ * metodilla {@link kva.logiikka.Kurssitarjotin#vapauta()}.
+ * <p>
+ * Jos {@code Sovelluslogiikalle} on annettu tilannekuvan sijainti metodilla {@link #setTilannekuvanSijainti(java.nio.file.Path)}, 
+ * jokaisesta lataajalla ladatusta {@code Kurssitarjottimesta} tallennetaan {@link kva.logiikka.lataus.Tilannekuva}, 
+ * jonka {@link kva.logiikka.lataus.TilannekuvaLataaja} voi myöhemmin ladata.
  *
  * @author Väinö Viinikka
  * @since Kurssivalinta-avustin 1.0
  */
 public class Sovelluslogiikka {
 
+    /**Oletusarvoinen välimuistissa pidettävien {@code Kurssitarjottimien} enimmäismäärä.
+     *
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public static final int OLETUSVALIMUISTI = 4;
+
     private final KurssitarjottimenLataaja lataaja;
+    private final LinkedHashMap<HashSet<PeriodinTunniste>, Kurssitarjotin> valimuisti;
+    private int osumat;
+    private int ohitukset;
     private List<PeriodinTunniste> periodinTunnisteet;
     private Kurssitarjotin tarjotin;
+    private final ArrayList<Kurssitarjotin> poistetut = new ArrayList<>();
+    private Path tilannekuvanSijainti;
     private final ReadOnlyStringWrapper viesti;
     private final ReadOnlyObjectWrapper<LatauksenTila> tila;
 
@@ -50,7 +78,34 @@ public class Sovelluslogiikka {
      *        luomiseen tarvittavat tiedot eri käskyllä
      */
     public Sovelluslogiikka(KurssitarjottimenLataaja lataaja) {
+        this(lataaja, OLETUSVALIMUISTI);
+    }
+
+    /**Luo uuden {@code Sovelluslogiikan}, joka pitää muistissa enintään annetun määrän
+     * ladattuja {@code Kurssitarjottimia}.
+     *
+     * @param lataaja {@code KurssitarjottimenLataaja}, joka hakee {@code Kurssitarjottimen} 
+     *        luomiseen tarvittavat tiedot eri käskyllä
+     * @param valimuistinKoko välimuistissa pidettävien {@code Kurssitarjottimien} enimmäismäärä,
+     *        tai 0, jos välimuistia ei käytetä
+     * @throws java.lang.IllegalArgumentException jos {@code valimuistinKoko} on negatiivinen
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public Sovelluslogiikka(KurssitarjottimenLataaja lataaja, int valimuistinKoko) {
+        if(valimuistinKoko < 0) {
+            throw new IllegalArgumentException("Välimuistin koko ei voi olla negatiivinen.");
+        }
         this.lataaja = lataaja;
+        this.valimuisti = new LinkedHashMap<HashSet<PeriodinTunniste>, Kurssitarjotin>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<HashSet<PeriodinTunniste>, Kurssitarjotin> vanhin) {
+                if(size() > valimuistinKoko) {
+                    poistetut.add(vanhin.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
         this.viesti = new ReadOnlyStringWrapper();
         this.tila  = new ReadOnlyObjectWrapper<>(LatauksenTila.LUOTU);
     }
@@ -99,6 +154,7 @@ public class Sovelluslogiikka {
         Consumer<List<PeriodinTunniste>> laajempiTuloksenKasittely = (tulos) -> {
             viesti.setValue("");
             periodinTunnisteet = tulos;
+            tyhjennaValimuisti();
             tuloksenKasittely.accept(tulos);
             tila.setValue(LatauksenTila.PERIODIEN_NIMET_LADATTU);
         };
@@ -118,6 +174,13 @@ public class Sovelluslogiikka {
      * toteutuksesta riippuen synkronoimattoman latauksen, ja palauttaa välittömästi. 
      * Latauksen tulos ilmoitetaan joko {@code tuloksenKasittelylle} tai {@code virheenKasittelylle}, 
      * mutta sitä voi myös seurata kuuntelemalla {@code Sovelluslogiikan} {@link #tilaProperty()}ä.
+     * <p>
+     * Jos samoista periodeista koostuva {@code Kurssitarjotin} löytyy välimuistista, 
+     * lataus valmistuu ennen metodin palaamista käyttämättä {@code KurssitarjottimenLataajaa}. 
+     * Tällöin {@code tuloksenKasittelylle} annetaan sama {@code Kurssitarjotin}-olio 
+     * kuin aiemmin, ja sen valinnat sekä kumottavien muutosten historia ovat tallella. 
+     * Tyhjän {@code Kurssitarjottimen} saa lataamalla sen uudelleen, kun välimuisti 
+     * on ensin tyhjennetty metodilla {@link #tyhjennaValimuisti()}.
      *
      * @param valittavat mukaan otettavien periodien tunnisteet, järjestyksellä ei 
      *        ole väliä
@@ -146,9 +209,14 @@ public class Sovelluslogiikka {
         LatauksenTila vanhaTila = getTila();
         tila.setValue(LatauksenTila.LADATAAN_KURSSITARJOTINTA);
         
+        HashSet<PeriodinTunniste> avain = new HashSet<>(valittavat);
         Consumer<Kurssitarjotin> laajempiTuloksenKasittely = (tulos) -> {
             viesti.setValue("");
+            valimuisti.put(avain, tulos);
+            Kurssitarjotin edellinen = this.tarjotin;
             this.tarjotin = tulos;
+            poistetut.add(edellinen);
+            vapautaPoistetut();
             tuloksenKasittely.accept(tarjotin);
             tila.setValue(LatauksenTila.KURSSITARJOTIN_LADATTU);
         };
@@ -157,8 +225,91 @@ public class Sovelluslogiikka {
             virheenKasittely.accept(virhe);
             tila.setValue(vanhaTila);
         };
+        Kurssitarjotin tallennettu = valimuisti.get(avain);
+        if(tallennettu != null) {
+            osumat++;
+            laajempiTuloksenKasittely.accept(tallennettu);
+            return;
+        }
+        ohitukset++;
         viesti.setValue("Ladataan kurssitarjotinta.");
-        lataaja.aloitaKurssitarjottimenLataus(valittavat, laajempiTuloksenKasittely, laajempiVirheenKasittely);
+        lataaja.aloitaKurssitarjottimenLataus(valittavat, (tulos) -> {
+            tallennaTilannekuva(tulos);
+            laajempiTuloksenKasittely.accept(tulos);
+            viesti.setValue("Kurssitarjotin koottiin " + tulos.getRakennusaika() / 1000000 + " ms:ssa.");
+        }, laajempiVirheenKasittely);
+    }
+
+    /**Asettaa tiedoston, johon lataajalla ladatun {@code Kurssitarjottimen} tilannekuva
+     * tallennetaan.
+     *
+     * @param sijainti tilannekuvan tiedosto, tai {@code null}, jos tilannekuvaa ei tallenneta
+     * @see kva.logiikka.lataus.Tilannekuva#tallenna(kva.logiikka.Kurssitarjotin, java.nio.file.Path)
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public void setTilannekuvanSijainti(Path sijainti) {
+        tilannekuvanSijainti = sijainti;
+    }
+
+    /**Tallentaa ladatun {@code Kurssitarjottimen} tilannekuvan, jos sen sijainti on asetettu.
+     */
+    private void tallennaTilannekuva(Kurssitarjotin ladattu) {
+        if(tilannekuvanSijainti == null) {
+            return;
+        }
+        try {
+            Tilannekuva.tallenna(ladattu, tilannekuvanSijainti);
+        } catch(IOException e) {
+            //Tilannekuva tallennetaan seuraavan latauksen yhteydessä uudelleen.
+        }
+    }
+
+    /**Poistaa kaikki {@code Kurssitarjottimet} välimuistista, jolloin seuraava
+     * {@link #lataaKurssitarjotin(java.util.Collection, java.util.function.Consumer, java.util.function.Consumer)}
+     * lataa {@code Kurssitarjottimen} aina uudelleen.
+     * <p>
+     * Välimuisti tyhjennetään automaattisesti, kun periodien nimet ladataan uudelleen.
+     * Metodia tulee kutsua JavaFX:n sovellussäikeessä.
+     *
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public void tyhjennaValimuisti() {
+        poistetut.addAll(valimuisti.values());
+        valimuisti.clear();
+        vapautaPoistetut();
+    }
+
+    /**Vapauttaa välimuistista tai käytöstä poistetut {@code Kurssitarjottimet}, joita
+     * ei ole välimuistissa eikä käytössä.
+     *
+     * @see kva.logiikka.Kurssitarjotin#vapauta()
+     */
+    private void vapautaPoistetut() {
+        for(Kurssitarjotin poistettu : poistetut) {
+            if(poistettu != null && poistettu != tarjotin && !valimuisti.containsValue(poistettu)) {
+                poistettu.vapauta();
+            }
+        }
+        poistetut.clear();
+    }
+
+    /**Palauttaa, kuinka monta kertaa {@code Kurssitarjotin} on löytynyt välimuistista.
+     *
+     * @return välimuistin osumien määrä
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public int getValimuistinOsumat() {
+        return osumat;
+    }
+
+    /**Palauttaa, kuinka monta kertaa {@code Kurssitarjotin} on jouduttu lataamaan, koska
+     * sitä ei löytynyt välimuistista.
+     *
+     * @return välimuistin ohitusten määrä
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public int getValimuistinOhitukset() {
+        return ohitukset;
     }
 
     /**Palauttaa listan periodeista, jotka on mahdollista ladata osaksi
@@ -179,8 +330,10 @@ public class Sovelluslogiikka {
      * <p>
      * Kun {@link #getTila()} on {@code LADATAAN_PERIODIEN_NIMIA}, viesti on "Ladataan 
      * periodien nimiä.", ja kun tila on {@code LADATAAN_KURSSITARJOTINTA}, viesti 
-     * on "Ladataan kurssitarjotinta." Muulloin viesti on tyhjä merkkijono. Lisää 
-     * toiminnallisuutta saatetaan toteuttaa tulevaisuudessa.
+     * on "Ladataan kurssitarjotinta." Kun {@code Kurssitarjotin} on ladattu lataajalla, 
+     * viesti kertoo, kuinka monessa millisekunnissa se koottiin ladatuista tiedoista 
+     * (ks. {@link kva.logiikka.Kurssitarjotin#getRakennusaika()}). Muulloin viesti 
+     * on tyhjä merkkijono. Lisää toiminnallisuutta saatetaan toteuttaa tulevaisuudessa.
      *
      * @return lataajan toimintaa kuvaava viesti, joka voidaan näyttää käyttöliittymässä.
      */
@@ -0,0 +1,230 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**{@link kva.logiikka.Kurssitarjotin}in valintojen muutoshistoria kumoamista ja
+ * uudelleen tekemistä varten.
+ * <p>
+ * Jokainen muutos tallennetaan {@link Muutos}-oliona, joka sisältää vain muutoksessa
+ * valittujen ja valinnasta poistettujen {@code Ryhmien} indeksit. Yhteen muutokseen
+ * kuuluvat myös päällekkäisyyksien vuoksi automaattisesti poistetut valinnat.
+ * Historiassa säilytetään enintään annettu määrä muutoksia, ja vanhimmat poistetaan
+ * ensin.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.Kurssitarjotin#kumoa()
+ * @since Kurssivalinta-avustin 1.1
+ */
+final class ValintaHistoria {
+
+    private final ArrayDeque<Muutos> kumottavat = new ArrayDeque<>();
+    private final ArrayDeque<Muutos> tehtavat = new ArrayDeque<>();
+    private int pituus;
+
+    private int[] lisatyt = new int[4];
+    private int lisattyja;
+    private int[] poistetut = new int[4];
+    private int poistettuja;
+    private boolean palautetaan;
+
+    /**Luo uuden, tyhjän {@code ValintaHistorian}.
+     *
+     * @param pituus kumottavissa olevien muutosten enimmäismäärä
+     */
+    ValintaHistoria(int pituus) {
+        setPituus(pituus);
+    }
+
+    /**Kirjaa valinnan tai valinnan poiston keskeneräiseen muutokseen.
+     * <p>
+     * Jos sama {@code Ryhma} valitaan ja sen valinta poistetaan saman muutoksen aikana,
+     * kirjaukset kumoavat toisensa.
+     *
+     * @param indeksi {@code Ryhman} indeksi
+     * @param valittu {@code true}, jos {@code Ryhma} valittiin, ja {@code false},
+     *        jos sen valinta poistettiin
+     */
+    void kirjaa(int indeksi, boolean valittu) {
+        if(valittu) {
+            if(!poista(poistetut, poistettuja, indeksi)) {
+                lisatyt = lisaa(lisatyt, lisattyja++, indeksi);
+            } else {
+                poistettuja--;
+            }
+        } else {
+            if(!poista(lisatyt, lisattyja, indeksi)) {
+                poistetut = lisaa(poistetut, poistettuja++, indeksi);
+            } else {
+                lisattyja--;
+            }
+        }
+    }
+
+    /**Päättää keskeneräisen muutoksen ja lisää sen historiaan. Uusi muutos tyhjentää
+     * uudelleen tehtävien muutosten listan. Tyhjää muutosta ei lisätä, eikä historiaan
+     * lisätä muutosta, joka syntyi kumottaessa tai uudelleen tehtäessä.
+     *
+     * @return päätetty muutos, tai {@code null}, jos muutos oli tyhjä
+     */
+    Muutos paata() {
+        if(lisattyja == 0 && poistettuja == 0) {
+            return null;
+        }
+        Muutos muutos = new Muutos(Arrays.copyOf(lisatyt, lisattyja), Arrays.copyOf(poistetut, poistettuja));
+        lisattyja = 0;
+        poistettuja = 0;
+        if(palautetaan) {
+            return muutos;
+        }
+        tehtavat.clear();
+        if(pituus == 0) {
+            return muutos;
+        }
+        if(kumottavat.size() == pituus) {
+            kumottavat.removeLast();
+        }
+        kumottavat.push(muutos);
+        return muutos;
+    }
+
+    /**Palauttaa muutoksen, joka kumotaan seuraavaksi.
+     *
+     * @return viimeisin muutos, tai {@code null}, jos kumottavaa ei ole
+     */
+    Muutos getKumottava() {
+        return kumottavat.peek();
+    }
+
+    /**Palauttaa muutoksen, joka tehdään uudelleen seuraavaksi.
+     *
+     * @return viimeisin kumottu muutos, tai {@code null}, jos uudelleen tehtävää ei ole
+     */
+    Muutos getTehtava() {
+        return tehtavat.peek();
+    }
+
+    /**Siirtää viimeisimmän muutoksen kumottujen muutosten listalle.
+     */
+    void kumottu() {
+        tehtavat.push(kumottavat.pop());
+    }
+
+    /**Siirtää viimeisimmän kumotun muutoksen takaisin kumottavien muutosten listalle.
+     */
+    void tehty() {
+        kumottavat.push(tehtavat.pop());
+    }
+
+    /**Asettaa, kumotaanko tai tehdäänkö muutosta parhaillaan uudelleen. Sillä välin
+     * päätettyjä muutoksia ei lisätä historiaan.
+     *
+     * @param palautetaan {@code true}, kun muutosta aletaan kumota tai tehdä uudelleen
+     */
+    void setPalautetaan(boolean palautetaan) {
+        this.palautetaan = palautetaan;
+    }
+
+    /**Asettaa kumottavissa olevien muutosten enimmäismäärän. Ylimääräiset muutokset
+     * poistetaan vanhimmasta alkaen.
+     *
+     * @param pituus muutosten enimmäismäärä
+     * @throws java.lang.IllegalArgumentException jos {@code pituus} on negatiivinen
+     */
+    void setPituus(int pituus) {
+        if(pituus < 0) {
+            throw new IllegalArgumentException("Historian pituus ei voi olla negatiivinen.");
+        }
+        this.pituus = pituus;
+        while(kumottavat.size() > pituus) {
+            kumottavat.removeLast();
+        }
+        while(tehtavat.size() > pituus) {
+            tehtavat.removeLast();
+        }
+    }
+
+    /**Palauttaa kumottavissa olevien muutosten enimmäismäärän.
+     *
+     * @return muutosten enimmäismäärä
+     */
+    int getPituus() {
+        return pituus;
+    }
+
+    /**Tyhjentää historian.
+     */
+    void tyhjenna() {
+        kumottavat.clear();
+        tehtavat.clear();
+    }
+
+    private static int[] lisaa(int[] taulukko, int koko, int arvo) {
+        if(koko == taulukko.length) {
+            taulukko = Arrays.copyOf(taulukko, koko * 2);
+        }
+        taulukko[koko] = arvo;
+        return taulukko;
+    }
+
+    /**Poistaa arvon taulukon alkuosasta siirtämällä viimeisen alkion sen paikalle.
+     */
+    private static boolean poista(int[] taulukko, int koko, int arvo) {
+        for(int i = 0; i < koko; i++) {
+            if(taulukko[i] == arvo) {
+                taulukko[i] = taulukko[koko - 1];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**Yksi valintojen muutos: muutoksessa valittujen ja valinnasta poistettujen
+     * {@code Ryhmien} indeksit.
+     *
+     * @author Väinö Viinikka
+     * @see kva.logiikka.ValintaHistoria
+     */
+    static final class Muutos {
+
+        private final int[] lisatyt;
+        private final int[] poistetut;
+
+        private Muutos(int[] lisatyt, int[] poistetut) {
+            this.lisatyt = lisatyt;
+            this.poistetut = poistetut;
+        }
+
+        /**Palauttaa muutoksessa valittujen {@code Ryhmien} indeksit.
+         *
+         * @return valittujen {@code Ryhmien} indeksit
+         */
+        int[] getLisatyt() {
+            return lisatyt;
+        }
+
+        /**Palauttaa muutoksessa valinnasta poistettujen {@code Ryhmien} indeksit.
+         *
+         * @return valinnasta poistettujen {@code Ryhmien} indeksit
+         */
+        int[] getPoistetut() {
+            return poistetut;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka;
+
+import java.util.function.IntConsumer;
+
+/**Muuttumaton joukko valittujen {@code Ryhmien} indeksejä.
+ * <p>
+ * {@code ValintaTila} on pysyvä bittijoukko: se tallennetaan puuna, jonka lehdissä
+ * on 1024 bittiä ja sisäsolmuissa 32 haaraa. Muutokset palauttavat uuden {@code ValintaTilan},
+ * joka jakaa muuttumattomat solmut vanhan kanssa, joten yksi muutos kopioi vain yhden
+ * polun juuresta lehteen. Vanha tila pysyy ennallaan, joten tilasta voi haarauttaa
+ * vaihtoehtoisia suunnitelmia ilman kopiointia.
+ * <p>
+ * Kahden tilan erot selvitetään metodilla {@link #erot(kva.logiikka.ValintaTila, java.util.function.IntConsumer, java.util.function.IntConsumer)},
+ * joka ohittaa tilojen yhteiset solmut. Erojen selvittäminen vie siis aikaa muutosten
+ * määrän, ei valintojen määrän, mukaan.
+ * <p>
+ * Indeksit ovat {@code Ryhmien} indeksejä {@link kva.logiikka.Kurssitarjotin}issa,
+ * ks. {@link kva.logiikka.Ryhma#getIndeksi()}. Nykyinen tila saadaan metodilla
+ * {@link kva.logiikka.Kurssitarjotin#getValintaTila()}, ja tallennettu tila otetaan
+ * käyttöön metodilla {@link kva.logiikka.Kurssitarjotin#setValintaTila(kva.logiikka.ValintaTila)}.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.Kurssitarjotin
+ * @since Kurssivalinta-avustin 1.1
+ */
+public final class ValintaTila {
+
+    /**Tyhjä {@code ValintaTila}, jossa yhtäkään {@code Ryhmaa} ei ole valittu.
+     */
+    public static final ValintaTila TYHJA = new ValintaTila(null, 0, 0);
+
+    private static final int HAARABITIT = 5;
+    private static final int HAARAT = 1 << HAARABITIT;
+    private static final int LEHTIBITIT = 10;
+    private static final int LEHTISANAT = (1 << LEHTIBITIT) / Long.SIZE;
+
+    private final Object juuri;
+    private final int taso;
+    private final int koko;
+
+    private ValintaTila(Object juuri, int taso, int koko) {
+        this.juuri = juuri;
+        this.taso = taso;
+        this.koko = koko;
+    }
+
+    /**Kertoo, sisältääkö tila annetun indeksin.
+     *
+     * @param indeksi {@code Ryhman} indeksi
+     * @return {@code true}, jos indeksi on tilassa
+     */
+    public boolean sisaltaa(int indeksi) {
+        if(indeksi < 0 || indeksi >= kapasiteetti(taso)) {
+            return false;
+        }
+        Object solmu = juuri;
+        for(int t = taso; t > 0 && solmu != null; t--) {
+            solmu = ((Object[]) solmu)[haara(indeksi, t)];
+        }
+        if(solmu == null) {
+            return false;
+        }
+        int bitti = indeksi & ((1 << LEHTIBITIT) - 1);
+        return (((long[]) solmu)[bitti >>> 6] & (1L << bitti)) != 0;
+    }
+
+    /**Palauttaa tilan, johon on lisätty annettu indeksi.
+     *
+     * @param indeksi lisättävä indeksi
+     * @return uusi {@code ValintaTila}, tai tämä, jos indeksi oli jo tilassa
+     * @throws java.lang.IllegalArgumentException jos {@code indeksi} on negatiivinen
+     */
+    public ValintaTila lisaa(int indeksi) {
+        if(indeksi < 0) {
+            throw new IllegalArgumentException("Indeksi ei voi olla negatiivinen: " + indeksi);
+        }
+        if(sisaltaa(indeksi)) {
+            return this;
+        }
+        Object uusiJuuri = juuri;
+        int uusiTaso = taso;
+        while(indeksi >= kapasiteetti(uusiTaso)) {
+            if(uusiJuuri != null) {
+                Object[] kasvatettu = new Object[HAARAT];
+                kasvatettu[0] = uusiJuuri;
+                uusiJuuri = kasvatettu;
+            }
+            uusiTaso++;
+        }
+        return new ValintaTila(aseta(uusiJuuri, uusiTaso, indeksi, true), uusiTaso, koko + 1);
+    }
+
+    /**Palauttaa tilan, josta on poistettu annettu indeksi.
+     *
+     * @param indeksi poistettava indeksi
+     * @return uusi {@code ValintaTila}, tai tämä, jos indeksi ei ollut tilassa
+     */
+    public ValintaTila poista(int indeksi) {
+        if(!sisaltaa(indeksi)) {
+            return this;
+        }
+        if(koko == 1) {
+            return TYHJA;
+        }
+        return new ValintaTila(aseta(juuri, taso, indeksi, false), taso, koko - 1);
+    }
+
+    /**Palauttaa tilan indeksien määrän.
+     *
+     * @return valittujen {@code Ryhmien} määrä
+     */
+    public int koko() {
+        return koko;
+    }
+
+    /**Kertoo, onko tila tyhjä.
+     *
+     * @return {@code true}, jos tilassa ei ole yhtään indeksiä
+     */
+    public boolean onTyhja() {
+        return koko == 0;
+    }
+
+    /**Käy läpi tilan indeksit kasvavassa järjestyksessä.
+     *
+     * @param kasittelija kutsutaan jokaiselle indeksille
+     */
+    public void forEach(IntConsumer kasittelija) {
+        erot(TYHJA, kasittelija, (indeksi) -> {});
+    }
+
+    /**Selvittää, mitkä indeksit ovat tässä tilassa mutta eivät annetussa, ja päinvastoin.
+     * <p>
+     * Tilojen yhteiset solmut ohitetaan, joten toisistaan haarautettujen tilojen vertailu
+     * vie aikaa niiden välisten muutosten mukaan.
+     *
+     * @param toinen tila, johon tätä verrataan
+     * @param vainTassa kutsutaan indekseille, jotka ovat vain tässä tilassa
+     * @param vainToisessa kutsutaan indekseille, jotka ovat vain {@code toisessa}
+     */
+    public void erot(ValintaTila toinen, IntConsumer vainTassa, IntConsumer vainToisessa) {
+        int yhteinenTaso = Math.max(taso, toinen.taso);
+        vertaa(nosta(juuri, taso, yhteinenTaso), nosta(toinen.juuri, toinen.taso, yhteinenTaso),
+                yhteinenTaso, 0, vainTassa, vainToisessa);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj) {
+            return true;
+        }
+        if(!(obj instanceof ValintaTila)) {
+            return false;
+        }
+        ValintaTila toinen = (ValintaTila) obj;
+        if(koko != toinen.koko) {
+            return false;
+        }
+        boolean[] sama = {true};
+        erot(toinen, (indeksi) -> sama[0] = false, (indeksi) -> sama[0] = false);
+        return sama[0];
+    }
+
+    @Override
+    public int hashCode() {
+        int[] hash = {0};
+        forEach((indeksi) -> hash[0] += indeksi * 0x9E3779B9);
+        return hash[0];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder teksti = new StringBuilder("ValintaTila{");
+        forEach((indeksi) -> teksti.append(teksti.length() > 12 ? ", " : "").append(indeksi));
+        return teksti.append('}').toString();
+    }
+
+    private static int kapasiteetti(int taso) {
+        int bitit = LEHTIBITIT + HAARABITIT * taso;
+        return bitit >= 31 ? Integer.MAX_VALUE : 1 << bitit;
+    }
+
+    private static int haara(int indeksi, int taso) {
+        return (indeksi >>> (LEHTIBITIT + HAARABITIT * (taso - 1))) & (HAARAT - 1);
+    }
+
+    /**Palauttaa kopion polusta juuresta indeksin lehteen, jossa indeksin bitti on
+     * asetettu tai poistettu. Tyhjiksi jäävät solmut korvataan {@code null}-arvolla.
+     */
+    private static Object aseta(Object solmu, int taso, int indeksi, boolean arvo) {
+        if(taso == 0) {
+            long[] lehti = solmu == null ? new long[LEHTISANAT] : ((long[]) solmu).clone();
+            int bitti = indeksi & ((1 << LEHTIBITIT) - 1);
+            if(arvo) {
+                lehti[bitti >>> 6] |= 1L << bitti;
+            } else {
+                lehti[bitti >>> 6] &= ~(1L << bitti);
+                for(long sana : lehti) {
+                    if(sana != 0) {
+                        return lehti;
+                    }
+                }
+                return null;
+            }
+            return lehti;
+        }
+        Object[] lapset = solmu == null ? new Object[HAARAT] : ((Object[]) solmu).clone();
+        int haara = haara(indeksi, taso);
+        lapset[haara] = aseta(lapset[haara], taso - 1, indeksi, arvo);
+        if(!arvo && lapset[haara] == null) {
+            for(Object lapsi : lapset) {
+                if(lapsi != null) {
+                    return lapset;
+                }
+            }
+            return null;
+        }
+        return lapset;
+    }
+
+    /**Nostaa solmun annetulle tasolle lisäämällä sen yläpuolelle sisäsolmuja, joiden
+     * ensimmäinen haara se on.
+     */
+    private static Object nosta(Object solmu, int taso, int uusiTaso) {
+        for(int t = taso; t < uusiTaso && solmu != null; t++) {
+            Object[] ylempi = new Object[HAARAT];
+            ylempi[0] = solmu;
+            solmu = ylempi;
+        }
+        return solmu;
+    }
+
+    private static void vertaa(Object tama, Object toinen, int taso, int alku, IntConsumer vainTassa, IntConsumer vainToisessa) {
+        if(tama == toinen) {
+            return;
+        }
+        if(taso == 0) {
+            long[] a = (long[]) tama;
+            long[] b = (long[]) toinen;
+            for(int i = 0; i < LEHTISANAT; i++) {
+                long x = a == null ? 0 : a[i];
+                long y = b == null ? 0 : b[i];
+                kutsu(x & ~y, alku + i * Long.SIZE, vainTassa);
+                kutsu(y & ~x, alku + i * Long.SIZE, vainToisessa);
+            }
+            return;
+        }
+        Object[] a = (Object[]) tama;
+        Object[] b = (Object[]) toinen;
+        int leveys = 1 << (LEHTIBITIT + HAARABITIT * (taso - 1));
+        for(int i = 0; i < HAARAT; i++) {
+            Object x = a == null ? null : a[i];
+            Object y = b == null ? null : b[i];
+            if(x != null || y != null) {
+                vertaa(x, y, taso - 1, alku + i * leveys, vainTassa, vainToisessa);
+            }
+        }
+    }
+
+    private static void kutsu(long sana, int alku, IntConsumer kasittelija) {
+        while(sana != 0) {
+            kasittelija.accept(alku + Long.numberOfTrailingZeros(sana));
+            sana &= sana - 1;
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka.lataus;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**Kevyt, vain eteenpäin lukeva HTML-tokenisoija, joka syöttää sivun elementit
+ * {@link kva.logiikka.lataus.WilmaJasennin}ille.
+ * <p>
+ * Tokenisoija ei rakenna DOM-puuta eikä korjaa virheellistä HTML:ää. Se tunnistaa
+ * alku- ja loppumerkinnät, tyhjät elementit, kommentit sekä script- ja style-elementit,
+ * joiden sisältö ohitetaan. Attribuuteista luetaan vain ne, joita {@code WilmaJasennin}
+ * tarvitsee. Yleisimmät HTML-entiteetit puretaan tekstistä ja attribuuttien arvoista.
+ * <p>
+ * Lähteenä voi olla {@code CharSequence}, jota luetaan suoraan, tai {@code Reader},
+ * jota luetaan puskurillinen kerrallaan.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.lataus.WilmaJasennin
+ * @since Kurssivalinta-avustin 1.1
+ */
+final class HtmlTokenisoija {
+
+    private static final int LOPPU = -1;
+    private static final int PUSKURIN_KOKO = 1 << 14;
+
+    private static final HashSet<String> TYHJAT_ELEMENTIT = new HashSet<>(Arrays.asList(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta",
+            "param", "source", "track", "wbr"));
+    private static final HashMap<String, Character> ENTITEETIT = new HashMap<>();
+
+    static {
+        ENTITEETIT.put("amp", '&');
+        ENTITEETIT.put("lt", '<');
+        ENTITEETIT.put("gt", '>');
+        ENTITEETIT.put("quot", '"');
+        ENTITEETIT.put("apos", '\'');
+        //Sitova välilyönti säilytetään kuten DOM-puun textContentissa, jotta palkkien 
+        //nimet ovat samat kuin WebEnginen kautta luettaessa.
+        ENTITEETIT.put("nbsp", '\u00A0');
+        ENTITEETIT.put("auml", 'ä');
+        ENTITEETIT.put("Auml", 'Ä');
+        ENTITEETIT.put("ouml", 'ö');
+        ENTITEETIT.put("Ouml", 'Ö');
+        ENTITEETIT.put("aring", 'å');
+        ENTITEETIT.put("Aring", 'Å');
+    }
+
+    private final CharSequence teksti;
+    private final Reader lukija;
+    private final char[] puskuri;
+    private int puskurinPituus = 0;
+    private int sijainti = 0;
+    /**Yksi merkki, joka on luettu, mutta palautettu takaisin luettavaksi.
+     */
+    private int palautettu = LOPPU - 1;
+
+    private final StringBuilder tekstiPuskuri = new StringBuilder();
+    private final StringBuilder nimi = new StringBuilder();
+    private final StringBuilder arvo = new StringBuilder();
+    private final StringBuilder entiteetti = new StringBuilder();
+
+    private String id;
+    private String luokka;
+    private String otsikko;
+    private String linkki;
+
+    /**Luo tokenisoijan, joka lukee annettua merkkijonoa.
+     *
+     * @param teksti luettava HTML
+     */
+    HtmlTokenisoija(CharSequence teksti) {
+        this.teksti = teksti;
+        this.lukija = null;
+        this.puskuri = null;
+    }
+
+    /**Luo tokenisoijan, joka lukee annettua {@code Readeria}.
+     *
+     * @param lukija luettava HTML
+     */
+    HtmlTokenisoija(Reader lukija) {
+        this.teksti = null;
+        this.lukija = lukija;
+        this.puskuri = new char[PUSKURIN_KOKO];
+    }
+
+    /**Lukee koko lähteen ja syöttää sen elementit jäsentimelle.
+     *
+     * @param jasennin jäsennin, jolle elementit syötetään
+     * @throws java.io.IOException jos {@code Readerin} lukeminen epäonnistuu
+     */
+    void lue(WilmaJasennin jasennin) throws IOException {
+        int c;
+        while((c = seuraava()) != LOPPU) {
+            if(c != '<') {
+                lisaaTekstiin(c);
+                continue;
+            }
+            int d = seuraava();
+            if(d == '/') {
+                lahetaTeksti(jasennin);
+                lueLoppumerkinta(jasennin);
+            } else if(d == '!' || d == '?') {
+                lahetaTeksti(jasennin);
+                ohitaMaarittely(d);
+            } else if(onKirjain(d)) {
+                lahetaTeksti(jasennin);
+                palauta(d);
+                lueAlkumerkinta(jasennin);
+            } else {
+                tekstiPuskuri.append('<');
+                if(d != LOPPU) {
+                    palauta(d);
+                }
+            }
+        }
+        lahetaTeksti(jasennin);
+        jasennin.lopeta();
+    }
+
+    private void lueAlkumerkinta(WilmaJasennin jasennin) throws IOException {
+        String tagi = lueNimi();
+        id = null;
+        luokka = null;
+        otsikko = null;
+        linkki = null;
+        boolean itsestaanSulkeutuva = false;
+
+        while(true) {
+            int c = ohitaValit();
+            if(c == LOPPU || c == '>') {
+                break;
+            }
+            if(c == '/') {
+                int d = seuraava();
+                if(d == '>') {
+                    itsestaanSulkeutuva = true;
+                    break;
+                }
+                palauta(d);
+                continue;
+            }
+            palauta(c);
+            lueAttribuutti();
+        }
+
+        jasennin.alkaa(tagi, id, luokka, otsikko, linkki);
+        if(itsestaanSulkeutuva || TYHJAT_ELEMENTIT.contains(tagi)) {
+            jasennin.loppuu(tagi);
+        } else if(tagi.equals("script") || tagi.equals("style")) {
+            ohitaRaakateksti(tagi);
+            jasennin.loppuu(tagi);
+        }
+    }
+
+    private void lueLoppumerkinta(WilmaJasennin jasennin) throws IOException {
+        int c = seuraava();
+        if(!onKirjain(c)) {
+            //Virheellinen loppumerkintä, kuten "</>", tulkitaan kommentiksi.
+            while(c != LOPPU && c != '>') {
+                c = seuraava();
+            }
+            return;
+        }
+        palauta(c);
+        String tagi = lueNimi();
+        while(c != LOPPU && c != '>') {
+            c = seuraava();
+        }
+        jasennin.loppuu(tagi);
+    }
+
+    /**Lukee elementin tai attribuutin nimen pienin kirjaimin.
+     */
+    private String lueNimi() throws IOException {
+        nimi.setLength(0);
+        int c;
+        while((c = seuraava()) != LOPPU) {
+            if(c == '>' || c == '/' || c == '=' || Character.isWhitespace(c)) {
+                palauta(c);
+                break;
+            }
+            nimi.append(Character.toLowerCase((char) c));
+        }
+        return nimi.toString();
+    }
+
+    private void lueAttribuutti() throws IOException {
+        String attribuutti = lueNimi();
+        if(attribuutti.isEmpty()) {
+            //Esimerkiksi yksittäinen "=" ohitetaan.
+            seuraava();
+            return;
+        }
+        int c = ohitaValit();
+        if(c != '=') {
+            if(c != LOPPU) {
+                palauta(c);
+            }
+            asetaAttribuutti(attribuutti, "");
+            return;
+        }
+        c = ohitaValit();
+        arvo.setLength(0);
+        if(c == '"' || c == '\'') {
+            int lainausmerkki = c;
+            while((c = seuraava()) != LOPPU && c != lainausmerkki) {
+                lisaaPurettuna(arvo, c);
+            }
+        } else {
+            while(c != LOPPU && c != '>' && !Character.isWhitespace(c)) {
+                lisaaPurettuna(arvo, c);
+                c = seuraava();
+            }
+            if(c != LOPPU) {
+                palauta(c);
+            }
+        }
+        asetaAttribuutti(attribuutti, arvo.toString());
+    }
+
+    private void asetaAttribuutti(String attribuutti, String arvo) {
+        switch(attribuutti) {
+            case "id":
+                id = arvo;
+                break;
+            case "class":
+                luokka = arvo;
+                break;
+            case "title":
+                otsikko = arvo;
+                break;
+            case "href":
+                linkki = arvo;
+                break;
+        }
+    }
+
+    /**Ohittaa kommentin, dokumenttityypin määrittelyn tai käsittelyohjeen.
+     */
+    private void ohitaMaarittely(int ensimmainen) throws IOException {
+        if(ensimmainen == '!') {
+            int a = seuraava();
+            if(a == '-') {
+                int b = seuraava();
+                if(b == '-') {
+                    ohitaKommentti();
+                    return;
+                }
+                palauta(b);
+            } else {
+                palauta(a);
+            }
+        }
+        int c;
+        while((c = seuraava()) != LOPPU && c != '>') {
+        }
+    }
+
+    private void ohitaKommentti() throws IOException {
+        int viivoja = 0;
+        int c;
+        while((c = seuraava()) != LOPPU) {
+            if(c == '>' && viivoja >= 2) {
+                return;
+            }
+            viivoja = c == '-' ? viivoja + 1 : 0;
+        }
+    }
+
+    /**Ohittaa script- tai style-elementin sisällön sen loppumerkintään asti.
+     */
+    private void ohitaRaakateksti(String tagi) throws IOException {
+        int c;
+        while((c = seuraava()) != LOPPU) {
+            if(c != '<') {
+                continue;
+            }
+            int d = seuraava();
+            if(d != '/') {
+                palauta(d);
+                continue;
+            }
+            boolean tasmaa = true;
+            for(int i = 0; i < tagi.length(); i++) {
+                int e = seuraava();
+                if(e == LOPPU || Character.toLowerCase((char) e) != tagi.charAt(i)) {
+                    tasmaa = false;
+                    if(e != LOPPU) {
+                        palauta(e);
+                    }
+                    break;
+                }
+            }
+            if(tasmaa) {
+                while((c = seuraava()) != LOPPU && c != '>') {
+                }
+                return;
+            }
+        }
+    }
+
+    private void lisaaTekstiin(int c) throws IOException {
+        lisaaPurettuna(tekstiPuskuri, c);
+    }
+
+    /**Lisää merkin puskuriin ja purkaa sen, jos se aloittaa HTML-entiteetin.
+     */
+    private void lisaaPurettuna(StringBuilder kohde, int c) throws IOException {
+        if(c != '&') {
+            kohde.append((char) c);
+            return;
+        }
+        entiteetti.setLength(0);
+        int d;
+        while((d = seuraava()) != LOPPU && entiteetti.length() < 10
+                && (Character.isLetterOrDigit(d) || (d == '#' && entiteetti.length() == 0))) {
+            entiteetti.append((char) d);
+        }
+        boolean puolipiste = d == ';';
+        if(!puolipiste && d != LOPPU) {
+            palauta(d);
+        }
+        int merkki = puraEntiteetti(entiteetti);
+        if(merkki >= 0) {
+            kohde.appendCodePoint(merkki);
+        } else {
+            kohde.append('&').append(entiteetti);
+            if(puolipiste) {
+                kohde.append(';');
+            }
+        }
+    }
+
+    private static int puraEntiteetti(CharSequence nimi) {
+        if(nimi.length() > 1 && nimi.charAt(0) == '#') {
+            try {
+                int arvo;
+                if(nimi.charAt(1) == 'x' || nimi.charAt(1) == 'X') {
+                    arvo = Integer.parseInt(nimi.subSequence(2, nimi.length()).toString(), 16);
+                } else {
+                    arvo = Integer.parseInt(nimi.subSequence(1, nimi.length()).toString());
+                }
+                return Character.isValidCodePoint(arvo) ? arvo : -1;
+            } catch(NumberFormatException e) {
+                return -1;
+            }
+        }
+        Character merkki = ENTITEETIT.get(nimi.toString());
+        return merkki == null ? -1 : merkki;
+    }
+
+    private void lahetaTeksti(WilmaJasennin jasennin) {
+        if(tekstiPuskuri.length() > 0) {
+            jasennin.teksti(tekstiPuskuri);
+            tekstiPuskuri.setLength(0);
+        }
+    }
+
+    private int ohitaValit() throws IOException {
+        int c;
+        while((c = seuraava()) != LOPPU && Character.isWhitespace(c)) {
+        }
+        return c;
+    }
+
+    private static boolean onKirjain(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private void palauta(int c) {
+        palautettu = c;
+    }
+
+    private int seuraava() throws IOException {
+        if(palautettu >= LOPPU) {
+            int c = palautettu;
+            palautettu = LOPPU - 1;
+            return c;
+        }
+        if(teksti != null) {
+            return sijainti < teksti.length() ? teksti.charAt(sijainti++) : LOPPU;
+        }
+        if(sijainti == puskurinPituus) {
+            puskurinPituus = lukija.read(puskuri, 0, puskuri.length);
+            sijainti = 0;
+            if(puskurinPituus <= 0) {
+                puskurinPituus = 0;
+                return LOPPU;
+            }
+        }
+        return puskuri[sijainti++];
+    }
+}
@@ -0,0 +1,355 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka.lataus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.CookieHandler;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import javafx.concurrent.Task;
+import javafx.scene.web.WebEngine;
+import kva.logiikka.PeriodinTunniste;
+
+/**{@code KurssitarjottimenLataaja}, joka lataa Wilman sivut suoraan HTTP-pyynnöillä
+ * ilman {@code WebEngineä}.
+ * <p>
+ * Kirjautuminen tehdään kuten {@link kva.logiikka.lataus.WebEngineLataaja}a käytettäessä:
+ * metodin {@link #lataaPeriodienTunnisteet(java.lang.Object[])} parametrin ensimmäinen
+ * alkio on {@link javafx.scene.web.WebEngine}, jolla käyttäjä on kirjautunut Wilmaan.
+ * Kirjautumisen evästeet siirtyvät {@code HttpLataajalle} JavaFX:n yhteisen {@link java.net.CookieHandler}in
+ * kautta, jota sekä {@code WebEngine} että {@link java.net.HttpURLConnection} käyttävät.
+ * Lataaja tarkistaa siirron yhteydessä, että Wilman evästeet löytyvät.
+ * <p>
+ * Sivuja ei piirretä, eikä niiden tyylitiedostoja tai skriptejä ladata. Pyynnöt
+ * käyttävät pysyviä yhteyksiä ja gzip-pakkausta, ja periodien sivut ladataan rinnakkain
+ * enintään konstruktorissa annetulla määrällä säikeitä. Sivut jäsennetään {@link kva.logiikka.lataus.WilmaJasennin}illa
+ * taustasäikeessä sitä mukaa, kuin vastausta luetaan.
+ * <p>
+ * Jos lataajalle annetaan {@link kva.logiikka.lataus.PeriodienValimuisti}, jo kerran
+ * ladatut periodit pyydetään ehdollisesti ETag- ja Last-Modified-otsakkeiden avulla.
+ * Jos Wilma vastaa, ettei sivu ole muuttunut, tai sivun sisältö on sama kuin edellisellä
+ * kerralla, periodi luetaan välimuistista jäsentämättä sivua uudelleen.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.lataus.WebEngineLataaja
+ * @since Kurssivalinta-avustin 1.1
+ */
+public class HttpLataaja extends KurssitarjottimenLataaja {
+
+    /**Oletusarvoinen samanaikaisten pyyntöjen enimmäismäärä.
+     */
+    public static final int OLETUSRINNAKKAISUUS = 4;
+
+    private final int rinnakkaisetLataukset;
+    private final PeriodienValimuisti valimuisti;
+    private String perusOsoite;
+    private String selain;
+    private final HashMap<PeriodinTunniste, String> linkit = new HashMap<>();
+
+    /**Luo uuden {@code HttpLataajan}, joka lataa enintään {@value #OLETUSRINNAKKAISUUS}
+     * periodia samanaikaisesti.
+     */
+    public HttpLataaja() {
+        this(OLETUSRINNAKKAISUUS);
+    }
+
+    /**Luo uuden {@code HttpLataajan}.
+     *
+     * @param rinnakkaisetLataukset samanaikaisesti ladattavien periodien enimmäismäärä
+     * @throws java.lang.IllegalArgumentException jos {@code rinnakkaisetLataukset} on
+     *         pienempi kuin 1
+     */
+    public HttpLataaja(int rinnakkaisetLataukset) {
+        this(rinnakkaisetLataukset, null);
+    }
+
+    /**Luo uuden {@code HttpLataajan}, joka tallentaa ladatut periodit välimuistiin.
+     *
+     * @param rinnakkaisetLataukset samanaikaisesti ladattavien periodien enimmäismäärä
+     * @param valimuisti välimuisti, josta muuttumattomat periodit luetaan, tai {@code null},
+     *        jos välimuistia ei käytetä
+     * @throws java.lang.IllegalArgumentException jos {@code rinnakkaisetLataukset} on
+     *         pienempi kuin 1
+     */
+    public HttpLataaja(int rinnakkaisetLataukset, PeriodienValimuisti valimuisti) {
+        if(rinnakkaisetLataukset < 1) {
+            throw new IllegalArgumentException("Rinnakkaisia latauksia on oltava vähintään yksi.");
+        }
+        this.rinnakkaisetLataukset = rinnakkaisetLataukset;
+        this.valimuisti = valimuisti;
+    }
+
+    /**{@inheritDoc}
+     *
+     * @param data taulukko, jonka solussa 0 on {@code WebEngine}, jolla on kirjauduttu
+     *        Wilmaan siten, että opiskelijan etusivu on auki.
+     */
+    @Override
+    public void lataaPeriodienTunnisteet(Object[] data) {
+        WebEngine moottori = (WebEngine) data[0];
+        try {
+            perusOsoite = Wilma.perusOsoite(moottori.getLocation());
+            if(perusOsoite == null) {
+                throw new LataajaPoikkeus("WebEnginellä ei ole kirjauduttu Wilmaan. Osoite: " + moottori.getLocation());
+            }
+            tarkistaEvasteet();
+        } catch(LataajaPoikkeus poikkeus) {
+            lahetaVirhe(poikkeus);
+            return;
+        }
+        selain = moottori.getUserAgent();
+
+        Task<Void> tehtava = new Task<Void>() {
+
+            @Override
+            protected Void call() throws Exception {
+                WilmaJasennin jasennin = hae(perusOsoite + "selection/view?", null);
+                jasennin.getPeriodienLinkit().forEach((tunniste, linkki) -> {
+                    linkit.put(tunniste, linkki);
+                    lisaaPeriodinTunniste(tunniste);
+                });
+                return null;
+            }
+        };
+
+        tehtava.setOnSucceeded((ev) -> super.lahetaPeriodinTunnisteet());
+        tehtava.setOnFailed((ev) -> super.lahetaVirhe(ev.getSource().getException()));
+        tehtava.setOnCancelled((ev) -> super.lahetaVirhe(new LataajaPoikkeus("Lataus keskeytettiin.")));
+
+        Thread th = new Thread(tehtava);
+        th.setDaemon(true);
+        th.start();
+    }
+
+    @Override
+    public void lataaKurssitarjotin(List<PeriodinTunniste> periodit) {
+        Task<Void> tehtava = new Task<Void>() {
+
+            @Override
+            protected Void call() throws Exception {
+                if(periodit.isEmpty()) {
+                    return null;
+                }
+                ExecutorService saikeet = Executors.newFixedThreadPool(Math.min(rinnakkaisetLataukset, periodit.size()), (ajo) -> {
+                    Thread th = new Thread(ajo);
+                    th.setDaemon(true);
+                    return th;
+                });
+                try {
+                    List<Future<LuettuPeriodi>> tulokset = new ArrayList<>();
+                    for(PeriodinTunniste periodi : periodit) {
+                        tulokset.add(saikeet.submit(() -> lataaPeriodi(periodi)));
+                    }
+                    for(Future<LuettuPeriodi> tulos : tulokset) {
+                        if(isCancelled()) {
+                            return null;
+                        }
+                        try {
+                            tulos.get().lisaaLataajalle(HttpLataaja.this);
+                        } catch(ExecutionException e) {
+                            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                        }
+                    }
+                } finally {
+                    saikeet.shutdownNow();
+                }
+                return null;
+            }
+        };
+
+        tehtava.setOnSucceeded((ev) -> super.lahetaKurssitarjotin());
+        tehtava.setOnFailed((ev) -> super.lahetaVirhe(ev.getSource().getException()));
+        tehtava.setOnCancelled((ev) -> super.lahetaVirhe(new LataajaPoikkeus("Lataus keskeytettiin.")));
+
+        Thread th = new Thread(tehtava);
+        th.setDaemon(true);
+        th.start();
+    }
+
+    /**Lataa ja jäsentää yhden periodin sivun.
+     *
+     * @param periodi ladattava periodi
+     * @return periodin {@code Ryhmat} ja {@code Moduulit}
+     * @throws java.io.IOException jos sivun lataaminen epäonnistuu tai sivulla ei ole
+     *         kurssitarjotinta
+     */
+    private LuettuPeriodi lataaPeriodi(PeriodinTunniste periodi) throws IOException {
+        String linkki = linkit.get(periodi);
+        if(valimuisti == null) {
+            return tarjotin(hae(perusOsoite + "selection/" + linkki, periodi), periodi);
+        }
+
+        PeriodienValimuisti.Merkinta merkinta = valimuisti.hae(perusOsoite, linkki, periodi);
+        String osoite = perusOsoite + "selection/" + linkki;
+        HttpURLConnection yhteys = avaa(osoite);
+        if(merkinta != null) {
+            if(merkinta.getEtag() != null) {
+                yhteys.setRequestProperty("If-None-Match", merkinta.getEtag());
+            }
+            if(merkinta.getMuokattu() != null) {
+                yhteys.setRequestProperty("If-Modified-Since", merkinta.getMuokattu());
+            }
+        }
+        if(merkinta != null && yhteys.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            //Tyhjä vastaus suljetaan, jotta yhteys palautuu uudelleenkäytettäväksi.
+            yhteys.getInputStream().close();
+            return merkinta.getPeriodi();
+        }
+        byte[] sisalto = lueKaikki(vastaus(yhteys, osoite));
+        byte[] tiiviste = PeriodienValimuisti.tiiviste(sisalto);
+        LuettuPeriodi luettu;
+        if(merkinta != null && Arrays.equals(tiiviste, merkinta.getTiiviste())) {
+            luettu = merkinta.getPeriodi();
+        } else {
+            WilmaJasennin jasennin = WilmaJasennin.jasenna(new ByteArrayInputStream(sisalto), merkisto(yhteys.getContentType()), periodi);
+            luettu = tarjotin(jasennin, periodi);
+        }
+        valimuisti.tallenna(perusOsoite, linkki, yhteys.getHeaderField("ETag"), yhteys.getHeaderField("Last-Modified"), tiiviste, luettu);
+        return luettu;
+    }
+
+    private LuettuPeriodi tarjotin(WilmaJasennin jasennin, PeriodinTunniste periodi) throws LataajaPoikkeus {
+        if(!jasennin.onTarjotin()) {
+            throw new LataajaPoikkeus("Periodin " + periodi + " sivulta ei löytynyt kurssitarjotinta.");
+        }
+        return jasennin.getPeriodi();
+    }
+
+    /**Tarkistaa, että Wilman kirjautumisen evästeet ovat saatavilla yhteisestä
+     * {@code CookieHandlerista}.
+     *
+     * @throws kva.logiikka.lataus.KurssitarjottimenLataaja.LataajaPoikkeus jos evästeitä
+     *         ei löydy
+     */
+    private void tarkistaEvasteet() throws LataajaPoikkeus {
+        CookieHandler evasteet = CookieHandler.getDefault();
+        if(evasteet == null) {
+            throw new LataajaPoikkeus("Kirjautumisen evästeitä ei löytynyt.");
+        }
+        Map<String, List<String>> otsakkeet;
+        try {
+            otsakkeet = evasteet.get(new URI(perusOsoite), Collections.<String, List<String>>emptyMap());
+        } catch(URISyntaxException | IOException e) {
+            throw new LataajaPoikkeus("Kirjautumisen evästeitä ei voitu lukea: " + e.getMessage());
+        }
+        List<String> arvot = otsakkeet.get("Cookie");
+        if(arvot == null || arvot.stream().allMatch((arvo) -> arvo.isEmpty())) {
+            throw new LataajaPoikkeus("Kirjautumisen evästeitä ei löytynyt.");
+        }
+    }
+
+    /**Hakee sivun HTTP GET -pyynnöllä ja jäsentää sen sitä mukaa, kuin vastausta 
+     * luetaan.
+     * <p>
+     * Vastaus luetaan loppuun ja virta suljetaan, jotta yhteys voidaan käyttää
+     * uudelleen seuraavassa pyynnössä.
+     *
+     * @param osoite haettavan sivun osoite
+     * @param periodi sivun periodi, tai {@code null}, jos sivulta luetaan periodien linkit
+     * @return sivun jäsentänyt {@code WilmaJasennin}
+     * @throws java.io.IOException jos pyyntö epäonnistuu
+     */
+    private WilmaJasennin hae(String osoite, PeriodinTunniste periodi) throws IOException {
+        HttpURLConnection yhteys = avaa(osoite);
+        try(InputStream virta = vastaus(yhteys, osoite)) {
+            return WilmaJasennin.jasenna(virta, merkisto(yhteys.getContentType()), periodi);
+        }
+    }
+
+    private HttpURLConnection avaa(String osoite) throws IOException {
+        HttpURLConnection yhteys = (HttpURLConnection) new URL(osoite).openConnection();
+        yhteys.setRequestProperty("Accept-Encoding", "gzip");
+        if(selain != null) {
+            yhteys.setRequestProperty("User-Agent", selain);
+        }
+        return yhteys;
+    }
+
+    /**Tarkistaa vastauksen koodin ja palauttaa vastauksen purettuna sisältönä.
+     *
+     * @param yhteys avattu yhteys
+     * @param osoite pyydetty osoite virheilmoitusta varten
+     * @return vastauksen sisältö
+     * @throws java.io.IOException jos Wilma ei vastannut koodilla 200
+     */
+    private InputStream vastaus(HttpURLConnection yhteys, String osoite) throws IOException {
+        int koodi = yhteys.getResponseCode();
+        if(koodi != HttpURLConnection.HTTP_OK) {
+            InputStream virhe = yhteys.getErrorStream();
+            if(virhe != null) {
+                lueKaikki(virhe);
+            }
+            throw new LataajaPoikkeus("Wilma vastasi sivun " + osoite + " pyyntöön koodilla " + koodi + ".");
+        }
+        InputStream sisaan = yhteys.getInputStream();
+        if("gzip".equalsIgnoreCase(yhteys.getContentEncoding())) {
+            sisaan = new GZIPInputStream(sisaan);
+        }
+        return sisaan;
+    }
+
+    private static byte[] lueKaikki(InputStream sisaan) throws IOException {
+        try(InputStream virta = sisaan) {
+            ByteArrayOutputStream tavut = new ByteArrayOutputStream();
+            byte[] puskuri = new byte[8192];
+            int luettu;
+            while((luettu = virta.read(puskuri)) != -1) {
+                tavut.write(puskuri, 0, luettu);
+            }
+            return tavut.toByteArray();
+        }
+    }
+
+    /**Päättelee vastauksen merkistön Content-Type-otsakkeesta.
+     *
+     * @param tyyppi Content-Type-otsakkeen arvo, tai {@code null}
+     * @return otsakkeen merkistö, tai UTF-8, jos merkistöä ei ole annettu tai sitä ei tueta
+     */
+    private static Charset merkisto(String tyyppi) {
+        if(tyyppi != null) {
+            for(String osa : tyyppi.split(";")) {
+                osa = osa.trim();
+                if(osa.regionMatches(true, 0, "charset=", 0, 8)) {
+                    try {
+                        return Charset.forName(osa.substring(8).replace("\"", "").trim());
+                    } catch(IllegalArgumentException e) {
+                        break;
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+}
@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.function.Consumer;
 import kva.logiikka.Kurssitarjotin;
+import kva.logiikka.KurssitarjotinRakentaja;
 import kva.logiikka.Moduuli;
 import kva.logiikka.PalkinTunniste;
 
@@ -267,7 +268,29 @@ public abstract class KurssitarjottimenLataaja {
         }
         ryhmat.put(uusi.getRyhmakoodi(), uusi);
     }
-    
+
+    /**Lisää {@code LuotavanRyhman Kurssitarjottimeen}, tai jos samankoodinen {@code LuotavaRyhma}
+     * on jo lisätty, lisää annetun {@code LuotavanRyhman} sijainnit sille.
+     * <p>
+     * Metodia voi kutsua taustasäikeessä.
+     *
+     * @param uusi lisättävä {@code LuotavaRyhma}
+     * @throws java.lang.IllegalStateException jos metodia kutsutaan, kun {@code Kurssitarjottimen}
+     *         lataus ei ole käynnissä
+     * @since Kurssivalinta-avustin 1.1
+     */
+    protected synchronized final void yhdistaRyhma(LuotavaRyhma uusi) {
+        if(tarjottimenLatausKaynnissa == false) {
+            throw new IllegalStateException("Ryhmia voi lisätä vain latauksen aikana.");
+        }
+        LuotavaRyhma vanha = ryhmat.get(uusi.getRyhmakoodi());
+        if(vanha == null) {
+            ryhmat.put(uusi.getRyhmakoodi(), uusi);
+        } else {
+            uusi.getSijaintienNakyma().forEach((sijainti) -> vanha.lisaaSijainti(sijainti));
+        }
+    }
+
     /**Kertoo, onko lataajalle lisätty {@code Moduulia}, jolla on annettu ryhmäkoodi.
      * <p>
      * Metodia voi kutsua taustasäikeestä.
@@ -318,17 +341,36 @@ public abstract class KurssitarjottimenLataaja {
         Kurssitarjotin tarjotin = null;
         tarjottimenLatausKaynnissa = false;
         try {
-            tarjotin = new Kurssitarjotin(ryhmat.values(), moduulit.values(), tunnisteet);
+            tarjotin = new KurssitarjotinRakentaja()
+                    .lisaaRyhmat(ryhmat.values())
+                    .lisaaModuulit(moduulit.values())
+                    .setPeriodienJarjestys(tunnisteet)
+                    .rakenna();
         } catch(Exception e) {
             onnistui = false;
             lahetaVirhe(e);
         }
         if(onnistui) {
             tarjottimenLatausKaynnissa = false;
+            kurssitarjotinLuotu(tarjotin);
             kurssitarjottimenKasittely.accept(tarjotin);
         }
     }
     
+    /**Kutsutaan, kun {@code Kurssitarjotin} on koostettu, mutta sitä ei ole vielä 
+     * lähetetty kyselijälle.
+     * <p>
+     * Alaluokka voi korvata metodin esimerkiksi merkitäkseen {@code Kurssitarjottimesta} 
+     * valituiksi {@code Ryhmia}. Oletustoteutus ei tee mitään.
+     * <p>
+     * Metodia kutsutaan JavaFX:n sovellussäikeessä.
+     * 
+     * @param tarjotin juuri koostettu {@code Kurssitarjotin}
+     * @since Kurssivalinta-avustin 1.1
+     */
+    protected void kurssitarjotinLuotu(Kurssitarjotin tarjotin) {
+    }
+    
     /**Ilmoittaa kyselijälle, että {@code PeriodinTunnisteiden} tai {@code Kurssitarjottimen} 
      * lataus on kaatunut poikkeukseen.
      * 
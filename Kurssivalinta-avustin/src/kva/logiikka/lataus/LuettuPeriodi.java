@@ -0,0 +1,203 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka.lataus;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import kva.logiikka.Moduuli;
+import kva.logiikka.PalkinTunniste;
+import kva.logiikka.PeriodinTunniste;
+
+/**Säiliö yhden Wilmasta luetun periodin {@code LuotavilleRyhmille} ja {@code Moduuleille}.
+ * <p>
+ * Periodin sivua luettaessa jokaiselle palkille luodaan {@link kva.logiikka.PalkinTunniste}
+ * metodilla {@link #lisaaPalkki(java.lang.String, int)}, ja palkin ryhmälinkit lisätään
+ * metodilla {@link #lisaaRyhma(kva.logiikka.PalkinTunniste, java.lang.String, java.lang.String, java.lang.String)}.
+ * Koska {@code LuettuPeriodi} ei ole sidottu {@code KurssitarjottimenLataajaan}, periodin
+ * voi lukea missä säikeessä tahansa, ja tulos lisätään lataajalle lopuksi metodilla
+ * {@link #lisaaLataajalle(kva.logiikka.lataus.KurssitarjottimenLataaja)}.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.lataus.WebEngineLataaja
+ * @see kva.logiikka.lataus.HttpLataaja
+ * @since Kurssivalinta-avustin 1.1
+ */
+final class LuettuPeriodi {
+
+    private final PeriodinTunniste periodi;
+    private final LinkedHashMap<String, LuotavaRyhma> ryhmat = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Moduuli> moduulit = new LinkedHashMap<>();
+    private final HashSet<String> kaytetytPalkkienNimet = new HashSet<>();
+
+    /**Luo uuden, tyhjän {@code LuetunPeriodin}.
+     *
+     * @param periodi luettavan periodin tunniste
+     */
+    LuettuPeriodi(PeriodinTunniste periodi) {
+        this.periodi = periodi;
+    }
+
+    /**Luo periodin palkille {@code PalkinTunnisteen}.
+     * <p>
+     * Jos periodissa on jo samanniminen palkki, nimen eteen lisätään välilyönti.
+     *
+     * @param nimi palkin otsikon teksti
+     * @param jarjestysluku palkin järjestysluku periodin sisällä
+     * @return uusi {@code PalkinTunniste}
+     */
+    PalkinTunniste lisaaPalkki(String nimi, int jarjestysluku) {
+        String palkinNimi = nimi.trim();
+        if(kaytetytPalkkienNimet.contains(palkinNimi)) {
+            palkinNimi = " " + palkinNimi;
+        }
+        kaytetytPalkkienNimet.add(palkinNimi);
+        return new PalkinTunniste(periodi, palkinNimi, jarjestysluku);
+    }
+
+    /**Lisää palkin ryhmälinkin kuvaaman {@code Ryhman} sijainnin.
+     * <p>
+     * Jos {@code Ryhmaa} ei ole vielä lisätty, sille luodaan {@code LuotavaRyhma}, ja
+     * jos sen {@code Moduulia} ei ole vielä lisätty, {@code Moduulin} tyyppi päätellään
+     * linkin class-attribuutista.
+     *
+     * @param palkki palkki, jossa ryhmälinkki on
+     * @param ryhmakoodi ryhmälinkin teksti
+     * @param luokka ryhmälinkin class-attribuutti
+     * @param otsikko ryhmälinkin title-attribuutti
+     * @return {@code false}, jos linkki kuvaa jo suoritettua kurssia tai ei ole ryhmäkoodi,
+     *         jolloin palkin loput linkit ohitetaan. Muutoin {@code true}.
+     */
+    boolean lisaaRyhma(PalkinTunniste palkki, String ryhmakoodi, String luokka, String otsikko) {
+        if(otsikko != null && otsikko.contains(Wilma.SUORITETTU)) {
+            return false;
+        }
+        if(!Wilma.onRyhmakoodi(ryhmakoodi)) {
+            return false;
+        }
+        LuotavaRyhma ryhma = ryhmat.get(ryhmakoodi);
+        if(ryhma == null) {
+            ryhma = new LuotavaRyhma(ryhmakoodi);
+            ryhmat.put(ryhmakoodi, ryhma);
+            String kurssikoodi = ryhma.getKurssikoodi();
+            if(!moduulit.containsKey(kurssikoodi)) {
+                moduulit.put(kurssikoodi, new Moduuli(kurssikoodi, Wilma.moduulinTyyppi(luokka == null ? "" : luokka)));
+            }
+        }
+        ryhma.lisaaSijainti(palkki);
+        return true;
+    }
+
+    /**Palauttaa luetun periodin tunnisteen.
+     *
+     * @return periodin tunniste
+     */
+    PeriodinTunniste getPeriodi() {
+        return periodi;
+    }
+
+    /**Palauttaa periodista luetut {@code LuotavatRyhmat} siinä järjestyksessä, jossa
+     * ne luettiin.
+     *
+     * @return kokoelma {@code LuotavistaRyhmista}
+     */
+    Collection<LuotavaRyhma> getRyhmat() {
+        return ryhmat.values();
+    }
+
+    /**Palauttaa periodista luetut {@code Moduulit} siinä järjestyksessä, jossa
+     * ne luettiin.
+     *
+     * @return kokoelma {@code Moduuleista}
+     */
+    Collection<Moduuli> getModuulit() {
+        return moduulit.values();
+    }
+
+    /**Lisää periodin {@code Ryhmat} ja {@code Moduulit} {@code KurssitarjottimenLataajalle}.
+     * <p>
+     * Jos lataajalla on jo samankoodinen {@code Ryhma} toisesta periodista, periodin
+     * sijainnit lisätään sille. Jo lisättyjä {@code Moduuleja} ei korvata.
+     * <p>
+     * Metodia voi kutsua taustasäikeessä.
+     *
+     * @param lataaja lataaja, jolle tiedot lisätään
+     */
+    void lisaaLataajalle(KurssitarjottimenLataaja lataaja) {
+        for(Moduuli moduuli : moduulit.values()) {
+            if(!lataaja.onModuulia(moduuli.getKoodi())) {
+                lataaja.lisaaModuuli(moduuli);
+            }
+        }
+        for(LuotavaRyhma ryhma : ryhmat.values()) {
+            lataaja.yhdistaRyhma(ryhma);
+        }
+    }
+
+    /**Kirjoittaa periodin {@code Ryhmat} ja {@code Moduulit} virtaan.
+     *
+     * @param ulos virta, johon periodi kirjoitetaan
+     * @throws java.io.IOException jos kirjoittaminen epäonnistuu
+     * @see #lue(java.io.DataInputStream, kva.logiikka.PeriodinTunniste)
+     */
+    void kirjoita(DataOutputStream ulos) throws IOException {
+        ulos.writeInt(moduulit.size());
+        for(Moduuli moduuli : moduulit.values()) {
+            ulos.writeUTF(moduuli.getKoodi());
+            ulos.writeUTF(moduuli.getTyyppi().name());
+        }
+        ulos.writeInt(ryhmat.size());
+        for(LuotavaRyhma ryhma : ryhmat.values()) {
+            ulos.writeUTF(ryhma.getRyhmakoodi());
+            ulos.writeInt(ryhma.getSijaintienNakyma().size());
+            for(PalkinTunniste sijainti : ryhma.getSijaintienNakyma()) {
+                ulos.writeUTF(sijainti.getPalkki());
+                ulos.writeInt(sijainti.getJarjestysluku());
+            }
+        }
+    }
+
+    /**Lukee metodilla {@link #kirjoita(java.io.DataOutputStream)} kirjoitetun periodin.
+     *
+     * @param sisaan virta, josta periodi luetaan
+     * @param periodi periodin tunniste, jolle luetut sijainnit sijoitetaan
+     * @return luettu periodi
+     * @throws java.io.IOException jos lukeminen epäonnistuu
+     */
+    static LuettuPeriodi lue(DataInputStream sisaan, PeriodinTunniste periodi) throws IOException {
+        LuettuPeriodi luettu = new LuettuPeriodi(periodi);
+        int moduuleja = sisaan.readInt();
+        for(int i = 0; i < moduuleja; i++) {
+            String koodi = sisaan.readUTF();
+            luettu.moduulit.put(koodi, new Moduuli(koodi, Moduuli.Tyyppi.valueOf(sisaan.readUTF())));
+        }
+        int ryhmia = sisaan.readInt();
+        for(int i = 0; i < ryhmia; i++) {
+            LuotavaRyhma ryhma = new LuotavaRyhma(sisaan.readUTF());
+            int sijainteja = sisaan.readInt();
+            for(int a = 0; a < sijainteja; a++) {
+                String palkki = sisaan.readUTF();
+                ryhma.lisaaSijainti(new PalkinTunniste(periodi, palkki, sisaan.readInt()));
+            }
+            luettu.ryhmat.put(ryhma.getRyhmakoodi(), ryhma);
+        }
+        return luettu;
+    }
+}
@@ -17,6 +17,8 @@
 package kva.logiikka.lataus;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import kva.logiikka.PalkinTunniste;
 
 /**Säiliöluokka, johon kerätään ryhmien tiedot niiden luontivaiheessa.
@@ -36,7 +38,9 @@ import kva.logiikka.PalkinTunniste;
 public class LuotavaRyhma {
     
     private final String ryhmakoodi;
+    private final int piste;
     private ArrayList<PalkinTunniste> sijainnit;
+    private List<PalkinTunniste> sijaintienNakyma;
 
     /**Luo uuden {@code LuotavanRyhman}, jolla ei ole toistaiseksi sijainteja.
      * <p>
@@ -50,11 +54,13 @@ public class LuotavaRyhma {
      *         ts. jotakin muuta muotoa, kuin "[merkkijono].[merkkijono]".
      */
     public LuotavaRyhma(String ryhmakoodi) {
-        if(ryhmakoodi.split("[.]").length != 2) {
+        if(!onRyhmakoodi(ryhmakoodi)) {
             throw new IllegalArgumentException("Virheellinen ryhmäkoodi: " + ryhmakoodi);
         }
         this.ryhmakoodi = ryhmakoodi;
+        this.piste = ryhmakoodi.indexOf('.');
         sijainnit = new ArrayList<>();
+        sijaintienNakyma = Collections.unmodifiableList(sijainnit);
     }
 
     /**Palauttaa konstruktorissa annetun ryhmäkoodin.
@@ -70,8 +76,7 @@ public class LuotavaRyhma {
      * @return ryhmäkoodin pistettä edeltävä osa, esim. "HI02" ryhmäkoodilla "HI02.3"
      */
     public String getKurssikoodi() {
-        String[] osat = ryhmakoodi.split("[.]");
-        return osat[0];
+        return ryhmakoodi.substring(0, piste);
     }
     
     /**Palauttaa ryhmäkoodin osan, joka yksilöi saman kurssin eri ryhmät.
@@ -82,8 +87,20 @@ public class LuotavaRyhma {
      * @return ryhmäkoodin pilkkua seuraava osa, esim. "3" ryhmäkoodilla "HI02.3"
      */
     public String getRyhmatunniste() {
-        String[] osat = ryhmakoodi.split("[.]");
-        return osat[osat.length - 1];
+        return ryhmakoodi.substring(piste + 1);
+    }
+
+    /**Kertoo, onko annettu merkkijono kelvollinen ryhmäkoodi, eli muotoa 
+     * "[merkkijono].[merkkijono]", jossa jälkimmäinen osa ei ole tyhjä.
+     * 
+     * @param ryhmakoodi tarkistettava merkkijono
+     * @return {@code true}, jos {@code ryhmakoodissa} on täsmälleen yksi piste, jota 
+     *         seuraa vähintään yksi merkki
+     * @since Kurssivalinta-avustin 1.1
+     */
+    static boolean onRyhmakoodi(String ryhmakoodi) {
+        int piste = ryhmakoodi.indexOf('.');
+        return piste >= 0 && piste < ryhmakoodi.length() - 1 && ryhmakoodi.indexOf('.', piste + 1) < 0;
     }
     
     /**Lisää uuden merkkijonon ryhmän sijainteihin.
@@ -105,4 +122,15 @@ public class LuotavaRyhma {
     public ArrayList<PalkinTunniste> getSijainnit() {
         return new ArrayList<>(sijainnit);
     }
+
+    /**Palauttaa ryhmän sijainnit muuttumattomana näkymänä, jota ei kopioida.
+     * <p>
+     * Näkymä heijastaa myöhemmin lisättyjä sijainteja.
+     * 
+     * @return muuttumaton lista ryhmän sijainneista lisäysjärjestyksessä
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public List<PalkinTunniste> getSijaintienNakyma() {
+        return sijaintienNakyma;
+    }
 }
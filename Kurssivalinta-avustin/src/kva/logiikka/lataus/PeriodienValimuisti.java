@@ -0,0 +1,297 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka.lataus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import kva.logiikka.PeriodinTunniste;
+
+/**Levylle tallennettava välimuisti Wilmasta ladatuille ja jäsennetyille periodeille.
+ * <p>
+ * Jokainen periodi tallennetaan omaan tiedostoonsa, jonka nimi muodostetaan Wilman
+ * perusosoitteesta ja periodin linkistä. Tiedostoon tallennetaan periodin jäsennetyt
+ * {@code Ryhmat} ja {@code Moduulit} sekä sivun ETag- ja Last-Modified-otsakkeet
+ * ja sisällön tiiviste, joiden avulla {@link kva.logiikka.lataus.HttpLataaja} voi
+ * tarkistaa, onko sivu muuttunut, ja käyttää muuttumatonta periodia jäsentämättä sitä
+ * uudelleen.
+ * <p>
+ * Välimuistin koko on rajattu. Kun raja ylittyy, poistetaan periodit, joita on käytetty
+ * pisimpään aikaan sitten. Käyttöaikana pidetään tiedoston muokkausaikaa, joka päivitetään
+ * aina, kun periodi haetaan välimuistista.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.lataus.HttpLataaja
+ * @since Kurssivalinta-avustin 1.1
+ */
+public final class PeriodienValimuisti {
+
+    /**Oletusarvoinen välimuistin enimmäiskoko tavuina.
+     */
+    public static final long OLETUSKOKO = 16L << 20;
+
+    private static final int TUNNISTE = 0x4B565056;
+    private static final int VERSIO = 1;
+    private static final String PAATE = ".periodi";
+
+    private final Path hakemisto;
+    private final long enimmaiskoko;
+
+    /**Luo uuden {@code PeriodienValimuistin}.
+     *
+     * @param hakemisto hakemisto, johon periodit tallennetaan. Hakemisto luodaan
+     *        tarvittaessa.
+     * @param enimmaiskoko välimuistin tiedostojen yhteenlaskettu enimmäiskoko tavuina
+     * @throws java.lang.IllegalArgumentException jos {@code enimmaiskoko} on negatiivinen
+     */
+    public PeriodienValimuisti(Path hakemisto, long enimmaiskoko) {
+        if(enimmaiskoko < 0) {
+            throw new IllegalArgumentException("Välimuistin koko ei voi olla negatiivinen.");
+        }
+        this.hakemisto = hakemisto;
+        this.enimmaiskoko = enimmaiskoko;
+    }
+
+    /**Luo {@code PeriodienValimuistin}, joka tallennetaan käyttäjän kotihakemistoon
+     * ja jonka koko on {@value #OLETUSKOKO} tavua.
+     *
+     * @return uusi {@code PeriodienValimuisti}
+     */
+    public static PeriodienValimuisti oletus() {
+        return new PeriodienValimuisti(Paths.get(System.getProperty("user.home"), ".kurssivalinta-avustin", "valimuisti"), OLETUSKOKO);
+    }
+
+    /**Hakee periodin välimuistista.
+     * <p>
+     * Vioittuneet merkinnät poistetaan ja tulkitaan puuttuviksi.
+     *
+     * @param perusOsoite Wilman perusosoite
+     * @param linkki periodin suhteellinen osoite
+     * @param periodi periodin tunniste, jolle merkinnän {@code Ryhmat} sijoitetaan
+     * @return välimuistin merkintä, tai {@code null}, jos periodia ei ole välimuistissa
+     */
+    synchronized Merkinta hae(String perusOsoite, String linkki, PeriodinTunniste periodi) {
+        Path tiedosto = tiedosto(perusOsoite, linkki);
+        if(!Files.isRegularFile(tiedosto)) {
+            return null;
+        }
+        try(DataInputStream sisaan = new DataInputStream(new BufferedInputStream(Files.newInputStream(tiedosto)))) {
+            if(sisaan.readInt() != TUNNISTE || sisaan.readInt() != VERSIO) {
+                throw new IOException("Tuntematon välimuistin merkintä: " + tiedosto);
+            }
+            if(!sisaan.readUTF().equals(perusOsoite + linkki)) {
+                return null;
+            }
+            String etag = lueValinnainen(sisaan);
+            String muokattu = lueValinnainen(sisaan);
+            byte[] tiiviste = new byte[sisaan.readUnsignedByte()];
+            sisaan.readFully(tiiviste);
+            LuettuPeriodi luettu = LuettuPeriodi.lue(sisaan, periodi);
+            Files.setLastModifiedTime(tiedosto, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Merkinta(etag, muokattu, tiiviste, luettu);
+        } catch(IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(tiedosto);
+            } catch(IOException poikkeus) {
+                //Merkintä yritetään korvata seuraavalla tallennuksella.
+            }
+            return null;
+        }
+    }
+
+    /**Tallentaa periodin välimuistiin ja poistaa tarvittaessa vanhimpia merkintöjä.
+     * <p>
+     * Tallennuksen epäonnistuminen ei estä latausta, joten virheet jätetään huomiotta.
+     *
+     * @param perusOsoite Wilman perusosoite
+     * @param linkki periodin suhteellinen osoite
+     * @param etag sivun ETag-otsake, tai {@code null}
+     * @param muokattu sivun Last-Modified-otsake, tai {@code null}
+     * @param tiiviste sivun sisällön tiiviste
+     * @param luettu sivulta jäsennetty periodi
+     */
+    synchronized void tallenna(String perusOsoite, String linkki, String etag, String muokattu, byte[] tiiviste, LuettuPeriodi luettu) {
+        Path tiedosto = tiedosto(perusOsoite, linkki);
+        try {
+            Files.createDirectories(hakemisto);
+            Path valiaikainen = Files.createTempFile(hakemisto, "kva", ".tmp");
+            try(DataOutputStream ulos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(valiaikainen)))) {
+                ulos.writeInt(TUNNISTE);
+                ulos.writeInt(VERSIO);
+                ulos.writeUTF(perusOsoite + linkki);
+                kirjoitaValinnainen(ulos, etag);
+                kirjoitaValinnainen(ulos, muokattu);
+                ulos.writeByte(tiiviste.length);
+                ulos.write(tiiviste);
+                luettu.kirjoita(ulos);
+            }
+            Files.move(valiaikainen, tiedosto, StandardCopyOption.REPLACE_EXISTING);
+            karsi();
+        } catch(IOException e) {
+            //Periodi ladataan seuraavalla kerralla uudelleen.
+        }
+    }
+
+    /**Tyhjentää välimuistin.
+     *
+     * @throws java.io.IOException jos tiedostojen poistaminen epäonnistuu
+     */
+    public synchronized void tyhjenna() throws IOException {
+        for(Path tiedosto : merkinnat()) {
+            Files.deleteIfExists(tiedosto);
+        }
+    }
+
+    /**Laskee sisällön tiivisteen, jonka perusteella muuttumaton sivu tunnistetaan.
+     *
+     * @param sisalto sivun tavut
+     * @return SHA-256-tiiviste
+     */
+    static byte[] tiiviste(byte[] sisalto) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(sisalto);
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**Poistaa vähiten äskettäin käytettyjä merkintöjä, kunnes välimuisti mahtuu
+     * enimmäiskokoonsa.
+     */
+    private void karsi() throws IOException {
+        List<Path> tiedostot = merkinnat();
+        long koko = 0;
+        for(Path tiedosto : tiedostot) {
+            koko += Files.size(tiedosto);
+        }
+        if(koko <= enimmaiskoko) {
+            return;
+        }
+        tiedostot.sort(Comparator.comparing((Path tiedosto) -> {
+            try {
+                return Files.getLastModifiedTime(tiedosto);
+            } catch(IOException e) {
+                return FileTime.fromMillis(0);
+            }
+        }));
+        for(Path tiedosto : tiedostot) {
+            if(koko <= enimmaiskoko) {
+                break;
+            }
+            long tiedostonKoko = Files.size(tiedosto);
+            Files.deleteIfExists(tiedosto);
+            koko -= tiedostonKoko;
+        }
+    }
+
+    private List<Path> merkinnat() throws IOException {
+        List<Path> tiedostot = new ArrayList<>();
+        if(!Files.isDirectory(hakemisto)) {
+            return tiedostot;
+        }
+        try(DirectoryStream<Path> virta = Files.newDirectoryStream(hakemisto, "*" + PAATE)) {
+            virta.forEach(tiedostot::add);
+        }
+        return tiedostot;
+    }
+
+    private Path tiedosto(String perusOsoite, String linkki) {
+        byte[] avain = tiiviste((perusOsoite + linkki).getBytes(StandardCharsets.UTF_8));
+        StringBuilder nimi = new StringBuilder();
+        for(int i = 0; i < 16; i++) {
+            nimi.append(Character.forDigit((avain[i] >> 4) & 0xF, 16)).append(Character.forDigit(avain[i] & 0xF, 16));
+        }
+        return hakemisto.resolve(nimi.append(PAATE).toString());
+    }
+
+    private static String lueValinnainen(DataInputStream sisaan) throws IOException {
+        return sisaan.readBoolean() ? sisaan.readUTF() : null;
+    }
+
+    private static void kirjoitaValinnainen(DataOutputStream ulos, String arvo) throws IOException {
+        ulos.writeBoolean(arvo != null);
+        if(arvo != null) {
+            ulos.writeUTF(arvo);
+        }
+    }
+
+    /**Välimuistiin tallennettu periodi ja tiedot, joilla sen ajantasaisuus tarkistetaan.
+     *
+     * @author Väinö Viinikka
+     * @see kva.logiikka.lataus.PeriodienValimuisti
+     */
+    static final class Merkinta {
+
+        private final String etag;
+        private final String muokattu;
+        private final byte[] tiiviste;
+        private final LuettuPeriodi periodi;
+
+        private Merkinta(String etag, String muokattu, byte[] tiiviste, LuettuPeriodi periodi) {
+            this.etag = etag;
+            this.muokattu = muokattu;
+            this.tiiviste = tiiviste;
+            this.periodi = periodi;
+        }
+
+        /**Palauttaa sivun ETag-otsakkeen.
+         *
+         * @return ETag, tai {@code null}, jos palvelin ei antanut sitä
+         */
+        String getEtag() {
+            return etag;
+        }
+
+        /**Palauttaa sivun Last-Modified-otsakkeen.
+         *
+         * @return muokkausaika, tai {@code null}, jos palvelin ei antanut sitä
+         */
+        String getMuokattu() {
+            return muokattu;
+        }
+
+        /**Palauttaa sivun sisällön tiivisteen.
+         *
+         * @return SHA-256-tiiviste
+         */
+        byte[] getTiiviste() {
+            return tiiviste;
+        }
+
+        /**Palauttaa välimuistiin tallennetun periodin.
+         *
+         * @return jäsennetty periodi
+         */
+        LuettuPeriodi getPeriodi() {
+            return periodi;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka.lataus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import kva.logiikka.PeriodinTunniste;
+
+/**Hakemisto, joka kertoo, missä kohtaa {@link kva.logiikka.lataus.TestiLataaja}n
+ * lukemaa tiedostoa kunkin periodin palkit sijaitsevat.
+ * <p>
+ * Hakemisto luodaan käymällä tiedoston KURSSITARJOTTIMET-osio läpi tavuina, jolloin
+ * jokaisen "&amp;"-alkuisen periodin otsikkorivin perusteella tallennetaan periodin
+ * palkkien alku- ja loppukohta tiedostossa. Hakemisto tallennetaan tiedoston viereen
+ * päätteellä {@value #PAATE}, ja sen mukana säilytetään tiedoston koko ja muokkausaika.
+ * Jos ne eivät täsmää tallennetun hakemiston kanssa, hakemisto luodaan uudelleen.
+ * <p>
+ * Oppilaitoksen "#"-otsikkoriviä on seurattava periodin otsikkorivi, ja periodin 
+ * otsikkoriviä palkin rivi. Muuten rivejä luettaessa periodi vaihtuisi eri kohdassa 
+ * kuin hakemistossa, joten hakemisto tallentaa ensimmäisen tällaisen rivin numeron, 
+ * ja {@code TestiLataaja} hylkää tiedoston virtaavassa tilassa. {@code Scanneria} 
+ * käyttävä tila lukee tällaisetkin tiedostot kuten ennenkin.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.lataus.TestiLataaja
+ * @since Kurssivalinta-avustin 1.1
+ */
+final class TarjotinHakemisto {
+
+    /**Pääte, joka lisätään tiedoston nimeen hakemiston tiedostonimeä varten.
+     */
+    static final String PAATE = ".hakemisto";
+
+    private static final int TUNNISTE = 0x4B564148;
+    private static final int VERSIO = 2;
+    private static final int PUSKURIN_KOKO = 1 << 16;
+    private static final byte[] OSION_OTSIKKO = "KURSSITARJOTTIMET".getBytes(StandardCharsets.US_ASCII);
+
+    private final long koko;
+    private final long muokattu;
+    private final List<Lohko> lohkot;
+    private final int virheellinenRivi;
+
+    private TarjotinHakemisto(long koko, long muokattu, List<Lohko> lohkot, int virheellinenRivi) {
+        this.koko = koko;
+        this.muokattu = muokattu;
+        this.lohkot = Collections.unmodifiableList(lohkot);
+        this.virheellinenRivi = virheellinenRivi;
+    }
+
+    /**Lataa tiedoston viereen tallennetun hakemiston, tai luo ja tallentaa uuden,
+     * jos tallennettua ei ole tai se ei vastaa tiedostoa.
+     * <p>
+     * Jos uuden hakemiston tallentaminen epäonnistuu, esimerkiksi koska hakemistoon
+     * ei ole kirjoitusoikeutta, luotu hakemisto palautetaan siitä huolimatta.
+     *
+     * @param tiedosto sen tiedoston sijainti, jonka hakemisto halutaan
+     * @return tiedostoa vastaava hakemisto
+     * @throws java.io.IOException jos tiedoston lukeminen epäonnistuu
+     */
+    static TarjotinHakemisto lataaTaiLuo(Path tiedosto) throws IOException {
+        long koko = Files.size(tiedosto);
+        long muokattu = Files.getLastModifiedTime(tiedosto).toMillis();
+        Path sijainti = hakemistonSijainti(tiedosto);
+
+        if(Files.isRegularFile(sijainti)) {
+            try {
+                TarjotinHakemisto tallennettu = lue(sijainti);
+                if(tallennettu.koko == koko && tallennettu.muokattu == muokattu) {
+                    return tallennettu;
+                }
+            } catch(IOException e) {
+                //Vioittunut hakemisto luodaan uudelleen.
+            }
+        }
+
+        TarjotinHakemisto uusi = luo(tiedosto, koko, muokattu);
+        try {
+            uusi.tallenna(sijainti);
+        } catch(IOException e) {
+            //Hakemistoa voidaan käyttää, vaikka sitä ei saataisi tallennettua.
+        }
+        return uusi;
+    }
+
+    /**Palauttaa sen tiedoston sijainnin, johon annetun tiedoston hakemisto tallennetaan.
+     *
+     * @param tiedosto tiedosto, jonka hakemistosta on kyse
+     * @return hakemiston sijainti
+     */
+    static Path hakemistonSijainti(Path tiedosto) {
+        return tiedosto.resolveSibling(tiedosto.getFileName().toString() + PAATE);
+    }
+
+    /**Palauttaa annettuihin periodeihin kuuluvat lohkot siinä järjestyksessä, kuin
+     * missä ne esiintyvät tiedostossa.
+     *
+     * @param periodit halutut periodit
+     * @return lista lohkoista
+     */
+    List<Lohko> haeLohkot(Collection<PeriodinTunniste> periodit) {
+        return lohkot.stream()
+                .filter((lohko) -> periodit.contains(lohko.getTunniste()))
+                .collect(Collectors.toList());
+    }
+
+    /**Palauttaa ensimmäisen rivin, jolla otsikkorivien järjestys on virheellinen: 
+     * oppilaitoksen otsikkoa ei seuraa periodin otsikko, tai periodin otsikkoa 
+     * seuraa toinen otsikko.
+     *
+     * @return rivin numero alkaen ykkösestä, tai 0, jos järjestys on kunnossa
+     */
+    int getVirheellinenRivi() {
+        return virheellinenRivi;
+    }
+
+    /**Luo hakemiston käymällä tiedoston läpi tavu kerrallaan.
+     * <p>
+     * Vain otsikkorivien tavut puretaan merkkijonoiksi. "\n"-tavu ei voi esiintyä
+     * UTF-8:ssa monitavuisen merkin osana, joten rivit voidaan erottaa purkamatta
+     * tiedostoa.
+     */
+    private static TarjotinHakemisto luo(Path tiedosto, long koko, long muokattu) throws IOException {
+        List<Lohko> lohkot = new ArrayList<>();
+        ByteArrayOutputStream otsikko = new ByteArrayOutputStream();
+        ByteBuffer puskuri = ByteBuffer.allocate(PUSKURIN_KOKO);
+
+        boolean osioAlkanut = false;
+        boolean rivinAlku = true;
+        boolean keraaRivi = false;
+        long riviAlkaa = 0;
+        long sijainti = 0;
+        int rivinNumero = 0;
+
+        String oppilaitos = null;
+        String periodi = null;
+        long lohkoAlkaa = -1;
+        int lohkonRivi = 0;
+        byte edellinenOtsikko = 0;
+        int virheellinenRivi = 0;
+
+        try(FileChannel kanava = FileChannel.open(tiedosto, StandardOpenOption.READ)) {
+            while(kanava.read(puskuri) != -1) {
+                puskuri.flip();
+                while(puskuri.hasRemaining()) {
+                    byte tavu = puskuri.get();
+                    if(rivinAlku) {
+                        rivinAlku = false;
+                        rivinNumero++;
+                        riviAlkaa = sijainti;
+                        keraaRivi = osioAlkanut ? (tavu == '#' || tavu == '&') : tavu == 'K';
+                        otsikko.reset();
+                        if(osioAlkanut && virheellinenRivi == 0 
+                                && ((edellinenOtsikko == '#' && tavu != '&') || (edellinenOtsikko == '&' && keraaRivi))) {
+                            virheellinenRivi = rivinNumero;
+                        }
+                        edellinenOtsikko = osioAlkanut && keraaRivi ? tavu : 0;
+                    }
+                    sijainti++;
+                    if(tavu == '\n') {
+                        rivinAlku = true;
+                        if(!keraaRivi) {
+                            continue;
+                        }
+                        byte[] rivi = otsikko.toByteArray();
+                        int pituus = rivi.length > 0 && rivi[rivi.length - 1] == '\r' ? rivi.length - 1 : rivi.length;
+                        if(!osioAlkanut) {
+                            osioAlkanut = pituus == OSION_OTSIKKO.length && alkaa(rivi, OSION_OTSIKKO);
+                            continue;
+                        }
+                        if(lohkoAlkaa >= 0) {
+                            lohkot.add(new Lohko(oppilaitos, periodi, lohkoAlkaa, riviAlkaa, lohkonRivi));
+                            lohkoAlkaa = -1;
+                        }
+                        String nimi = new String(rivi, 1, pituus - 1, StandardCharsets.UTF_8);
+                        if(rivi[0] == '#') {
+                            oppilaitos = nimi;
+                        } else {
+                            periodi = nimi;
+                            if(oppilaitos != null) {
+                                lohkoAlkaa = sijainti;
+                                lohkonRivi = rivinNumero + 1;
+                            }
+                        }
+                    } else if(keraaRivi) {
+                        otsikko.write(tavu);
+                    }
+                }
+                puskuri.clear();
+            }
+        }
+        if(lohkoAlkaa >= 0) {
+            lohkot.add(new Lohko(oppilaitos, periodi, lohkoAlkaa, sijainti, lohkonRivi));
+        }
+        return new TarjotinHakemisto(koko, muokattu, lohkot, virheellinenRivi);
+    }
+
+    private static boolean alkaa(byte[] rivi, byte[] alku) {
+        if(rivi.length < alku.length) {
+            return false;
+        }
+        for(int i = 0; i < alku.length; i++) {
+            if(rivi[i] != alku[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static TarjotinHakemisto lue(Path sijainti) throws IOException {
+        try(DataInputStream sisaan = new DataInputStream(new BufferedInputStream(Files.newInputStream(sijainti)))) {
+            if(sisaan.readInt() != TUNNISTE || sisaan.readInt() != VERSIO) {
+                throw new IOException("Tuntematon hakemiston muoto: " + sijainti);
+            }
+            long koko = sisaan.readLong();
+            long muokattu = sisaan.readLong();
+            int virheellinenRivi = sisaan.readInt();
+            int maara = sisaan.readInt();
+            List<Lohko> lohkot = new ArrayList<>(maara);
+            for(int i = 0; i < maara; i++) {
+                String oppilaitos = sisaan.readUTF();
+                String periodi = sisaan.readUTF();
+                long alku = sisaan.readLong();
+                long loppu = sisaan.readLong();
+                int rivi = sisaan.readInt();
+                lohkot.add(new Lohko(oppilaitos, periodi, alku, loppu, rivi));
+            }
+            return new TarjotinHakemisto(koko, muokattu, lohkot, virheellinenRivi);
+        }
+    }
+
+    private void tallenna(Path sijainti) throws IOException {
+        try(DataOutputStream ulos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(sijainti)))) {
+            ulos.writeInt(TUNNISTE);
+            ulos.writeInt(VERSIO);
+            ulos.writeLong(koko);
+            ulos.writeLong(muokattu);
+            ulos.writeInt(virheellinenRivi);
+            ulos.writeInt(lohkot.size());
+            for(Lohko lohko : lohkot) {
+                ulos.writeUTF(lohko.tunniste.getOppilaitos());
+                ulos.writeUTF(lohko.tunniste.getPeriodi());
+                ulos.writeLong(lohko.alku);
+                ulos.writeLong(lohko.loppu);
+                ulos.writeInt(lohko.rivi);
+            }
+        }
+    }
+
+    /**Yksittäisen periodin palkkirivit sisältävä tiedoston osa.
+     * <p>
+     * Lohko alkaa periodin otsikkoriviä seuraavasta tavusta, ja päättyy seuraavan
+     * otsikkorivin alkuun tai tiedoston loppuun.
+     *
+     * @author Väinö Viinikka
+     * @see kva.logiikka.lataus.TarjotinHakemisto
+     */
+    static final class Lohko {
+
+        private final PeriodinTunniste tunniste;
+        private final long alku;
+        private final long loppu;
+        private final int rivi;
+
+        private Lohko(String oppilaitos, String periodi, long alku, long loppu, int rivi) {
+            this.tunniste = new PeriodinTunniste(oppilaitos, periodi);
+            this.alku = alku;
+            this.loppu = loppu;
+            this.rivi = rivi;
+        }
+
+        /**Palauttaa sen periodin tunnisteen, jonka palkit lohko sisältää.
+         *
+         * @return periodin tunniste
+         */
+        PeriodinTunniste getTunniste() {
+            return tunniste;
+        }
+
+        /**Palauttaa lohkon ensimmäisen tavun sijainnin tiedostossa.
+         *
+         * @return lohkon alku tavuina tiedoston alusta
+         */
+        long getAlku() {
+            return alku;
+        }
+
+        /**Palauttaa lohkon viimeistä tavua seuraavan sijainnin tiedostossa.
+         *
+         * @return lohkon loppu tavuina tiedoston alusta
+         */
+        long getLoppu() {
+            return loppu;
+        }
+
+        /**Palauttaa lohkon ensimmäisen rivin numeron virheilmoituksia varten.
+         *
+         * @return rivinumero, alkaen ykkösestä
+         */
+        int getRivi() {
+            return rivi;
+        }
+    }
+}
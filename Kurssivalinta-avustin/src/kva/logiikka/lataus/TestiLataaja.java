@@ -18,6 +18,10 @@ package kva.logiikka.lataus;
 
 import kva.logiikka.PeriodinTunniste;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -40,6 +44,16 @@ import kva.logiikka.PalkinTunniste;
  * Luokka ei tue metodin {@code lataaKurssitarjotin()} kutsumista toisen kerran, ja 
  * siten kurssitarjottimen lataamista uudestaan samalla {@code lataaPeriodienTunnisteet()}-metodin 
  * kutsulla. Tämän yrittäminen aiheuttaa {@code IllegalStateException}-poikkeuksen.
+ * <p>
+ * Suurten tiedostojen lataamiseen luokalla on virtaava tila, joka valitaan konstruktorilla 
+ * {@link #TestiLataaja(boolean)}. Virtaavassa tilassa tiedostoa luetaan {@link java.nio.channels.FileChannel}in 
+ * kautta puskurillinen kerrallaan, ja palkkien rivit pilkotaan ilman säännöllisiä 
+ * lausekkeita suoraan {@code KurssitarjottimenLataajan} metodeille. Ei-haluttujen 
+ * periodien riveistä ei luoda lainkaan merkkijonoja.
+ * <p>
+ * Virtaavassa tilassa tiedostolle luodaan myös {@link kva.logiikka.lataus.TarjotinHakemisto}, 
+ * joka tallennetaan tiedoston viereen. Hakemiston avulla kurssitarjottimen latauksessa 
+ * luetaan vain valittujen periodien palkit, eikä muita periodeja käydä läpi lainkaan.
  *
  * @author Väinö Viinikka
  * @see kva.logiikka.lataus.KurssitarjottimenLataaja
@@ -65,6 +79,31 @@ public class TestiLataaja extends KurssitarjottimenLataaja {
     private String nykyinenOppilaitos;
     private String nykyinenPeriodi;
     private String nykyinenPalkki;
+    /**Kertoo, luetaanko tiedosto virtaavassa tilassa.
+     */
+    private final boolean virtaava;
+    /**Lukee {@code URL}:n osoittamaa tiedostoa virtaavassa tilassa.
+     */
+    private VirtaavaRivinLukija virtaavaLukija;
+    /**Kertoo virtaavassa tilassa, mistä kohtaa tiedostoa kunkin periodin palkit löytyvät.
+     */
+    private TarjotinHakemisto hakemisto;
+
+    /**Luo uuden {@code TestiLataajan}, joka lukee tiedoston {@link java.util.Scanner}in 
+     * avulla.
+     */
+    public TestiLataaja() {
+        this(false);
+    }
+
+    /**Luo uuden {@code TestiLataajan}.
+     * 
+     * @param virtaava {@code true}, jos tiedosto luetaan virtaavassa tilassa {@code FileChannelin} 
+     *        kautta, {@code false}, jos tiedosto luetaan {@code Scannerilla}
+     */
+    public TestiLataaja(boolean virtaava) {
+        this.virtaava = virtaava;
+    }
     
     @Override
     public void lataaPeriodienTunnisteet(Object[] data) {
@@ -73,14 +112,24 @@ public class TestiLataaja extends KurssitarjottimenLataaja {
             @Override
             protected Void call() throws Exception {
                 String URL = (String) data[0];
-                Scanner uusi = new Scanner(new FileInputStream(URL));
-                if ((!uusi.hasNext()) || (!uusi.nextLine().equals("PERIODIEN_TUNNISTEET"))) {
-                    throw new LataajaPoikkeus("Tiedosto \"" + URL + "\" ei ala rivillä \"PERIODIEN_TUNNISTEET\".");
+                TestiLataaja.this.URL = URL;
+                if (virtaava) {
+                    VirtaavaRivinLukija uusi = new VirtaavaRivinLukija(Paths.get(URL));
+                    if ((!uusi.onSeuraavaRivi()) || (!"PERIODIEN_TUNNISTEET".contentEquals(uusi.seuraavaRivi()))) {
+                        uusi.close();
+                        throw new LataajaPoikkeus("Tiedosto \"" + URL + "\" ei ala rivillä \"PERIODIEN_TUNNISTEET\".");
+                    }
+                    virtaavaLukija = uusi;
+                } else {
+                    Scanner uusi = new Scanner(new FileInputStream(URL));
+                    if ((!uusi.hasNext()) || (!uusi.nextLine().equals("PERIODIEN_TUNNISTEET"))) {
+                        throw new LataajaPoikkeus("Tiedosto \"" + URL + "\" ei ala rivillä \"PERIODIEN_TUNNISTEET\".");
+                    }
+                    lukija = uusi;
                 }
 
                 rivi = 1;
                 viimeisinRivi = "PERIODIEN_TUNNISTEET";
-                lukija = uusi;
 
                 String oppilaitos = "";
 
@@ -88,11 +137,14 @@ public class TestiLataaja extends KurssitarjottimenLataaja {
                     if (super.isCancelled()) {
                         return null;
                     }
-                    if (!lukija.hasNext()) {
+                    if (!onRiveja()) {
                         throw new LataajaPoikkeus("Tiedosto \"" + URL + "\" sisältää vain periodien tunnistetietoja.");
                     }
                     String syote = seuraavaRivi();
                     if (syote.equals("MODUULIEN_TIEDOT")) {
+                        if (virtaavaLukija != null) {
+                            hakemisto = TarjotinHakemisto.lataaTaiLuo(Paths.get(URL));
+                        }
                         return null;
                     } else if (syote.startsWith("#")) {
                         oppilaitos = syote.substring(1);
@@ -157,6 +209,11 @@ public class TestiLataaja extends KurssitarjottimenLataaja {
                 }
                 
                 ladattavatPeriodit = new HashSet<>(periodit);
+                
+                if (virtaavaLukija != null) {
+                    lueHalututLohkot(this);
+                    return null;
+                }
 
                 while (onSeuraavaaRyhmaa()) {
                     String koodi = seuraavanRyhmanKoodi();
@@ -184,8 +241,9 @@ public class TestiLataaja extends KurssitarjottimenLataaja {
      * 
      * @return true, jos jäljellä on yksi tai useampi ryhmä
      * @throws LataajaPoikkeus jos tekstitiedoston syntaksi on virheellinen
+     * @throws java.io.IOException jos tiedoston lukeminen epäonnistuu
      */
-    private boolean onSeuraavaaRyhmaa() throws LataajaPoikkeus {
+    private boolean onSeuraavaaRyhmaa() throws IOException {
         if(!kaytavaPalkki.isEmpty()) {
             return true;
         }
@@ -226,8 +284,9 @@ public class TestiLataaja extends KurssitarjottimenLataaja {
      * 
      * @return ryhmäkoodi
      * @throws LataajaPoikkeus jos tekstitiedoston syntaksi on virheellinen
+     * @throws java.io.IOException jos tiedoston lukeminen epäonnistuu
      */
-    private String seuraavanRyhmanKoodi() throws LataajaPoikkeus {
+    private String seuraavanRyhmanKoodi() throws IOException {
         if(!onSeuraavaaRyhmaa()) {
             return null;
         }
@@ -246,15 +305,137 @@ public class TestiLataaja extends KurssitarjottimenLataaja {
      * <p>
      * Tätä metodia tulisi käyttää aina kutsun {@code lukija.nextLine()} sijasta, 
      * ellei muuhun ole painavaa syytä. Näin muuttujien {@code rivi} ja {@code viimeisinRivi} 
-     * arvot pysyvät oikeina.
+     * arvot pysyvät oikeina. Virtaavassa tilassa rivi luetaan {@code virtaavaltaLukijalta}.
      *
      * @return kutsun {@code lukija.nextLine()} palauttama merkkijono
+     * @throws java.io.IOException jos tiedoston lukeminen epäonnistuu
      */
-    private String seuraavaRivi() {
+    private String seuraavaRivi() throws IOException {
         rivi++;
-        viimeisinRivi = lukija.nextLine();
+        if (virtaavaLukija != null) {
+            viimeisinRivi = virtaavaLukija.seuraavaRivi().toString();
+        } else {
+            viimeisinRivi = lukija.nextLine();
+        }
         return viimeisinRivi;
     }
+    
+    /**Kertoo, onko tiedostossa vielä lukemattomia rivejä.
+     * 
+     * @return {@code true}, jos metodi {@link #seuraavaRivi()} voi palauttaa rivin
+     * @throws java.io.IOException jos tiedoston lukeminen epäonnistuu
+     */
+    private boolean onRiveja() throws IOException {
+        if (virtaavaLukija != null) {
+            return virtaavaLukija.onSeuraavaRivi();
+        }
+        return lukija.hasNext();
+    }
+    
+    /**Lukee virtaavassa tilassa valittujen periodien palkit ja lisää niiden ryhmät 
+     * {@code KurssitarjottimenLataajalle}.
+     * <p>
+     * Periodien palkit luetaan suoraan niiltä kohdin tiedostoa, jotka {@code hakemisto} 
+     * kertoo. Muiden periodien palkkeja ei lueta lainkaan. Metodi sulkee {@code virtaavanLukijan}.
+     * 
+     * @param tehtava taustasäikeen tehtävä, jonka keskeytystä seurataan
+     * @throws java.io.IOException jos tiedoston lukeminen epäonnistuu tai sen syntaksi 
+     *         on virheellinen
+     */
+    private void lueHalututLohkot(Task<?> tehtava) throws IOException {
+        virtaavaLukija.close();
+        virtaavaLukija = null;
+        if (hakemisto.getVirheellinenRivi() > 0) {
+            throw virheellinenOtsikko(hakemisto.getVirheellinenRivi());
+        }
+        try (FileChannel kanava = FileChannel.open(Paths.get(URL), StandardOpenOption.READ)) {
+            for (TarjotinHakemisto.Lohko lohko : hakemisto.haeLohkot(ladattavatPeriodit)) {
+                String oppilaitos = lohko.getTunniste().getOppilaitos();
+                String periodi = lohko.getTunniste().getPeriodi();
+                rivi = lohko.getRivi() - 1;
+                try (VirtaavaRivinLukija lohkonLukija = new VirtaavaRivinLukija(kanava, lohko.getAlku(), lohko.getLoppu())) {
+                    while (lohkonLukija.onSeuraavaRivi()) {
+                        if (tehtava.isCancelled()) {
+                            return;
+                        }
+                        CharSequence syote = lohkonLukija.seuraavaRivi();
+                        rivi++;
+                        lisaaPalkinRyhmat(syote, oppilaitos, periodi);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**Lisää palkin rivillä luetellut ryhmät {@code KurssitarjottimenLataajalle}.
+     * <p>
+     * Rivi pilkotaan kauttaviivojen kohdalta ilman säännöllisiä lausekkeita, mutta 
+     * samoin kuin {@code Scanneria} käyttävässä tilassa kutsu {@code split("/")}: rivin 
+     * lopussa olevat kauttaviivat jätetään huomiotta. Rivin ensimmäinen osa on palkin 
+     * nimi, ja loput ryhmäkoodeja. Kaikille rivin ryhmille annetaan sama {@code PalkinTunniste}.
+     * 
+     * @param syote palkin rivi muodossa "[palkki]/[ryhmäkoodi]/[ryhmäkoodi]..."
+     * @param oppilaitos sen oppilaitoksen nimi, johon palkki kuuluu
+     * @param periodi sen periodin nimi, johon palkki kuuluu
+     * @throws LataajaPoikkeus jos rivillä ei ole yhtään ryhmäkoodia
+     */
+    private void lisaaPalkinRyhmat(CharSequence syote, String oppilaitos, String periodi) throws LataajaPoikkeus {
+        int rivinLoppu = syote.length();
+        while (rivinLoppu > 0 && syote.charAt(rivinLoppu - 1) == '/') {
+            rivinLoppu--;
+        }
+        int erotin = etsi(syote, '/', 0);
+        if (erotin < 0 || erotin >= rivinLoppu) {
+            throw new LataajaPoikkeus("Virheellinen palkin kuvaus tiedoston \"" 
+                        + URL + "\" rivillä " + rivi + ".");
+        }
+        PalkinTunniste palkki = new PalkinTunniste(oppilaitos, periodi, syote.subSequence(0, erotin).toString());
+        
+        int alku = erotin + 1;
+        while (alku <= rivinLoppu) {
+            int loppu = etsi(syote, '/', alku);
+            if (loppu < 0 || loppu > rivinLoppu) {
+                loppu = rivinLoppu;
+            }
+            String koodi = syote.subSequence(alku, loppu).toString();
+            if (!lisaaSijainti(koodi, palkki)) {
+                LuotavaRyhma uusi = new LuotavaRyhma(koodi);
+                uusi.lisaaSijainti(palkki);
+                lisaaRyhma(uusi);
+            }
+            alku = loppu + 1;
+        }
+    }
+    
+    /**Luo poikkeuksen otsikkoriville, joka ei seuraa oppilaitoksen otsikkoa oikein. 
+     * <p>
+     * Virtaavassa tilassa oppilaitoksen otsikkoa on seurattava periodin otsikko ja 
+     * periodin otsikkoa palkin rivi, sillä {@code TarjotinHakemisto} ei pysty kuvaamaan 
+     * muita järjestyksiä. {@code Scanneria} käyttävä tila ei tarkista otsikoiden järjestystä.
+     * 
+     * @param virheellinenRivi virheellisen rivin numero
+     * @return heitettävä {@code LataajaPoikkeus}
+     */
+    private LataajaPoikkeus virheellinenOtsikko(int virheellinenRivi) {
+        return new LataajaPoikkeus("Virheellinen otsikkorivi tiedoston \"" 
+                    + URL + "\" rivillä " + virheellinenRivi + ".");
+    }
+    
+    /**Etsii annetun merkin ensimmäisen esiintymän merkkijonosta.
+     * 
+     * @param jono tutkittava merkkijono
+     * @param merkki etsittävä merkki
+     * @param alku indeksi, josta etsintä aloitetaan
+     * @return merkin indeksi, tai -1, jos merkkiä ei löytynyt
+     */
+    private static int etsi(CharSequence jono, char merkki, int alku) {
+        for (int i = alku; i < jono.length(); i++) {
+            if (jono.charAt(i) == merkki) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
     /**Kertoo, onko tarkastelussa tällä hetkellä periodi, jonka kurssit tulisi ladata.
      * <p>
@@ -0,0 +1,338 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka.lataus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import kva.logiikka.Kurssitarjotin;
+import kva.logiikka.KurssitarjotinRakentaja;
+import kva.logiikka.Moduuli;
+import kva.logiikka.PalkinTunniste;
+import kva.logiikka.PeriodinTunniste;
+import kva.logiikka.Ryhma;
+
+/**Tiivis binäärimuotoinen tallenne valmiiksi ladatusta {@code Kurssitarjottimesta}.
+ * <p>
+ * {@code Tilannekuva} sisältää {@link kva.logiikka.Kurssitarjotin}-olion {@link kva.logiikka.Moduuli}t,
+ * jokaisen {@link kva.logiikka.Ryhma}n koodin ja sijainnit, periodien järjestyksen
+ * sekä tallennushetkellä valittuina olleet {@code Ryhmat}. Tallenteen avulla {@code Kurssitarjotin}
+ * voidaan luoda uudelleen ilman, että tietoja ladataan Wilmasta tai tekstitiedostosta.
+ * <p>
+ * Tallenne alkaa tunnisteella ja versionumerolla, joita seuraa sisällön pituus,
+ * itse sisältö ja sisällön CRC32-tarkistussumma. Tallenne tallennetaan metodilla
+ * {@link #tallenna(kva.logiikka.Kurssitarjotin, java.nio.file.Path)} ja luetaan metodilla
+ * {@link #lue(java.nio.file.Path)}. {@link kva.logiikka.lataus.TilannekuvaLataaja}
+ * lataa {@code Kurssitarjottimen} tilannekuvasta {@link kva.logiikka.Sovelluslogiikka}a
+ * varten.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.lataus.TilannekuvaLataaja
+ * @since Kurssivalinta-avustin 1.1
+ */
+public final class Tilannekuva {
+
+    private static final int TUNNISTE = 0x4B564154;
+    private static final short VERSIO = 1;
+
+    private final List<PeriodinTunniste> periodit;
+    private final List<Moduuli> moduulit;
+    private final List<PalkinTunniste> palkit;
+    private final String[] ryhmakoodit;
+    private final int[][] ryhmienPalkit;
+    private final Set<String> valitutRyhmat;
+
+    private Tilannekuva(List<PeriodinTunniste> periodit, List<Moduuli> moduulit, List<PalkinTunniste> palkit,
+            String[] ryhmakoodit, int[][] ryhmienPalkit, Set<String> valitutRyhmat) {
+        this.periodit = Collections.unmodifiableList(periodit);
+        this.moduulit = Collections.unmodifiableList(moduulit);
+        this.palkit = palkit;
+        this.ryhmakoodit = ryhmakoodit;
+        this.ryhmienPalkit = ryhmienPalkit;
+        this.valitutRyhmat = Collections.unmodifiableSet(valitutRyhmat);
+    }
+
+    /**Palauttaa tilannekuvan oletussijainnin käyttäjän kotihakemistossa.
+     *
+     * @return tiedosto, johon sovellus tallentaa viimeksi ladatun {@code Kurssitarjottimen} 
+     *         tilannekuvan
+     */
+    public static Path oletusSijainti() {
+        return Paths.get(System.getProperty("user.home"), ".kurssivalinta-avustin", "tilannekuva");
+    }
+
+    /**Tallentaa annetun {@code Kurssitarjottimen} tilannekuvan tiedostoon.
+     * <p>
+     * Jos tiedosto on jo olemassa, se korvataan. Tilannekuva kirjoitetaan ensin väliaikaiseen 
+     * tiedostoon samaan hakemistoon, joka siirretään atomisesti tiedoston paikalle, 
+     * joten keskeytynyt tallennus ei jätä vioittunutta tilannekuvaa.
+     *
+     * @param tarjotin tallennettava {@code Kurssitarjotin}
+     * @param tiedosto sijainti, johon tilannekuva tallennetaan
+     * @throws java.io.IOException jos tiedostoon kirjoittaminen epäonnistuu
+     */
+    public static void tallenna(Kurssitarjotin tarjotin, Path tiedosto) throws IOException {
+        List<PeriodinTunniste> periodit = tarjotin.getPeriodienNakyma();
+        List<PalkinTunniste> palkit = tarjotin.getPalkkienNakyma();
+        List<Ryhma> ryhmat = new ArrayList<>(tarjotin.getRyhmienNakyma());
+        Map<String, Moduuli> moduulit = new LinkedHashMap<>();
+        ryhmat.forEach((ryhma) -> moduulit.putIfAbsent(ryhma.getModuuli().getKoodi(), ryhma.getModuuli()));
+
+        HashMap<PeriodinTunniste, Integer> periodinIndeksi = new HashMap<>();
+        for(int i = 0; i < periodit.size(); i++) {
+            periodinIndeksi.put(periodit.get(i), i);
+        }
+        HashMap<PalkinTunniste, Integer> palkinIndeksi = new HashMap<>();
+        for(int i = 0; i < palkit.size(); i++) {
+            palkinIndeksi.put(palkit.get(i), i);
+        }
+
+        ByteArrayOutputStream sisalto = new ByteArrayOutputStream();
+        DataOutputStream ulos = new DataOutputStream(sisalto);
+
+        ulos.writeInt(periodit.size());
+        for(PeriodinTunniste periodi : periodit) {
+            ulos.writeUTF(periodi.getOppilaitos());
+            ulos.writeUTF(periodi.getPeriodi());
+        }
+        ulos.writeInt(moduulit.size());
+        for(Moduuli moduuli : moduulit.values()) {
+            ulos.writeUTF(moduuli.getKoodi());
+            ulos.writeUTF(moduuli.getTyyppi().name());
+        }
+        ulos.writeInt(palkit.size());
+        for(PalkinTunniste palkki : palkit) {
+            ulos.writeInt(periodinIndeksi.get(palkki.getPeriodinTunniste()));
+            ulos.writeUTF(palkki.getPalkki());
+            ulos.writeInt(palkki.getJarjestysluku());
+        }
+        ulos.writeInt(ryhmat.size());
+        for(Ryhma ryhma : ryhmat) {
+            ulos.writeUTF(ryhma.getKoodi());
+            List<PalkinTunniste> sijainnit = ryhma.getSijaintienNakyma();
+            ulos.writeInt(sijainnit.size());
+            for(PalkinTunniste sijainti : sijainnit) {
+                ulos.writeInt(palkinIndeksi.get(sijainti));
+            }
+        }
+        ulos.writeInt(tarjotin.getValitutRyhmat().size());
+        for(Ryhma ryhma : tarjotin.getValitutRyhmat()) {
+            ulos.writeUTF(ryhma.getKoodi());
+        }
+        ulos.flush();
+
+        byte[] tavut = sisalto.toByteArray();
+        CRC32 summa = new CRC32();
+        summa.update(tavut);
+
+        ByteArrayOutputStream kokonainen = new ByteArrayOutputStream(tavut.length + 18);
+        DataOutputStream otsake = new DataOutputStream(kokonainen);
+        otsake.writeInt(TUNNISTE);
+        otsake.writeShort(VERSIO);
+        otsake.writeInt(tavut.length);
+        otsake.write(tavut);
+        otsake.writeLong(summa.getValue());
+        otsake.flush();
+        
+        Path hakemisto = tiedosto.toAbsolutePath().getParent();
+        Files.createDirectories(hakemisto);
+        Path valiaikainen = Files.createTempFile(hakemisto, "kva", ".tmp");
+        try {
+            Files.write(valiaikainen, kokonainen.toByteArray());
+            Files.move(valiaikainen, tiedosto, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(valiaikainen);
+        }
+    }
+
+    /**Lukee tilannekuvan tiedostosta.
+     *
+     * @param tiedosto tilannekuvan sisältävä tiedosto
+     * @return luettu {@code Tilannekuva}
+     * @throws java.io.IOException jos tiedoston lukeminen epäonnistuu, tiedosto ei
+     *         ole tilannekuva, sen versiota ei tueta tai sen tarkistussumma ei täsmää
+     */
+    public static Tilannekuva lue(Path tiedosto) throws IOException {
+        byte[] kaikki = Files.readAllBytes(tiedosto);
+        DataInputStream otsake = new DataInputStream(new ByteArrayInputStream(kaikki));
+        if(kaikki.length < 18 || otsake.readInt() != TUNNISTE) {
+            throw new IOException("Tiedosto \"" + tiedosto + "\" ei ole kurssitarjottimen tilannekuva.");
+        }
+        short versio = otsake.readShort();
+        if(versio != VERSIO) {
+            throw new IOException("Tilannekuvan versiota " + versio + " ei tueta.");
+        }
+        int pituus = otsake.readInt();
+        if(pituus < 0 || pituus != kaikki.length - 18) {
+            throw new IOException("Tilannekuva \"" + tiedosto + "\" on vioittunut.");
+        }
+        CRC32 summa = new CRC32();
+        summa.update(kaikki, 10, pituus);
+        otsake.skipBytes(pituus);
+        if(otsake.readLong() != summa.getValue()) {
+            throw new IOException("Tilannekuvan \"" + tiedosto + "\" tarkistussumma ei täsmää.");
+        }
+
+        DataInputStream sisaan = new DataInputStream(new ByteArrayInputStream(kaikki, 10, pituus));
+        int periodeja = sisaan.readInt();
+        List<PeriodinTunniste> periodit = new ArrayList<>(periodeja);
+        for(int i = 0; i < periodeja; i++) {
+            periodit.add(new PeriodinTunniste(sisaan.readUTF(), sisaan.readUTF()));
+        }
+        int moduuleja = sisaan.readInt();
+        List<Moduuli> moduulit = new ArrayList<>(moduuleja);
+        for(int i = 0; i < moduuleja; i++) {
+            String koodi = sisaan.readUTF();
+            moduulit.add(new Moduuli(koodi, Moduuli.Tyyppi.valueOf(sisaan.readUTF())));
+        }
+        int palkkeja = sisaan.readInt();
+        List<PalkinTunniste> palkit = new ArrayList<>(palkkeja);
+        for(int i = 0; i < palkkeja; i++) {
+            PeriodinTunniste periodi = periodit.get(sisaan.readInt());
+            String palkki = sisaan.readUTF();
+            palkit.add(new PalkinTunniste(periodi, palkki, sisaan.readInt()));
+        }
+        int ryhmia = sisaan.readInt();
+        String[] ryhmakoodit = new String[ryhmia];
+        int[][] ryhmienPalkit = new int[ryhmia][];
+        for(int i = 0; i < ryhmia; i++) {
+            ryhmakoodit[i] = sisaan.readUTF();
+            ryhmienPalkit[i] = new int[sisaan.readInt()];
+            for(int a = 0; a < ryhmienPalkit[i].length; a++) {
+                ryhmienPalkit[i][a] = sisaan.readInt();
+            }
+        }
+        int valittuja = sisaan.readInt();
+        Set<String> valitut = new HashSet<>();
+        for(int i = 0; i < valittuja; i++) {
+            valitut.add(sisaan.readUTF());
+        }
+        return new Tilannekuva(periodit, moduulit, palkit, ryhmakoodit, ryhmienPalkit, valitut);
+    }
+
+    /**Palauttaa tilannekuvan periodit siinä järjestyksessä, jossa ne esitetään
+     * käyttöliittymässä.
+     *
+     * @return lista periodien tunnisteista
+     */
+    public List<PeriodinTunniste> getPeriodit() {
+        return periodit;
+    }
+
+    /**Palauttaa tilannekuvaan tallennetut {@code Moduulit}.
+     *
+     * @return lista {@code Moduuleista}
+     */
+    public List<Moduuli> getModuulit() {
+        return moduulit;
+    }
+
+    /**Palauttaa niiden {@code Ryhmien} koodit, jotka olivat valittuina tilannekuvaa
+     * tallennettaessa.
+     *
+     * @return joukko ryhmäkoodeja
+     */
+    public Set<String> getValitutRyhmat() {
+        return valitutRyhmat;
+    }
+
+    /**Luo {@code LuotavatRyhmat} niille {@code Ryhmille}, joilla on sijainteja annetuissa
+     * periodeissa.
+     * <p>
+     * Kunkin {@code LuotavanRyhman} sijainneiksi tulevat vain annettujen periodien
+     * sijainnit.
+     *
+     * @param periodit halutut periodit
+     * @return lista {@code LuotavistaRyhmista}
+     */
+    public List<LuotavaRyhma> luoRyhmat(Collection<PeriodinTunniste> periodit) {
+        Set<PeriodinTunniste> halutut = new HashSet<>(periodit);
+        List<LuotavaRyhma> tulos = new ArrayList<>();
+        for(int i = 0; i < ryhmakoodit.length; i++) {
+            LuotavaRyhma uusi = null;
+            for(int indeksi : ryhmienPalkit[i]) {
+                PalkinTunniste palkki = palkit.get(indeksi);
+                if(halutut.contains(palkki.getPeriodinTunniste())) {
+                    if(uusi == null) {
+                        uusi = new LuotavaRyhma(ryhmakoodit[i]);
+                    }
+                    uusi.lisaaSijainti(palkki);
+                }
+            }
+            if(uusi != null) {
+                tulos.add(uusi);
+            }
+        }
+        return tulos;
+    }
+
+    /**Luo tilannekuvan perusteella uuden {@code Kurssitarjottimen} ilman {@code KurssitarjottimenLataajaa}.
+     *
+     * @param periodit mukaan otettavat periodit, järjestyksellä ei ole väliä
+     * @param palautaValinnat {@code true}, jos tallennushetkellä valittuina olleet
+     *        {@code Ryhmat} merkitään valituiksi
+     * @return uusi {@code Kurssitarjotin}
+     */
+    public Kurssitarjotin luoKurssitarjotin(Collection<PeriodinTunniste> periodit, boolean palautaValinnat) {
+        Set<PeriodinTunniste> halutut = new HashSet<>(periodit);
+        List<PeriodinTunniste> jarjestys = this.periodit.stream()
+                .filter((periodi) -> halutut.contains(periodi))
+                .collect(Collectors.toList());
+        Kurssitarjotin tarjotin = new KurssitarjotinRakentaja()
+                .lisaaRyhmat(luoRyhmat(halutut))
+                .lisaaModuulit(moduulit)
+                .setPeriodienJarjestys(jarjestys)
+                .rakenna();
+        if(palautaValinnat) {
+            palautaValinnat(tarjotin);
+        }
+        return tarjotin;
+    }
+
+    /**Merkitsee annetusta {@code Kurssitarjottimesta} valituiksi ne {@code Ryhmat},
+     * jotka olivat valittuina tilannekuvaa tallennettaessa.
+     * <p>
+     * {@code Ryhmat}, joita {@code Kurssitarjottimessa} ei ole, jätetään huomiotta. 
+     * Valinnat tehdään yhdellä {@link kva.logiikka.Kurssitarjotin#muutaValintoja(java.util.Collection, java.util.Collection)}-kutsulla, 
+     * joten palautus on yksi kumottava ja julkaistava muutos.
+     *
+     * @param tarjotin {@code Kurssitarjotin}, jonka valinnat palautetaan
+     */
+    public void palautaValinnat(Kurssitarjotin tarjotin) {
+        List<Ryhma> valittavat = tarjotin.getRyhmienNakyma().stream()
+                .filter((ryhma) -> valitutRyhmat.contains(ryhma.getKoodi()))
+                .collect(Collectors.toList());
+        tarjotin.muutaValintoja(valittavat, Collections.<Ryhma>emptyList());
+    }
+}
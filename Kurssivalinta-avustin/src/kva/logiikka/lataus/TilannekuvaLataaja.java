@@ -0,0 +1,122 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka.lataus;
+
+import java.nio.file.Paths;
+import java.util.List;
+import javafx.concurrent.Task;
+import kva.logiikka.Kurssitarjotin;
+import kva.logiikka.PeriodinTunniste;
+
+/**{@code KurssitarjottimenLataaja}, joka lataa tiedot {@link kva.logiikka.lataus.Tilannekuva}sta.
+ * <p>
+ * Tilannekuvan sijainti annetaan merkkijonona metodin {@link #lataaPeriodienTunnisteet(java.lang.Object[])}
+ * parametrin ensimmäisenä alkiona. Tiedosto luetaan ja sen tarkistussumma tarkistetaan
+ * taustasäikeessä, minkä jälkeen {@code Kurssitarjotin} koostetaan suoraan tilannekuvan
+ * tiedoista ilman tekstin jäsentämistä. Myös {@code Ryhmat} koostetaan taustasäikeessä.
+ * <p>
+ * Toisin kuin {@link kva.logiikka.lataus.TestiLataaja}, {@code TilannekuvaLataaja}
+ * tukee {@code Kurssitarjottimen} lataamista useita kertoja saman tilannekuvan perusteella.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.lataus.Tilannekuva
+ * @see kva.logiikka.lataus.KurssitarjottimenLataaja
+ * @since Kurssivalinta-avustin 1.1
+ */
+public class TilannekuvaLataaja extends KurssitarjottimenLataaja {
+
+    /**Kertoo, merkitäänkö tilannekuvaan tallennetut valinnat ladatusta {@code Kurssitarjottimesta}
+     * valituiksi.
+     */
+    private final boolean palautaValinnat;
+    /**Viimeksi luettu tilannekuva.
+     */
+    private Tilannekuva tilannekuva;
+
+    /**Luo uuden {@code TilannekuvaLataajan}, joka ei palauta tilannekuvaan tallennettuja
+     * valintoja.
+     */
+    public TilannekuvaLataaja() {
+        this(false);
+    }
+
+    /**Luo uuden {@code TilannekuvaLataajan}.
+     *
+     * @param palautaValinnat {@code true}, jos tilannekuvaa tallennettaessa valittuina
+     *        olleet {@code Ryhmat} merkitään valituiksi ladatussa {@code Kurssitarjottimessa}
+     */
+    public TilannekuvaLataaja(boolean palautaValinnat) {
+        this.palautaValinnat = palautaValinnat;
+    }
+
+    @Override
+    public void lataaPeriodienTunnisteet(Object[] data) {
+        String sijainti = (String) data[0];
+        Task<Tilannekuva> tehtava = new Task<Tilannekuva>() {
+
+            @Override
+            protected Tilannekuva call() throws Exception {
+                Tilannekuva luettu = Tilannekuva.lue(Paths.get(sijainti));
+                luettu.getPeriodit().forEach((periodi) -> lisaaPeriodinTunniste(periodi));
+                return luettu;
+            }
+        };
+
+        tehtava.setOnSucceeded((ev) -> {
+            tilannekuva = tehtava.getValue();
+            super.lahetaPeriodinTunnisteet();
+        });
+        tehtava.setOnFailed((ev) -> super.lahetaVirhe(ev.getSource().getException()));
+        tehtava.setOnCancelled((ev) -> super.lahetaVirhe(new LataajaPoikkeus("Lataus keskeytettiin.")));
+
+        Thread th = new Thread(tehtava);
+        th.setDaemon(true);
+        th.start();
+    }
+
+    @Override
+    public void lataaKurssitarjotin(List<PeriodinTunniste> periodit) {
+        if(tilannekuva == null) {
+            throw new IllegalStateException("Tilannekuvaa ei ole luettu.");
+        }
+        Tilannekuva luettu = tilannekuva;
+        Task<Void> tehtava = new Task<Void>() {
+
+            @Override
+            protected Void call() throws Exception {
+                luettu.getModuulit().forEach((moduuli) -> lisaaModuuli(moduuli));
+                luettu.luoRyhmat(periodit).forEach((ryhma) -> lisaaRyhma(ryhma));
+                return null;
+            }
+        };
+
+        tehtava.setOnSucceeded((ev) -> super.lahetaKurssitarjotin());
+        tehtava.setOnFailed((ev) -> super.lahetaVirhe(ev.getSource().getException()));
+        tehtava.setOnCancelled((ev) -> super.lahetaVirhe(new LataajaPoikkeus("Lataus keskeytettiin.")));
+
+        Thread th = new Thread(tehtava);
+        th.setDaemon(true);
+        th.start();
+    }
+
+    @Override
+    protected void kurssitarjotinLuotu(Kurssitarjotin tarjotin) {
+        if(palautaValinnat) {
+            tilannekuva.palautaValinnat(tarjotin);
+        }
+    }
+}
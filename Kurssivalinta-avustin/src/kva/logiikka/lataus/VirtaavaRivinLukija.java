@@ -0,0 +1,220 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka.lataus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+/**Lukee UTF-8-muotoista tekstitiedostoa rivi kerrallaan {@link java.nio.channels.FileChannel}in
+ * kautta.
+ * <p>
+ * Toisin kuin {@link java.util.Scanner}, lukija purkaa tavut merkeiksi kerran puskurillista
+ * kohden, eikä se luo riveistä uusia merkkijonoja: {@link #seuraavaRivi()} palauttaa
+ * aina saman, uudelleenkäytettävän {@code CharSequencen}, jonka sisältö vaihtuu
+ * seuraavalla kutsulla. Kutsujan on siis kopioitava tarvitsemansa osat rivistä ennen
+ * seuraavan rivin lukemista.
+ * <p>
+ * Rivinvaihdoiksi tulkitaan sekä "\n" että "\r\n".
+ * <p>
+ * Lukija käyttää kanavan sijaintiin sidottuja lukuja, joten sillä voidaan lukea myös 
+ * pelkkä tiedoston osa, ja useampi lukija voi jakaa saman kanavan.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.lataus.TestiLataaja
+ * @since Kurssivalinta-avustin 1.1
+ */
+final class VirtaavaRivinLukija implements Closeable {
+
+    private static final int PUSKURIN_KOKO = 1 << 16;
+
+    private final FileChannel kanava;
+    private final boolean omaKanava;
+    private final long loppu;
+    private long sijainti;
+    private final CharsetDecoder purkaja;
+    private final ByteBuffer tavut;
+    private final CharBuffer merkit;
+    private final StringBuilder rivi;
+
+    private boolean tiedostoLoppui = false;
+    private boolean purettu = false;
+    private boolean riviValmis = false;
+
+    /**Avaa annetun tiedoston luettavaksi alusta alkaen.
+     *
+     * @param tiedosto luettavan tiedoston sijainti
+     * @throws java.io.IOException jos tiedostoa ei voida avata
+     */
+    VirtaavaRivinLukija(Path tiedosto) throws IOException {
+        this(FileChannel.open(tiedosto, StandardOpenOption.READ), true, 0, -1);
+    }
+
+    /**Luo lukijan, joka lukee annetun kanavan tavut väliltä [{@code alku}, {@code loppu}).
+     * <p>
+     * Kanavaa ei suljeta, kun lukija suljetaan, eikä lukija muuta kanavan sijaintia.
+     *
+     * @param kanava luettava kanava
+     * @param alku ensimmäisen luettavan tavun sijainti. Sijainnin tulee olla rivin
+     *        alussa.
+     * @param loppu viimeistä luettavaa tavua seuraava sijainti
+     * @throws java.io.IOException jos kanavan käsittely epäonnistuu
+     */
+    VirtaavaRivinLukija(FileChannel kanava, long alku, long loppu) throws IOException {
+        this(kanava, false, alku, loppu);
+    }
+
+    private VirtaavaRivinLukija(FileChannel kanava, boolean omaKanava, long alku, long loppu) throws IOException {
+        this.kanava = kanava;
+        this.omaKanava = omaKanava;
+        this.sijainti = alku;
+        this.loppu = loppu < 0 ? kanava.size() : loppu;
+        this.purkaja = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.tavut = ByteBuffer.allocate(PUSKURIN_KOKO);
+        this.merkit = CharBuffer.allocate(PUSKURIN_KOKO);
+        this.merkit.flip();
+        this.rivi = new StringBuilder();
+    }
+
+    /**Kertoo, onko tiedostossa vielä lukemattomia rivejä.
+     *
+     * @return {@code true}, jos {@link #seuraavaRivi()} voi palauttaa rivin
+     * @throws java.io.IOException jos tiedoston lukeminen epäonnistuu
+     */
+    boolean onSeuraavaRivi() throws IOException {
+        if(riviValmis) {
+            return true;
+        }
+        rivi.setLength(0);
+        boolean merkkejaLuettu = false;
+        while(true) {
+            while(merkit.hasRemaining()) {
+                char c = merkit.get();
+                if(c == '\n') {
+                    poistaRivinloppu();
+                    riviValmis = true;
+                    return true;
+                }
+                rivi.append(c);
+                merkkejaLuettu = true;
+            }
+            if(!taytaPuskuri()) {
+                if(merkkejaLuettu) {
+                    poistaRivinloppu();
+                    riviValmis = true;
+                }
+                return riviValmis;
+            }
+        }
+    }
+
+    /**Palauttaa tiedoston seuraavan rivin ilman rivinvaihtomerkkejä.
+     * <p>
+     * Palautettu olio on sama jokaisella kutsukerralla, ja sen sisältö korvautuu
+     * seuraavalla kutsulla.
+     *
+     * @return seuraava rivi
+     * @throws java.io.IOException jos tiedoston lukeminen epäonnistuu
+     * @throws java.util.NoSuchElementException jos tiedostossa ei ole enää rivejä
+     */
+    CharSequence seuraavaRivi() throws IOException {
+        if(!onSeuraavaRivi()) {
+            throw new NoSuchElementException("Tiedostossa ei ole enää rivejä.");
+        }
+        riviValmis = false;
+        return rivi;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(omaKanava) {
+            kanava.close();
+        }
+    }
+
+    /**Lukee kanavasta uuden puskurillisen tavuja ja purkaa ne merkeiksi.
+     *
+     * @return {@code true}, jos uusia merkkejä saatiin, {@code false} tiedoston lopussa
+     * @throws java.io.IOException jos tiedoston lukeminen epäonnistuu
+     */
+    private boolean taytaPuskuri() throws IOException {
+        merkit.clear();
+        while(!purettu) {
+            if(!tiedostoLoppui && lueTavuja() == -1) {
+                tiedostoLoppui = true;
+            }
+            tavut.flip();
+            CoderResult tulos = purkaja.decode(tavut, merkit, tiedostoLoppui);
+            tavut.compact();
+            if(tulos.isError()) {
+                tulos.throwException();
+            }
+            if(tiedostoLoppui && tulos.isUnderflow()) {
+                purkaja.flush(merkit);
+                purettu = true;
+            }
+            if(merkit.position() > 0) {
+                break;
+            }
+        }
+        merkit.flip();
+        return merkit.hasRemaining();
+    }
+
+    /**Lukee kanavasta tavuja puskuriin nykyisestä sijainnista alkaen, kuitenkin 
+     * enintään luettavan alueen loppuun.
+     *
+     * @return luettujen tavujen määrä, tai -1 alueen lopussa
+     * @throws java.io.IOException jos lukeminen epäonnistuu
+     */
+    private int lueTavuja() throws IOException {
+        long jaljella = loppu - sijainti;
+        if(jaljella <= 0) {
+            return -1;
+        }
+        int raja = tavut.limit();
+        if(tavut.remaining() > jaljella) {
+            tavut.limit(tavut.position() + (int) jaljella);
+        }
+        int luettu = kanava.read(tavut, sijainti);
+        tavut.limit(raja);
+        if(luettu > 0) {
+            sijainti += luettu;
+        }
+        return luettu;
+    }
+
+    /**Poistaa rivin lopusta mahdollisen "\r"-merkin.
+     */
+    private void poistaRivinloppu() {
+        int pituus = rivi.length();
+        if(pituus > 0 && rivi.charAt(pituus - 1) == '\r') {
+            rivi.setLength(pituus - 1);
+        }
+    }
+}
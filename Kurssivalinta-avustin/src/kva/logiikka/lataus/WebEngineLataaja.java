@@ -16,16 +16,20 @@
  */
 package kva.logiikka.lataus;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javafx.application.Platform;
+import javafx.beans.value.ObservableValue;
 import javafx.beans.value.ChangeListener;
 import javafx.concurrent.Worker;
 import javafx.scene.web.WebEngine;
-import kva.logiikka.Moduuli;
 import kva.logiikka.PalkinTunniste;
 import kva.logiikka.PeriodinTunniste;
-import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
@@ -34,18 +38,136 @@ import org.w3c.dom.Node;
  * <p>
  * Tiedot luetaan verkkosivujen HTML-lähdekoodista, joka saavutetaan luokan {@link javafx.scene.web.WebEngine} 
  * avulla.
+ * <p>
+ * Periodit voidaan ladata rinnakkain, kun lataaja luodaan konstruktorilla {@link #WebEngineLataaja(int)}. 
+ * Tällöin periodien sivuja ladataan yhtä aikaa usealla {@code WebEnginellä}: kirjautumiseen 
+ * käytetyn {@code WebEnginen} lisäksi lataaja luo tarvittaessa piilotettuja {@code WebEngineja}, 
+ * jotka käyttävät samaa kirjautumista, sillä kaikki {@code WebEnginet} jakavat JavaFX:n 
+ * yhteisen evästeiden käsittelijän. Kukin {@code WebEngine} lataa kerrallaan yhden 
+ * periodin, joten samanaikaisten pyyntöjen määrä on enintään konstruktorissa annettu 
+ * luku. Sovellus itse käyttää oletuskonstruktoria, joten rinnakkainen lataus on 
+ * käytettävissä vain luokan rajapinnan kautta.
+ * <p>
+ * Taustajäsennystilassa, joka valitaan konstruktorilla {@link #WebEngineLataaja(int, boolean)}, 
+ * sivuja ei lueta sovellussäikeessä. Kun sivu on latautunut, sen HTML-lähdekoodi 
+ * otetaan talteen merkkijonona, joka jäsennetään taustasäikeessä {@link kva.logiikka.lataus.WilmaJasennin}illa. 
+ * {@code WebEngine} aloittaa seuraavan periodin lataamisen heti, joten lataaminen 
+ * ja jäsentäminen limittyvät, eikä käyttöliittymä jähmety suurtenkaan tarjottimien 
+ * jäsentämisen ajaksi. Myös taustajäsennystila on käytettävissä vain luokan rajapinnan 
+ * kautta. Taustasäie lopetetaan, kun lataus valmistuu tai keskeytyy.
  *
  * @author Väinö Viinikka
  * @since Kurssivalinta-avustin 1.0
  */
 public class WebEngineLataaja extends KurssitarjottimenLataaja {
     
+    /**Tietueiden erotin {@link #TARJOTTIMEN_LUKU}-skriptin palauttamassa merkkijonossa.
+     */
+    private static final char TIETUEEN_EROTIN = '\u001E';
+    /**Tietueen kenttien erotin {@link #TARJOTTIMEN_LUKU}-skriptin palauttamassa merkkijonossa.
+     */
+    private static final String KENTAN_EROTIN = "\u001F";
+    /**JavaScript-lauseke, joka lukee periodin sivun kurssitarjottimen yhdellä kertaa.
+     * <p>
+     * Lauseke käy läpi saman rakenteen, jota aiemmin luettiin Javasta DOM-rajapinnan 
+     * kautta, ja palauttaa sen yhtenä merkkijonona, jossa jokainen palkki ja ryhmälinkki 
+     * on oma tietueensa. Palkin tietue on muotoa P, järjestysluku, otsikko ja ryhmälinkin 
+     * tietue muotoa R, teksti, class, title. Näin periodin lukeminen vaatii vain yhden 
+     * kutsun Javan ja WebKitin välillä.
+     */
+    private static final String TARJOTTIMEN_LUKU = 
+            "(function() {"
+            + "var T = '\u001E', K = '\u001F';"
+            + "var paa = document.getElementById('" + Wilma.TARJOTIN + "');"
+            + "var sailio = paa.getElementsByTagName('div')[0];"
+            + "var taulukko = sailio.getElementsByTagName('div')[1];"
+            + "var palkit = taulukko.getElementsByTagName('ul')[0].getElementsByTagName('li');"
+            + "var tulos = [];"
+            + "for (var i = 0; i < palkit.length; i += 2) {"
+            + "  var palkki = palkit[i];"
+            + "  tulos.push('P' + K + i + K + palkki.getElementsByTagName('span')[0].textContent);"
+            + "  var ryhmat = palkki.getElementsByTagName('li')[0].getElementsByTagName('a');"
+            + "  for (var a = 0; a < ryhmat.length; a++) {"
+            + "    var r = ryhmat[a];"
+            + "    tulos.push('R' + K + r.textContent + K + (r.getAttribute('class') || '') + K + (r.getAttribute('title') || ''));"
+            + "  }"
+            + "}"
+            + "return tulos.join(T);"
+            + "})()";
+    
     private WebEngine moottori;
     private String perusOsoite;
     private HashMap<PeriodinTunniste, String> linkit = new HashMap<>();
     
     private ChangeListener<Worker.State> kuuntelija;
-    private PeriodinTunniste nykyinenPeriodi;
+    
+    /**Kuinka monta periodia ladataan enintään samanaikaisesti.
+     */
+    private final int rinnakkaisetLataukset;
+    /**Rinnakkaisessa latauksessa käytettävät piilotetut {@code WebEnginet}. Ne luodaan 
+     * ensimmäisen latauksen yhteydessä ja käytetään uudelleen myöhemmissä latauksissa.
+     */
+    private final List<WebEngine> apumoottorit = new ArrayList<>();
+    /**Periodit, joiden lataamista ei ole vielä aloitettu.
+     */
+    private ArrayDeque<PeriodinTunniste> jono;
+    /**Käynnissä olevat {@code WebEnginekohtaiset} lataukset.
+     */
+    private final List<PeriodinLataus> lataukset = new ArrayList<>();
+    /**Kertoo, kuinka monen periodin sivu on parhaillaan latautumassa.
+     */
+    private int keskenerainen;
+    /**Kertoo, jäsennetäänkö sivut taustasäikeessä.
+     */
+    private final boolean taustajasennys;
+    /**Taustasäie, jossa sivut jäsennetään taustajäsennystilassa. Se luodaan ensimmäisen 
+     * jäsennyksen yhteydessä ja lopetetaan, kun lataus valmistuu tai keskeytyy.
+     */
+    private ExecutorService taustasaie;
+    /**Kertoo, kuinka monen periodin sivu odottaa jäsentämistä tai on jäsennettävänä.
+     */
+    private int jasennettavana;
+    /**Kasvaa jokaisen latauksen alussa ja keskeytyksessä, jotta keskeytetyn latauksen 
+     * myöhästyneet jäsennystulokset voidaan jättää huomiotta.
+     */
+    private int latauskerta;
+
+    /**Luo uuden {@code WebEngineLataajan}, joka lataa periodit yksi kerrallaan.
+     */
+    public WebEngineLataaja() {
+        this(1);
+    }
+
+    /**Luo uuden {@code WebEngineLataajan}, joka lataa enintään annetun määrän periodeja 
+     * samanaikaisesti.
+     * 
+     * @param rinnakkaisetLataukset samanaikaisesti ladattavien periodien enimmäismäärä. 
+     *        Arvolla 1 periodit ladataan yksi kerrallaan kirjautumiseen käytetyllä 
+     *        {@code WebEnginellä}.
+     * @throws java.lang.IllegalArgumentException jos {@code rinnakkaisetLataukset} on 
+     *         pienempi kuin 1
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public WebEngineLataaja(int rinnakkaisetLataukset) {
+        this(rinnakkaisetLataukset, false);
+    }
+
+    /**Luo uuden {@code WebEngineLataajan}.
+     * 
+     * @param rinnakkaisetLataukset samanaikaisesti ladattavien periodien enimmäismäärä
+     * @param taustajasennys {@code true}, jos sivut jäsennetään taustasäikeessä, jolloin 
+     *        seuraavan sivun lataaminen alkaa edellisen jäsennyksen aikana
+     * @throws java.lang.IllegalArgumentException jos {@code rinnakkaisetLataukset} on 
+     *         pienempi kuin 1
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public WebEngineLataaja(int rinnakkaisetLataukset, boolean taustajasennys) {
+        if(rinnakkaisetLataukset < 1) {
+            throw new IllegalArgumentException("Rinnakkaisia latauksia on oltava vähintään yksi.");
+        }
+        this.rinnakkaisetLataukset = rinnakkaisetLataukset;
+        this.taustajasennys = taustajasennys;
+    }
 
     /**{@inheritDoc}
      * 
@@ -56,19 +178,23 @@ public class WebEngineLataaja extends KurssitarjottimenLataaja {
     public void lataaPeriodienTunnisteet(Object[] data) {
         moottori = (WebEngine) data[0];
         
-        try {
-            perusOsoite = perusOsoite(moottori.getLocation());
-        } catch(LataajaPoikkeus poikkeus) {
-            lahetaVirhe(poikkeus);
+        perusOsoite = Wilma.perusOsoite(moottori.getLocation());
+        if(perusOsoite == null) {
+            lahetaVirhe(new LataajaPoikkeus("WebEnginellä ei ole kirjauduttu Wilmaan. Osoite: " + moottori.getLocation()));
             return;
         }
         
         kuuntelija = (tarkkailtava, vanhaArvo, uusiArvo) -> {
             switch (uusiArvo) {
                 case SUCCEEDED:
+                    if(taustajasennys) {
+                        moottori.getLoadWorker().stateProperty().removeListener(kuuntelija);
+                        jasennaPeriodienTunnisteet(sivunLahdekoodi(moottori));
+                        return;
+                    }
                     try {
-                        luePeriodinTunnisteet(moottori.getDocument().getElementById("own-schools"));
-                        luePeriodinTunnisteet(moottori.getDocument().getElementById("ext-schools"));
+                        luePeriodinTunnisteet(moottori.getDocument().getElementById(Wilma.OMAT_KOULUT));
+                        luePeriodinTunnisteet(moottori.getDocument().getElementById(Wilma.MUUT_KOULUT));
                     } catch(Throwable t) {
                         lahetaVirhe(t);
                         moottori.getLoadWorker().stateProperty().removeListener(kuuntelija);
@@ -92,69 +218,155 @@ public class WebEngineLataaja extends KurssitarjottimenLataaja {
         moottori.load(perusOsoite + "selection/view?");
     }
 
+    /**{@inheritDoc}
+     * <p>
+     * Periodien sivut ladataan enintään konstruktorissa annetulla määrällä {@code WebEngineja} 
+     * samanaikaisesti. Kun {@code WebEngine} on ladannut periodin, se aloittaa seuraavan 
+     * jonossa olevan periodin lataamisen. Jos jonkin periodin lataus epäonnistuu, 
+     * muut lataukset keskeytetään ja virhe lähetetään kyselijälle.
+     */
     @Override
     public void lataaKurssitarjotin(List<PeriodinTunniste> periodit) {
-        kuuntelija = (tarkkailtava, vanhaArvo, uusiArvo) -> {switch (uusiArvo) {
-                case SUCCEEDED:
-                    try {
-                        luePeriodi(moottori.getDocument());
-                    } catch(Throwable t) {
-                        lahetaVirhe(t);
-                        moottori.getLoadWorker().stateProperty().removeListener(kuuntelija);
-                        return;
-                    }
-                    if(!periodit.isEmpty()) {
-                        nykyinenPeriodi = periodit.remove(0);
-                        moottori.load(perusOsoite + "selection/" + linkit.get(nykyinenPeriodi));
-                    } else {
-                        moottori.getLoadWorker().stateProperty().removeListener(kuuntelija);
-                        lahetaKurssitarjotin();
-                    }
-                    break;
-                case FAILED:
-                    lahetaVirhe(moottori.getLoadWorker().getException());
-                    moottori.getLoadWorker().stateProperty().removeListener(kuuntelija);
-                    break;
-                case CANCELLED:
-                    if(vanhaArvo == Worker.State.SUCCEEDED) {
-                        break;
-                    }
-                    lahetaVirhe(new LataajaPoikkeus("Lataus keskeytettiin."));
-                    moottori.getLoadWorker().stateProperty().removeListener(kuuntelija);
-                    break;
-            }
-        };
-        moottori.getLoadWorker().stateProperty().addListener(kuuntelija);
+        jono = new ArrayDeque<>(periodit);
+        keskenerainen = 0;
+        jasennettavana = 0;
+        latauskerta++;
+        if(jono.isEmpty()) {
+            lahetaKurssitarjotin();
+            return;
+        }
         
-        if(!periodit.isEmpty()) {
-            nykyinenPeriodi = periodit.remove(0);
-            moottori.load(perusOsoite + "selection/" + linkit.get(nykyinenPeriodi));
+        int moottoreita = Math.min(rinnakkaisetLataukset, jono.size());
+        while(apumoottorit.size() < moottoreita - 1) {
+            apumoottorit.add(new WebEngine());
+        }
+        for(int i = 0; i < moottoreita; i++) {
+            PeriodinLataus lataus = new PeriodinLataus(i == 0 ? moottori : apumoottorit.get(i - 1));
+            lataukset.add(lataus);
+        }
+        for(PeriodinLataus lataus : new ArrayList<>(lataukset)) {
+            lataus.lataaSeuraava();
         }
     }
     
-    /**Palauttaa Wilman opiskelijan etusivun URL-osoitteen.
-     * <p>
-     * Jos käyttäjä on surffannut sivulla ennen periodien lataus -painikkeen painamista, 
-     * etusivun osoite saadaan myöhempää käyttöä varten metodin avulla.
+    /**Keskeyttää kaikki käynnissä olevat periodien lataukset ja lähettää virheen kyselijälle.
      * 
-     * @param URL {@code WebEnginen} nykyisen sivun osoite
-     * @return opiskelijan etusivun osoite
-     * @throws kva.logiikka.lataus.KurssitarjottimenLataaja.LataajaPoikkeus jos WebEnginellä 
-     *         ei ole kirjauduttu Wilmaan
-     */
-    private String perusOsoite(String URL) throws LataajaPoikkeus {
-        int kauttaviivaLaskuri = 0;
-        int merkkiLaskuri = 0;
-        for(char c : moottori.getLocation().toCharArray()) {
-            merkkiLaskuri++;
-            if(c == '/') {
-                kauttaviivaLaskuri++;
-                if(kauttaviivaLaskuri >= 4) {
-                    return moottori.getLocation().substring(0, merkkiLaskuri);
+     * @param virhe lataamisen keskeyttänyt virhe
+     */
+    private void keskeytaLataukset(Throwable virhe) {
+        List<PeriodinLataus> keskeytettavat = new ArrayList<>(lataukset);
+        lataukset.clear();
+        jono.clear();
+        for(PeriodinLataus lataus : keskeytettavat) {
+            lataus.lopeta();
+            lataus.kone.getLoadWorker().cancel();
+        }
+        latauskerta++;
+        jasennettavana = 0;
+        lopetaTaustasaie();
+        lahetaVirhe(virhe);
+    }
+    
+    /**Lähettää {@code Kurssitarjottimen} kyselijälle, jos kaikki periodit on ladattu 
+     * ja jäsennetty.
+     */
+    private void tarkistaValmistuminen() {
+        if(lataukset.isEmpty() && keskenerainen == 0 && jasennettavana == 0) {
+            lopetaTaustasaie();
+            lahetaKurssitarjotin();
+        }
+    }
+    
+    /**Palauttaa {@code WebEnginen} nykyisen sivun HTML-lähdekoodin.
+     * 
+     * @param kone {@code WebEngine}, jonka sivu on latautunut
+     * @return sivun lähdekoodi
+     */
+    private static String sivunLahdekoodi(WebEngine kone) {
+        return (String) kone.executeScript("document.documentElement.outerHTML");
+    }
+    
+    /**Palauttaa taustasäikeen, jossa sivut jäsennetään, ja luo sen tarvittaessa.
+     */
+    private ExecutorService taustasaie() {
+        if(taustasaie == null) {
+            taustasaie = Executors.newSingleThreadExecutor((tehtava) -> {
+                Thread th = new Thread(tehtava);
+                th.setDaemon(true);
+                return th;
+            });
+        }
+        return taustasaie;
+    }
+    
+    /**Lopettaa taustasäikeen, jos se on luotu. Jonossa olevia jäsennyksiä ei enää 
+     * suoriteta, sillä niiden tulokset jätettäisiin joka tapauksessa huomiotta.
+     */
+    private void lopetaTaustasaie() {
+        if(taustasaie != null) {
+            taustasaie.shutdownNow();
+            taustasaie = null;
+        }
+    }
+    
+    /**Jäsentää "selection/view?"-sivun taustasäikeessä ja lähettää periodien tunnisteet 
+     * kyselijälle sovellussäikeessä.
+     * 
+     * @param sivu sivun HTML-lähdekoodi
+     */
+    private void jasennaPeriodienTunnisteet(String sivu) {
+        taustasaie().execute(() -> {
+            try {
+                Map<PeriodinTunniste, String> luetut = WilmaJasennin.jasenna(sivu, null).getPeriodienLinkit();
+                Platform.runLater(() -> {
+                    lopetaTaustasaie();
+                    luetut.forEach((tunniste, linkki) -> {
+                        linkit.put(tunniste, linkki);
+                        lisaaPeriodinTunniste(tunniste);
+                    });
+                    lahetaPeriodinTunnisteet();
+                });
+            } catch(Throwable t) {
+                Platform.runLater(() -> {
+                    lopetaTaustasaie();
+                    lahetaVirhe(t);
+                });
+            }
+        });
+    }
+    
+    /**Jäsentää periodin sivun taustasäikeessä ja lisää sen tiedot lataajalle sovellussäikeessä.
+     * 
+     * @param sivu periodin sivun HTML-lähdekoodi
+     * @param periodi periodi, jota sivu kuvaa
+     */
+    private void jasennaPeriodi(String sivu, PeriodinTunniste periodi) {
+        int kerta = latauskerta;
+        jasennettavana++;
+        taustasaie().execute(() -> {
+            WilmaJasennin jasennin;
+            try {
+                jasennin = WilmaJasennin.jasenna(sivu, periodi);
+                if(!jasennin.onTarjotin()) {
+                    throw new LataajaPoikkeus("Periodin " + periodi + " sivulta ei löytynyt kurssitarjotinta.");
                 }
+            } catch(Throwable t) {
+                Platform.runLater(() -> {
+                    if(kerta == latauskerta) {
+                        keskeytaLataukset(t);
+                    }
+                });
+                return;
             }
-        }
-        throw new LataajaPoikkeus("WebEnginellä ei ole kirjauduttu Wilmaan. Osoite: " + URL);
+            Platform.runLater(() -> {
+                if(kerta != latauskerta) {
+                    return;
+                }
+                jasennin.getPeriodi().lisaaLataajalle(this);
+                jasennettavana--;
+                tarkistaValmistuminen();
+            });
+        });
     }
     
     /**Lukee Wilmasta periodien tunnisteet ja lisää ne {@code KurssitarjottimenLataajalle}.
@@ -183,68 +395,107 @@ public class WebEngineLataaja extends KurssitarjottimenLataaja {
     
     /**Lukee tietyn periodin {@code Ryhmat} ja {@code Moduulit} sekä lisää ne {@code KurssitarjottimenLataajalle}.
      * <p>
-     * Metodia kutsutaan kutakin valittua periodia kuvaavalle dokumentille, jonka 
+     * Metodia kutsutaan kutakin valittua periodia kuvaavalle sivulle, jonka 
      * osoite on [opiskelijan etusivun osoite] + "selection/" + [periodikohtainen merkkijono].
+     * Sivun kurssitarjotin luetaan yhdellä {@link #TARJOTTIMEN_LUKU}-skriptin suorituksella, 
+     * jonka palauttama merkkijono puretaan Java-puolella.
      * 
-     * @param d periodia kuvaavan sivun lähdekoodin sisältävä HTML-dokumentti
+     * @param kone {@code WebEngine}, jossa periodin sivu on auki
+     * @param periodi periodi, jota sivu kuvaa
      */
-    private void luePeriodi(Document d) {
-        Element paalohko = d.getElementById("main-tray-parent");
-        Element tarjotinSailio = (Element) paalohko.getElementsByTagName("div").item(0);
-        Element taulukkoSailio = (Element) tarjotinSailio.getElementsByTagName("div").item(1);
-        Element tarjotin = (Element) taulukkoSailio.getElementsByTagName("ul").item(0);
-        
-        HashSet<String> kaytetytPalkkienNimet = new HashSet<>();
+    private void luePeriodi(WebEngine kone, PeriodinTunniste periodi) {
+        String tarjotin = (String) kone.executeScript(TARJOTTIMEN_LUKU);
+        LuettuPeriodi luettu = new LuettuPeriodi(periodi);
         
-        for(int i = 0; i < tarjotin.getElementsByTagName("li").getLength(); i = i + 2) {
-            Element palkkiSailio = (Element) tarjotin.getElementsByTagName("li").item(i);
-            Element otsikko = (Element) palkkiSailio.getElementsByTagName("span").item(0);
-            
-            String palkinNimi = otsikko.getTextContent().trim();
-            if(kaytetytPalkkienNimet.contains(palkinNimi)) {
-                palkinNimi = " " + palkinNimi;
+        PalkinTunniste palkki = null;
+        boolean ohitaPalkki = false;
+        int alku = 0;
+        while(alku < tarjotin.length()) {
+            int loppu = tarjotin.indexOf(TIETUEEN_EROTIN, alku);
+            if(loppu < 0) {
+                loppu = tarjotin.length();
             }
-            kaytetytPalkkienNimet.add(palkinNimi);
-            PalkinTunniste palkki = new PalkinTunniste(nykyinenPeriodi, palkinNimi, i);
+            String[] kentat = tarjotin.substring(alku, loppu).split(KENTAN_EROTIN, -1);
+            alku = loppu + 1;
             
-            Element ryhmienSailio = (Element) palkkiSailio.getElementsByTagName("li").item(0);
-            for(int a = 0; a < ryhmienSailio.getElementsByTagName("a").getLength(); a++) {
-                Element ryhma = (Element) ryhmienSailio.getElementsByTagName("a").item(a);
-                if(ryhma.getAttribute("title").contains("Tämä kurssi on jo suoritettu.")) {
+            if(kentat[0].equals("P")) {
+                palkki = luettu.lisaaPalkki(kentat[2], Integer.parseInt(kentat[1]));
+                ohitaPalkki = false;
+            } else if(!ohitaPalkki) {
+                ohitaPalkki = !luettu.lisaaRyhma(palkki, kentat[1], kentat[2], kentat[3]);
+            }
+        }
+        luettu.lisaaLataajalle(this);
+    }
+    
+    /**Yhden {@code WebEnginen} periodien lataus rinnakkaisessa latauksessa.
+     * <p>
+     * {@code PeriodinLataus} ottaa jonosta periodin kerrallaan, lataa sen sivun {@code WebEnginellään} 
+     * ja lukee sen, kunnes jono on tyhjä. Viimeisenä valmistuva {@code PeriodinLataus} 
+     * lähettää {@code Kurssitarjottimen} kyselijälle.
+     * 
+     * @author Väinö Viinikka
+     * @see kva.logiikka.lataus.WebEngineLataaja
+     * @since Kurssivalinta-avustin 1.1
+     */
+    private class PeriodinLataus implements ChangeListener<Worker.State> {
+        
+        private final WebEngine kone;
+        private PeriodinTunniste periodi;
+        
+        private PeriodinLataus(WebEngine kone) {
+            this.kone = kone;
+            kone.getLoadWorker().stateProperty().addListener(this);
+        }
+        
+        /**Aloittaa jonon seuraavan periodin lataamisen.
+         */
+        private void lataaSeuraava() {
+            periodi = jono.poll();
+            keskenerainen++;
+            kone.load(perusOsoite + "selection/" + linkit.get(periodi));
+        }
+        
+        /**Lopettaa {@code WebEnginen} tilan kuuntelun.
+         */
+        private void lopeta() {
+            kone.getLoadWorker().stateProperty().removeListener(this);
+        }
+
+        @Override
+        public void changed(ObservableValue<? extends Worker.State> tarkkailtava, Worker.State vanhaArvo, Worker.State uusiArvo) {
+            switch (uusiArvo) {
+                case SUCCEEDED:
+                    keskenerainen--;
+                    try {
+                        if(taustajasennys) {
+                            jasennaPeriodi(sivunLahdekoodi(kone), periodi);
+                        } else {
+                            luePeriodi(kone, periodi);
+                        }
+                    } catch(Throwable t) {
+                        keskeytaLataukset(t);
+                        return;
+                    }
+                    if(!jono.isEmpty()) {
+                        lataaSeuraava();
+                    } else {
+                        lopeta();
+                        lataukset.remove(this);
+                        tarkistaValmistuminen();
+                    }
                     break;
-                }
-                String ryhmakoodi = ryhma.getTextContent();
-                if(ryhmakoodi.split("[.]").length != 2) {
+                case FAILED:
+                    keskenerainen--;
+                    keskeytaLataukset(kone.getLoadWorker().getException());
                     break;
-                }
-                if(!lisaaSijainti(ryhmakoodi, palkki)) {
-                    LuotavaRyhma uusiRyhma = new LuotavaRyhma(ryhmakoodi);
-                    uusiRyhma.lisaaSijainti(palkki);
-                    lisaaRyhma(uusiRyhma);
-                    
-                    String kurssikoodi = ryhmakoodi.split("[.]")[0];
-                    if(!onModuulia(kurssikoodi)) {
-                        Moduuli.Tyyppi uusiTyyppi;
-                        switch(ryhma.getAttribute("class")) {
-                            case " kB123A25D_10026-off":
-                            case " kB123A25D_10024-off":
-                            case " kB123A25D_10024-off disa":
-                                uusiTyyppi = Moduuli.Tyyppi.PAKOLLINEN;
-                                break;
-                            case " kB123A25D_10027-off":
-                            case " kB123A25D_10023-off":
-                            case " kB123A25D_10023-off disa":
-                                uusiTyyppi = Moduuli.Tyyppi.VALTAKUNNALLINEN_SYVENTAVA;
-                                break;
-                            case " kB123A25D_159-off":
-                            case " kB123A25D_10025-off":
-                            case " kB123A25D_10025-off disa":
-                            default:
-                                uusiTyyppi = Moduuli.Tyyppi.SOVELTAVA;
-                        }
-                        lisaaModuuli(new Moduuli(kurssikoodi, uusiTyyppi));
+                case CANCELLED:
+                    if(vanhaArvo == Worker.State.SUCCEEDED) {
+                        break;
                     }
-                }
+                    keskenerainen--;
+                    keskeytaLataukset(new LataajaPoikkeus("Lataus keskeytettiin."));
+                    break;
             }
         }
     }
@@ -0,0 +1,106 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka.lataus;
+
+import kva.logiikka.Moduuli;
+
+/**Wilman sivujen rakenteeseen liittyvät apumetodit, joita Wilmasta lataavat
+ * {@code KurssitarjottimenLataajat} käyttävät.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.lataus.WebEngineLataaja
+ * @see kva.logiikka.lataus.HttpLataaja
+ * @since Kurssivalinta-avustin 1.1
+ */
+final class Wilma {
+
+    /**Ryhmälinkin title-attribuutin osa, joka kertoo kurssin olevan jo suoritettu.
+     */
+    static final String SUORITETTU = "Tämä kurssi on jo suoritettu.";
+
+    /**Kurssivalintasivun elementti, joka sisältää oman oppilaitoksen periodien linkit.
+     */
+    static final String OMAT_KOULUT = "own-schools";
+    /**Kurssivalintasivun elementti, joka sisältää muiden oppilaitosten periodien linkit.
+     */
+    static final String MUUT_KOULUT = "ext-schools";
+    /**Periodin sivun elementti, joka sisältää kurssitarjottimen.
+     */
+    static final String TARJOTIN = "main-tray-parent";
+
+    private Wilma() {
+    }
+
+    /**Palauttaa Wilman opiskelijan etusivun URL-osoitteen.
+     * <p>
+     * Jos käyttäjä on surffannut sivulla ennen periodien lataus -painikkeen painamista,
+     * etusivun osoite saadaan myöhempää käyttöä varten metodin avulla.
+     *
+     * @param URL Wilman sivun osoite
+     * @return opiskelijan etusivun osoite, tai {@code null}, jos osoite ei ole
+     *         kirjautuneen käyttäjän sivu
+     */
+    static String perusOsoite(String URL) {
+        if(URL == null) {
+            return null;
+        }
+        int kauttaviivaLaskuri = 0;
+        for(int i = 0; i < URL.length(); i++) {
+            if(URL.charAt(i) == '/') {
+                kauttaviivaLaskuri++;
+                if(kauttaviivaLaskuri >= 4) {
+                    return URL.substring(0, i + 1);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**Kertoo, onko ryhmälinkin teksti kelvollinen ryhmäkoodi, ts. muotoa
+     * "[merkkijono].[merkkijono]".
+     *
+     * @param ryhmakoodi tutkittava teksti
+     * @return {@code true}, jos teksti on ryhmäkoodi
+     */
+    static boolean onRyhmakoodi(String ryhmakoodi) {
+        return LuotavaRyhma.onRyhmakoodi(ryhmakoodi);
+    }
+
+    /**Päättelee {@code Moduulin} tyypin ryhmälinkin class-attribuutista.
+     *
+     * @param luokka ryhmälinkin class-attribuutin arvo
+     * @return luokkaa vastaava {@code Moduulin Tyyppi}. Tuntemattomat luokat tulkitaan
+     *         soveltaviksi kursseiksi.
+     */
+    static Moduuli.Tyyppi moduulinTyyppi(String luokka) {
+        switch(luokka) {
+            case " kB123A25D_10026-off":
+            case " kB123A25D_10024-off":
+            case " kB123A25D_10024-off disa":
+                return Moduuli.Tyyppi.PAKOLLINEN;
+            case " kB123A25D_10027-off":
+            case " kB123A25D_10023-off":
+            case " kB123A25D_10023-off disa":
+                return Moduuli.Tyyppi.VALTAKUNNALLINEN_SYVENTAVA;
+            case " kB123A25D_159-off":
+            case " kB123A25D_10025-off":
+            case " kB123A25D_10025-off disa":
+            default:
+                return Moduuli.Tyyppi.SOVELTAVA;
+        }
+    }
+}
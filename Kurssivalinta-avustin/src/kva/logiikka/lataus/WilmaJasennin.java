@@ -0,0 +1,426 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka.lataus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import kva.logiikka.Moduuli;
+import kva.logiikka.PalkinTunniste;
+import kva.logiikka.PeriodinTunniste;
+
+/**Lukee Wilman kurssivalintasivujen rakenteen HTML-elementtien alku- ja loppumerkinnöistä
+ * sekä tekstistä yhdellä läpikäynnillä ilman DOM-puuta.
+ * <p>
+ * {@code WilmaJasennin} tunnistaa saman rakenteen, jonka {@link kva.logiikka.lataus.WebEngineLataaja}
+ * lukee DOM-puusta: "selection/view?"-sivun elementtien "own-schools" ja "ext-schools"
+ * h4-otsikot ja ul-listojen periodilinkit, sekä periodin sivun elementin "main-tray-parent"
+ * palkit ja niiden ryhmälinkit. Sivu luetaan yhdellä läpikäynnillä {@link kva.logiikka.lataus.HtmlTokenisoija}lla
+ * joko {@code CharSequencesta} metodilla {@link #jasenna(java.lang.CharSequence, kva.logiikka.PeriodinTunniste)}
+ * tai {@code InputStreamista} metodilla {@link #jasenna(java.io.InputStream, java.nio.charset.Charset, kva.logiikka.PeriodinTunniste)}.
+ * <p>
+ * Jäsennin ei tarvitse {@code WebEngineä} eikä ole sidottu JavaFX:n sovellussäikeeseen, 
+ * joten sillä voi lukea esimerkiksi tallennettuja Wilman sivuja tai ladata sivuja 
+ * taustasäikeessä.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.lataus.HttpLataaja
+ * @see kva.logiikka.lataus.LuettuPeriodi
+ * @since Kurssivalinta-avustin 1.1
+ */
+public final class WilmaJasennin {
+
+    private final LuettuPeriodi tulos;
+    private final LinkedHashMap<PeriodinTunniste, String> omatLinkit = new LinkedHashMap<>();
+    private final LinkedHashMap<PeriodinTunniste, String> muutLinkit = new LinkedHashMap<>();
+    /**Avoinna olevien elementtien nimet uloimmasta sisimpään.
+     */
+    private final ArrayList<String> pino = new ArrayList<>();
+
+    //Periodien linkkien lukemisen tila. Syvyys -1 tarkoittaa, ettei elementti ole auki.
+    private int koulutSyvyys = -1;
+    private LinkedHashMap<PeriodinTunniste, String> koulujenLinkit;
+    private final List<String> oppilaitokset = new ArrayList<>();
+    private int h4Syvyys = -1;
+    private final StringBuilder h4Teksti = new StringBuilder();
+    private int ulLaskuri;
+    private int ulSyvyys = -1;
+    private String ulOppilaitos;
+    private int liSyvyys = -1;
+    private boolean liLinkkiLuettu;
+    private int linkkiSyvyys = -1;
+    private String linkkiOsoite;
+    private final StringBuilder linkkiTeksti = new StringBuilder();
+
+    //Kurssitarjottimen lukemisen tila.
+    private boolean paaLoydetty = false;
+    private int paaSyvyys = -1;
+    private boolean sailioLoydetty = false;
+    private int sailioSyvyys = -1;
+    private int divLaskuri;
+    private boolean taulukkoLoydetty = false;
+    private int taulukkoSyvyys = -1;
+    private boolean tarjotinLoydetty = false;
+    private int tarjotinSyvyys = -1;
+    private int liLaskuri;
+    private int palkkiSyvyys = -1;
+    private int palkinJarjestys;
+    private boolean otsikkoLuettu;
+    private int otsikkoSyvyys = -1;
+    private final StringBuilder otsikkoTeksti = new StringBuilder();
+    private boolean ryhmatLuettu;
+    private int ryhmatSyvyys = -1;
+    private int ryhmaSyvyys = -1;
+    private String ryhmanLuokka;
+    private String ryhmanOtsikko;
+    private final StringBuilder ryhmaTeksti = new StringBuilder();
+    /**Palkin ryhmälinkit muodossa {ryhmäkoodi, class, title}. Ne lisätään vasta palkin
+     * lopussa, koska palkin nimi voi tulla sivulla vasta niiden jälkeen.
+     */
+    private final List<String[]> palkinRyhmat = new ArrayList<>();
+
+    /**Luo uuden {@code WilmaJasentimen}.
+     *
+     * @param periodi luettavan periodin tunniste, tai {@code null}, jos sivulta luetaan
+     *        vain periodien linkit
+     */
+    WilmaJasennin(PeriodinTunniste periodi) {
+        this.tulos = periodi == null ? null : new LuettuPeriodi(periodi);
+    }
+
+    /**Jäsentää annetun HTML-sivun.
+     *
+     * @param sivu luettava HTML-lähdekoodi
+     * @param periodi luettavan periodin tunniste, tai {@code null}, jos sivulta luetaan
+     *        vain periodien linkit
+     * @return jäsennin, jolta luetut tiedot voidaan hakea
+     */
+    public static WilmaJasennin jasenna(CharSequence sivu, PeriodinTunniste periodi) {
+        WilmaJasennin jasennin = new WilmaJasennin(periodi);
+        try {
+            new HtmlTokenisoija(sivu).lue(jasennin);
+        } catch(IOException e) {
+            //CharSequencen lukeminen ei voi epäonnistua.
+            throw new IllegalStateException(e);
+        }
+        return jasennin;
+    }
+
+    /**Jäsentää HTML-sivun virrasta sitä mukaa, kuin virtaa luetaan.
+     * <p>
+     * Virtaa ei suljeta.
+     *
+     * @param sivu luettava HTML-lähdekoodi
+     * @param merkisto sivun merkistö
+     * @param periodi luettavan periodin tunniste, tai {@code null}, jos sivulta luetaan
+     *        vain periodien linkit
+     * @return jäsennin, jolta luetut tiedot voidaan hakea
+     * @throws java.io.IOException jos virran lukeminen epäonnistuu
+     */
+    public static WilmaJasennin jasenna(InputStream sivu, Charset merkisto, PeriodinTunniste periodi) throws IOException {
+        WilmaJasennin jasennin = new WilmaJasennin(periodi);
+        new HtmlTokenisoija(new InputStreamReader(sivu, merkisto)).lue(jasennin);
+        return jasennin;
+    }
+
+    /**Ilmoittaa elementin alkamisesta.
+     *
+     * @param tagi elementin nimi pienin kirjaimin
+     * @param id elementin id-attribuutti, tai {@code null}
+     * @param luokka elementin class-attribuutti, tai {@code null}
+     * @param otsikko elementin title-attribuutti, tai {@code null}
+     * @param linkki elementin href-attribuutti, tai {@code null}
+     */
+    void alkaa(String tagi, String id, String luokka, String otsikko, String linkki) {
+        if(tagi.equals("li")) {
+            //Uusi listan kohta sulkee saman listan edellisen kohdan, jos sitä ei ole suljettu.
+            int li = pino.lastIndexOf("li");
+            if(li >= 0 && li > Math.max(pino.lastIndexOf("ul"), pino.lastIndexOf("ol"))) {
+                loppuu("li");
+            }
+        }
+        pino.add(tagi);
+        int syvyys = pino.size();
+
+        if(id != null) {
+            if(koulutSyvyys < 0 && (Wilma.OMAT_KOULUT.equals(id) || Wilma.MUUT_KOULUT.equals(id))) {
+                koulutSyvyys = syvyys;
+                koulujenLinkit = Wilma.OMAT_KOULUT.equals(id) ? omatLinkit : muutLinkit;
+                oppilaitokset.clear();
+                ulLaskuri = 0;
+                return;
+            }
+            if(tulos != null && !paaLoydetty && Wilma.TARJOTIN.equals(id)) {
+                paaLoydetty = true;
+                paaSyvyys = syvyys;
+                return;
+            }
+        }
+
+        if(koulutSyvyys >= 0) {
+            alkaaKouluissa(tagi, syvyys, linkki);
+        }
+        if(paaSyvyys >= 0) {
+            alkaaTarjottimessa(tagi, syvyys, luokka, otsikko);
+        }
+    }
+
+    private void alkaaKouluissa(String tagi, int syvyys, String linkki) {
+        switch(tagi) {
+            case "h4":
+                if(h4Syvyys < 0) {
+                    h4Syvyys = syvyys;
+                    h4Teksti.setLength(0);
+                }
+                break;
+            case "ul":
+                int indeksi = ulLaskuri++;
+                if(ulSyvyys < 0 && indeksi < oppilaitokset.size()) {
+                    ulSyvyys = syvyys;
+                    ulOppilaitos = oppilaitokset.get(indeksi);
+                }
+                break;
+            case "li":
+                if(ulSyvyys >= 0 && liSyvyys < 0) {
+                    liSyvyys = syvyys;
+                    liLinkkiLuettu = false;
+                }
+                break;
+            case "a":
+                if(liSyvyys >= 0 && !liLinkkiLuettu && linkkiSyvyys < 0) {
+                    linkkiSyvyys = syvyys;
+                    liLinkkiLuettu = true;
+                    linkkiOsoite = linkki;
+                    linkkiTeksti.setLength(0);
+                }
+                break;
+        }
+    }
+
+    private void alkaaTarjottimessa(String tagi, int syvyys, String luokka, String otsikko) {
+        if(!sailioLoydetty) {
+            if(tagi.equals("div")) {
+                sailioLoydetty = true;
+                sailioSyvyys = syvyys;
+                divLaskuri = 0;
+            }
+            return;
+        }
+        if(!taulukkoLoydetty) {
+            if(sailioSyvyys >= 0 && tagi.equals("div") && divLaskuri++ == 1) {
+                taulukkoLoydetty = true;
+                taulukkoSyvyys = syvyys;
+            }
+            return;
+        }
+        if(!tarjotinLoydetty) {
+            if(taulukkoSyvyys >= 0 && tagi.equals("ul")) {
+                tarjotinLoydetty = true;
+                tarjotinSyvyys = syvyys;
+                liLaskuri = 0;
+            }
+            return;
+        }
+        if(tarjotinSyvyys < 0) {
+            return;
+        }
+        switch(tagi) {
+            case "li":
+                int indeksi = liLaskuri++;
+                if(palkkiSyvyys < 0) {
+                    if(indeksi % 2 == 0) {
+                        palkkiSyvyys = syvyys;
+                        palkinJarjestys = indeksi;
+                        otsikkoLuettu = false;
+                        otsikkoTeksti.setLength(0);
+                        ryhmatLuettu = false;
+                        palkinRyhmat.clear();
+                    }
+                } else if(!ryhmatLuettu) {
+                    ryhmatLuettu = true;
+                    ryhmatSyvyys = syvyys;
+                }
+                break;
+            case "span":
+                if(palkkiSyvyys >= 0 && !otsikkoLuettu) {
+                    otsikkoLuettu = true;
+                    otsikkoSyvyys = syvyys;
+                }
+                break;
+            case "a":
+                if(ryhmatSyvyys >= 0 && ryhmaSyvyys < 0) {
+                    ryhmaSyvyys = syvyys;
+                    ryhmanLuokka = luokka;
+                    ryhmanOtsikko = otsikko;
+                    ryhmaTeksti.setLength(0);
+                }
+                break;
+        }
+    }
+
+    /**Ilmoittaa elementin päättymisestä.
+     * <p>
+     * Samalla suljetaan kaikki elementin sisällä auki jääneet elementit. Jos elementti
+     * ei ole auki, ilmoitus jätetään huomiotta.
+     *
+     * @param tagi elementin nimi pienin kirjaimin
+     */
+    void loppuu(String tagi) {
+        int indeksi = pino.lastIndexOf(tagi);
+        if(indeksi < 0) {
+            return;
+        }
+        while(pino.size() > indeksi) {
+            sulje(pino.size());
+            pino.remove(pino.size() - 1);
+        }
+    }
+
+    /**Ilmoittaa elementtien välissä olevasta tekstistä.
+     *
+     * @param teksti teksti, josta HTML-entiteetit on jo purettu
+     */
+    void teksti(CharSequence teksti) {
+        if(h4Syvyys >= 0) {
+            h4Teksti.append(teksti);
+        }
+        if(linkkiSyvyys >= 0) {
+            linkkiTeksti.append(teksti);
+        }
+        if(otsikkoSyvyys >= 0) {
+            otsikkoTeksti.append(teksti);
+        }
+        if(ryhmaSyvyys >= 0) {
+            ryhmaTeksti.append(teksti);
+        }
+    }
+
+    /**Sulkee kaikki auki olevat elementit sivun lopussa.
+     */
+    void lopeta() {
+        while(!pino.isEmpty()) {
+            sulje(pino.size());
+            pino.remove(pino.size() - 1);
+        }
+    }
+
+    private void sulje(int syvyys) {
+        if(syvyys == ryhmaSyvyys) {
+            palkinRyhmat.add(new String[] {ryhmaTeksti.toString(), ryhmanLuokka, ryhmanOtsikko});
+            ryhmaSyvyys = -1;
+        }
+        if(syvyys == ryhmatSyvyys) {
+            ryhmatSyvyys = -1;
+        }
+        if(syvyys == otsikkoSyvyys) {
+            otsikkoSyvyys = -1;
+        }
+        if(syvyys == palkkiSyvyys) {
+            PalkinTunniste palkki = tulos.lisaaPalkki(otsikkoTeksti.toString(), palkinJarjestys);
+            for(String[] ryhma : palkinRyhmat) {
+                if(!tulos.lisaaRyhma(palkki, ryhma[0], ryhma[1], ryhma[2])) {
+                    break;
+                }
+            }
+            palkkiSyvyys = -1;
+        }
+        if(syvyys == tarjotinSyvyys) {
+            tarjotinSyvyys = -1;
+        }
+        if(syvyys == taulukkoSyvyys) {
+            taulukkoSyvyys = -1;
+        }
+        if(syvyys == sailioSyvyys) {
+            sailioSyvyys = -1;
+        }
+        if(syvyys == paaSyvyys) {
+            paaSyvyys = -1;
+        }
+
+        if(syvyys == linkkiSyvyys) {
+            PeriodinTunniste tunniste = new PeriodinTunniste(ulOppilaitos, linkkiTeksti.toString().trim());
+            koulujenLinkit.put(tunniste, linkkiOsoite == null ? "" : linkkiOsoite);
+            linkkiSyvyys = -1;
+        }
+        if(syvyys == liSyvyys) {
+            liSyvyys = -1;
+        }
+        if(syvyys == ulSyvyys) {
+            ulSyvyys = -1;
+        }
+        if(syvyys == h4Syvyys) {
+            oppilaitokset.add(h4Teksti.toString());
+            h4Syvyys = -1;
+        }
+        if(syvyys == koulutSyvyys) {
+            koulutSyvyys = -1;
+        }
+    }
+
+    /**Palauttaa sivulta luetut periodien linkit siinä järjestyksessä, jossa {@code WebEngineLataaja}
+     * ne lisää: ensin oman oppilaitoksen ja sitten muiden oppilaitosten periodit.
+     *
+     * @return periodien tunnisteet ja niiden sivujen suhteelliset osoitteet
+     */
+    public LinkedHashMap<PeriodinTunniste, String> getPeriodienLinkit() {
+        LinkedHashMap<PeriodinTunniste, String> linkit = new LinkedHashMap<>(omatLinkit);
+        muutLinkit.forEach((tunniste, linkki) -> linkit.putIfAbsent(tunniste, linkki));
+        return linkit;
+    }
+
+    /**Kertoo, löytyikö sivulta kurssitarjotin.
+     *
+     * @return {@code true}, jos sivulla oli kurssitarjottimen palkkilista
+     */
+    public boolean onTarjotin() {
+        return tarjotinLoydetty;
+    }
+
+    /**Palauttaa periodin sivulta luetut {@code LuotavatRyhmat} siinä järjestyksessä, 
+     * jossa ne esiintyvät sivulla.
+     *
+     * @return kokoelma {@code LuotavistaRyhmista}, tai tyhjä kokoelma, jos jäsentimelle 
+     *         ei annettu periodia
+     */
+    public Collection<LuotavaRyhma> getRyhmat() {
+        return tulos == null ? Collections.<LuotavaRyhma>emptyList() : Collections.unmodifiableCollection(tulos.getRyhmat());
+    }
+
+    /**Palauttaa periodin sivulta luetut {@code Moduulit} siinä järjestyksessä, jossa 
+     * ne esiintyvät sivulla.
+     *
+     * @return kokoelma {@code Moduuleista}, tai tyhjä kokoelma, jos jäsentimelle ei 
+     *         annettu periodia
+     */
+    public Collection<Moduuli> getModuulit() {
+        return tulos == null ? Collections.<Moduuli>emptyList() : Collections.unmodifiableCollection(tulos.getModuulit());
+    }
+
+    /**Palauttaa sivulta luetun periodin.
+     *
+     * @return luettu periodi, tai {@code null}, jos jäsentimelle ei annettu periodia
+     */
+    LuettuPeriodi getPeriodi() {
+        return tulos;
+    }
+}
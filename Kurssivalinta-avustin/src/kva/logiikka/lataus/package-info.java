@@ -22,7 +22,9 @@
  * luokille, jotka lataavat kurssitarjottimeen tulevat tiedot. Alaluokat vastaavat 
  * tietojen hakemisesta kukin omalla tavallaan: {@link kva.logiikka.lataus.WebEngineLataaja} 
  * lataa tiedot suoraan Wilmasta, kun taas testaamiseen tarkoitettu {@link kva.logiikka.lataus.TestiLataaja} 
- * lataa ne tekstitiedostosta.
+ * lataa ne tekstitiedostosta. {@link kva.logiikka.lataus.HttpLataaja} lataa samat Wilman 
+ * sivut kuin {@code WebEngineLataaja}, mutta suoraan HTTP-pyynnöillä. {@link kva.logiikka.lataus.TilannekuvaLataaja} puolestaan 
+ * lataa aiemmin tallennetun {@link kva.logiikka.lataus.Tilannekuva}n.
  * <p>
  * Pakkaus sisältää lataajaluokkien lisäksi tiedon säilytykseen tarkoitetun luokan 
  * {@link kva.logiikka.lataus.LuotavaRyhma}.
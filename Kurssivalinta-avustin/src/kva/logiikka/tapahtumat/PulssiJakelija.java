@@ -0,0 +1,200 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka.tapahtumat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import kva.logiikka.Ryhma;
+import kva.logiikka.tapahtumat.ValintaTapahtuma.TapahtumaTyyppi;
+
+/**Välittää {@code ValintaTapahtumat} käyttöliittymälle koottuina kerran JavaFX:n
+ * pulssia kohden.
+ * <p>
+ * {@code Ryhman ValintaKuuntelijoita} kutsutaan tavallisesti heti, kun valinta muuttuu.
+ * Käyttöliittymän kuuntelija kannattaa kuitenkin kääriä metodilla {@link #kokoava(kva.logiikka.tapahtumat.ValintaKuuntelija)},
+ * jolloin {@code PulssiJakelija} kerää sille tulevat tapahtumat jonoon ja välittää
+ * ne vasta seuraavan pulssin alussa ennen asettelua. Yhden {@code Ryhman} toistuvat
+ * tapahtumat yhdistetään lopputulokseksi: {@code Ryhman} oma valinta ja valinta
+ * muualta muuttuvat kumpikin vain vuorotellen, joten niistä välitetään vain viimeisin
+ * tapahtuma, ja parillinen määrä tapahtumia kumoaa toisensa. Yksi napsautus, joka poistaa
+ * useita päällekkäisiä valintoja, aiheuttaa siis vain yhden asettelun.
+ * <p>
+ * Sovelluslogiikan kuuntelijat voi edelleen lisätä {@code Ryhmille} sellaisinaan,
+ * jolloin niitä kutsutaan välittömästi.
+ * <p>
+ * {@code PulssiJakelija} toimii JavaFX-säikeessä. Muissa säikeissä syntyneet tapahtumat
+ * siirretään sinne metodilla {@link javafx.application.Platform#runLater(java.lang.Runnable)}.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.tapahtumat.ValintaKuuntelija
+ * @since Kurssivalinta-avustin 1.1
+ */
+public final class PulssiJakelija {
+
+    private ArrayList<Kooste> jono = new ArrayList<>();
+    private final AnimationTimer ajastin;
+    private boolean kaynnissa;
+
+    /**Luo uuden {@code PulssiJakelijan}.
+     */
+    public PulssiJakelija() {
+        ajastin = new AnimationTimer() {
+            @Override
+            public void handle(long aika) {
+                jaa();
+                if(jono.isEmpty()) {
+                    stop();
+                    kaynnissa = false;
+                }
+            }
+        };
+    }
+
+    /**Palauttaa {@code ValintaKuuntelijan}, joka välittää tapahtumat annetulle kuuntelijalle
+     * koottuina seuraavan pulssin yhteydessä.
+     * <p>
+     * Palautettu kuuntelija lisätään {@code Ryhmalle} alkuperäisen sijaan. Saman kokoavan
+     * kuuntelijan voi lisätä usealle {@code Ryhmalle}, sillä tapahtumat yhdistetään
+     * {@code Ryhmittain}.
+     *
+     * @param kohde kuuntelija, jolle kootut tapahtumat välitetään
+     * @return kokoava {@code ValintaKuuntelija}
+     */
+    public ValintaKuuntelija kokoava(ValintaKuuntelija kohde) {
+        return new Kokoava(kohde);
+    }
+
+    /**Välittää jonossa olevat tapahtumat heti odottamatta seuraavaa pulssia.
+     * <p>
+     * Jos kuuntelija aiheuttaa uusia tapahtumia, ne välitetään vasta seuraavalla kerralla.
+     */
+    public void jaa() {
+        if(jono.isEmpty()) {
+            return;
+        }
+        ArrayList<Kooste> jaettavat = jono;
+        jono = new ArrayList<>();
+        jaettavat.forEach((kooste) -> kooste.omistaja.kesken.remove(kooste.ryhma));
+        for(Kooste kooste : jaettavat) {
+            kooste.jaa();
+        }
+    }
+
+    /**Hylkää jonossa olevat tapahtumat ja pysäyttää ajastimen. Jakelijaa voi käyttää
+     * tämän jälkeenkin, jolloin ajastin käynnistyy uudelleen seuraavasta tapahtumasta.
+     * <p>
+     * Metodia kutsutaan, kun kokoavia kuuntelijoita käyttävä näkymä poistetaan.
+     */
+    public void pysayta() {
+        jono.forEach((kooste) -> kooste.omistaja.kesken.remove(kooste.ryhma));
+        jono = new ArrayList<>();
+        if(kaynnissa) {
+            ajastin.stop();
+            kaynnissa = false;
+        }
+    }
+
+    /**Kertoo, onko jonossa välittämättömiä tapahtumia.
+     *
+     * @return {@code true}, jos tapahtumia odottaa välittämistä
+     */
+    public boolean onJonossa() {
+        return !jono.isEmpty();
+    }
+
+    private void jonoon(Kokoava omistaja, ValintaTapahtuma tapahtuma) {
+        Kooste kooste = omistaja.kesken.get(tapahtuma.getKohde());
+        if(kooste == null) {
+            kooste = new Kooste(omistaja, tapahtuma.getKohde());
+            omistaja.kesken.put(tapahtuma.getKohde(), kooste);
+            jono.add(kooste);
+        }
+        kooste.lisaa(tapahtuma);
+        if(!kaynnissa) {
+            kaynnissa = true;
+            ajastin.start();
+        }
+    }
+
+    /**Kuuntelija, joka siirtää tapahtumat {@code PulssiJakelijan} jonoon.
+     */
+    private final class Kokoava implements ValintaKuuntelija {
+
+        private final ValintaKuuntelija kohde;
+        private final HashMap<Ryhma, Kooste> kesken = new HashMap<>();
+
+        private Kokoava(ValintaKuuntelija kohde) {
+            this.kohde = kohde;
+        }
+
+        @Override
+        public void tilaMuuttui(ValintaTapahtuma t) {
+            if(Platform.isFxApplicationThread()) {
+                jonoon(this, t);
+            } else {
+                Platform.runLater(() -> jonoon(this, t));
+            }
+        }
+    }
+
+    /**Yhden kuuntelijan yhteen {@code Ryhmaan} kohdistuvat tapahtumat yhdistettyinä.
+     */
+    private static final class Kooste {
+
+        private final Kokoava omistaja;
+        private final Ryhma ryhma;
+        private ValintaTapahtuma valinta;
+        private int valintoja;
+        private ValintaTapahtuma muualta;
+        private int muualtaValintoja;
+        private boolean muualtaViimeisin;
+
+        private Kooste(Kokoava omistaja, Ryhma ryhma) {
+            this.omistaja = omistaja;
+            this.ryhma = ryhma;
+        }
+
+        private void lisaa(ValintaTapahtuma tapahtuma) {
+            TapahtumaTyyppi tyyppi = tapahtuma.getTyyppi();
+            if(tyyppi == TapahtumaTyyppi.VALITTU || tyyppi == TapahtumaTyyppi.VALINTA_POISTETTU) {
+                valinta = tapahtuma;
+                valintoja++;
+                muualtaViimeisin = false;
+            } else {
+                muualta = tapahtuma;
+                muualtaValintoja++;
+                muualtaViimeisin = true;
+            }
+        }
+
+        private void jaa() {
+            boolean valinnat = valintoja % 2 == 1;
+            boolean muualtaValinnat = muualtaValintoja % 2 == 1;
+            if(valinnat && (!muualtaValinnat || muualtaViimeisin)) {
+                omistaja.kohde.tilaMuuttui(valinta);
+            }
+            if(muualtaValinnat) {
+                omistaja.kohde.tilaMuuttui(muualta);
+            }
+            if(valinnat && muualtaValinnat && !muualtaViimeisin) {
+                omistaja.kohde.tilaMuuttui(valinta);
+            }
+        }
+    }
+}
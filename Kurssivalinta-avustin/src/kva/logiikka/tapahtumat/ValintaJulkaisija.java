@@ -0,0 +1,320 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka.tapahtumat;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import javafx.application.Platform;
+
+/**Julkaisee {@code Kurssitarjottimen} valintojen muutokset {@link kva.logiikka.tapahtumat.ValintaTilaaja}-olioille.
+ * <p>
+ * Jokainen {@code Kurssitarjotin} sisältää yhden {@code ValintaJulkaisijan}, jonka saa
+ * metodilla {@link kva.logiikka.Kurssitarjotin#getJulkaisija()}. Se julkaisee jokaisen
+ * valintojen muutoksen yhtenä {@link kva.logiikka.tapahtumat.ValintaMuutos}-oliona,
+ * joten koko tarjottimen muutoksia voi seurata lisäämättä kuuntelijaa jokaiselle
+ * {@code Ryhmalle}.
+ * <p>
+ * Julkaisija toimii kuten {@code java.util.concurrent.Flow.Publisher}: jokaisella tilaajalla
+ * on oma rajallinen puskurinsa, ja muutokset välitetään tilaajalle sen omassa
+ * {@link java.util.concurrent.Executor}issa vain sen verran kuin tilaaja on pyytänyt.
+ * Hidas tilaaja ei siis hidasta valintoja. Kun puskuri täyttyy, toimitaan tilauksen
+ * {@link Ylivuoto}-käytännön mukaan. Muutokset välitetään aina julkaisujärjestyksessä.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.tapahtumat.ValintaTilaaja
+ * @since Kurssivalinta-avustin 1.1
+ */
+public final class ValintaJulkaisija {
+
+    /**Tilaajakohtaisen puskurin oletuskoko.
+     */
+    public static final int OLETUSPUSKURI = 256;
+
+    private final CopyOnWriteArrayList<Tilaussuhde> tilaukset = new CopyOnWriteArrayList<>();
+    private volatile boolean suljettu;
+
+    /**Tilaajan toiminta, kun sen puskuri on täynnä.
+     *
+     * @author Väinö Viinikka
+     * @see kva.logiikka.tapahtumat.ValintaJulkaisija
+     */
+    public enum Ylivuoto {
+
+        /**Puskurin vanhin muutos pudotetaan uuden tieltä. Tilaaja huomaa pudotetut
+         * muutokset {@link kva.logiikka.tapahtumat.ValintaMuutos#getJarjestysnumero()}-arvojen
+         * aukoista.
+         */
+        PUDOTA_VANHIN,
+
+        /**Julkaiseva säie odottaa, kunnes puskurissa on tilaa. JavaFX-säie ei kuitenkaan
+         * koskaan odota, vaan siinä toimitaan kuten {@link #PUDOTA_VANHIN}. Käytännössä
+         * odotetaan siis vain, kun valintoja muutetaan taustasäikeessä.
+         */
+        ODOTA;
+    }
+
+    /**Tilaajan ja julkaisijan välinen yhteys, jolla tilaaja ohjaa muutosten välittämistä.
+     * <p>
+     * Rajapinta vastaa {@code java.util.concurrent.Flow.Subscription}-rajapintaa.
+     *
+     * @author Väinö Viinikka
+     * @see kva.logiikka.tapahtumat.ValintaTilaaja#tilattu(kva.logiikka.tapahtumat.ValintaJulkaisija.Tilaus)
+     */
+    public interface Tilaus {
+
+        /**Pyytää julkaisijaa välittämään enintään {@code maara} muutosta lisää.
+         *
+         * @param maara pyydettyjen muutosten määrä. Jos se ei ole positiivinen, tilaus
+         *        päättyy virheeseen {@link java.lang.IllegalArgumentException}.
+         */
+        public void pyyda(long maara);
+
+        /**Peruu tilauksen. Puskuroituja muutoksia ei välitetä.
+         */
+        public void peru();
+    }
+
+    /**Tilaa muutokset oletusasetuksin: puskurin koko on {@value #OLETUSPUSKURI},
+     * ylivuodossa pudotetaan vanhin muutos, ja muutokset välitetään
+     * {@link java.util.concurrent.ForkJoinPool#commonPool()}issa.
+     *
+     * @param tilaaja muutosten tilaaja
+     */
+    public void tilaa(ValintaTilaaja tilaaja) {
+        tilaa(tilaaja, OLETUSPUSKURI, Ylivuoto.PUDOTA_VANHIN, ForkJoinPool.commonPool());
+    }
+
+    /**Tilaa muutokset.
+     * <p>
+     * Jos julkaisija on jo suljettu, tilaajalle ilmoitetaan heti tilauksen valmistumisesta.
+     *
+     * @param tilaaja muutosten tilaaja
+     * @param puskuri välittämättömien muutosten enimmäismäärä
+     * @param ylivuoto toiminta, kun puskuri on täynnä
+     * @param suorittaja {@code Executor}, jossa tilaajan metodeja kutsutaan
+     * @throws java.lang.IllegalArgumentException jos {@code puskuri} ei ole positiivinen
+     * @throws java.lang.NullPointerException jos jokin muu parametri on {@code null}
+     */
+    public void tilaa(ValintaTilaaja tilaaja, int puskuri, Ylivuoto ylivuoto, Executor suorittaja) {
+        if(puskuri <= 0) {
+            throw new IllegalArgumentException("Puskurin koon on oltava positiivinen.");
+        }
+        Tilaussuhde tilaus = new Tilaussuhde(Objects.requireNonNull(tilaaja), puskuri,
+                Objects.requireNonNull(ylivuoto), Objects.requireNonNull(suorittaja));
+        tilaukset.add(tilaus);
+        if(suljettu) {
+            tilaus.sulje();
+        }
+        tilaus.aloita();
+    }
+
+    /**Kertoo, onko julkaisijalla tilaajia. {@code Kurssitarjotin} kokoaa muutokset
+     * julkaistaviksi vain, jos tilaajia on.
+     *
+     * @return {@code true}, jos julkaisijalla on voimassa olevia tilauksia
+     */
+    public boolean onTilaajia() {
+        return !tilaukset.isEmpty();
+    }
+
+    /**Kertoo, onko julkaisija suljettu.
+     *
+     * @return {@code true}, jos {@link #sulje()} on kutsuttu
+     */
+    public boolean onSuljettu() {
+        return suljettu;
+    }
+
+    /**Julkaisee muutoksen kaikille tilaajille. {@code Kurssitarjotin} kutsuu metodia,
+     * kun valintojen muutos on valmis.
+     *
+     * @param muutos julkaistava muutos
+     * @throws java.lang.IllegalStateException jos julkaisija on suljettu
+     */
+    public void julkaise(ValintaMuutos muutos) {
+        if(suljettu) {
+            throw new IllegalStateException("Julkaisija on suljettu.");
+        }
+        for(Tilaussuhde tilaus : tilaukset) {
+            tilaus.lisaa(muutos);
+        }
+    }
+
+    /**Sulkee julkaisijan. Tilaajille välitetään vielä puskuroidut muutokset, minkä
+     * jälkeen niille ilmoitetaan valmistumisesta.
+     */
+    public void sulje() {
+        suljettu = true;
+        for(Tilaussuhde tilaus : tilaukset) {
+            tilaus.sulje();
+        }
+    }
+
+    /**Yhden tilaajan puskuri ja tila. Tilaajan metodeja kutsutaan vain {@link #run()}-metodista,
+     * jota ajetaan kerrallaan enintään yhdessä säikeessä.
+     */
+    private final class Tilaussuhde implements Tilaus, Runnable {
+
+        private final ValintaTilaaja tilaaja;
+        private final int koko;
+        private final Ylivuoto ylivuoto;
+        private final Executor suorittaja;
+        private final ArrayDeque<ValintaMuutos> puskuri = new ArrayDeque<>();
+        private long pyydetty;
+        private boolean aloitettu;
+        private boolean ajossa;
+        private boolean peruttu;
+        private boolean suljettu;
+        private Throwable virhe;
+
+        private Tilaussuhde(ValintaTilaaja tilaaja, int koko, Ylivuoto ylivuoto, Executor suorittaja) {
+            this.tilaaja = tilaaja;
+            this.koko = koko;
+            this.ylivuoto = ylivuoto;
+            this.suorittaja = suorittaja;
+        }
+
+        private synchronized void aloita() {
+            ajoita();
+        }
+
+        private synchronized void lisaa(ValintaMuutos muutos) {
+            if(peruttu) {
+                return;
+            }
+            while(puskuri.size() >= koko) {
+                if(ylivuoto == Ylivuoto.ODOTA && !Platform.isFxApplicationThread()) {
+                    try {
+                        wait();
+                    } catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    if(peruttu) {
+                        return;
+                    }
+                } else {
+                    puskuri.poll();
+                }
+            }
+            puskuri.add(muutos);
+            ajoita();
+        }
+
+        private synchronized void sulje() {
+            suljettu = true;
+            ajoita();
+        }
+
+        @Override
+        public synchronized void pyyda(long maara) {
+            if(maara <= 0) {
+                virhe = new IllegalArgumentException("Pyydettyjen muutosten määrän on oltava positiivinen: " + maara);
+            } else {
+                pyydetty = pyydetty + maara < 0 ? Long.MAX_VALUE : pyydetty + maara;
+            }
+            ajoita();
+        }
+
+        @Override
+        public synchronized void peru() {
+            lopeta();
+        }
+
+        /**Merkitsee tilauksen päättyneeksi ja herättää julkaisijan, joka odottaa tilaa puskuriin.
+         */
+        private void lopeta() {
+            peruttu = true;
+            puskuri.clear();
+            tilaukset.remove(this);
+            notifyAll();
+        }
+
+        /**Käynnistää välittämisen suorittajassa, jos välitettävää on eikä välitys ole jo käynnissä.
+         */
+        private void ajoita() {
+            if(ajossa || peruttu) {
+                return;
+            }
+            if(aloitettu && virhe == null && !suljettu && (pyydetty == 0 || puskuri.isEmpty())) {
+                return;
+            }
+            ajossa = true;
+            try {
+                suorittaja.execute(this);
+            } catch(RuntimeException e) {
+                ajossa = false;
+                lopeta();
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean ensimmainen;
+            synchronized(this) {
+                ensimmainen = !aloitettu;
+                aloitettu = true;
+            }
+            try {
+                if(ensimmainen) {
+                    tilaaja.tilattu(this);
+                }
+                while(true) {
+                    ValintaMuutos seuraava;
+                    Throwable annettu = null;
+                    synchronized(this) {
+                        if(peruttu) {
+                            ajossa = false;
+                            return;
+                        }
+                        if(virhe == null && pyydetty > 0 && !puskuri.isEmpty()) {
+                            seuraava = puskuri.poll();
+                            pyydetty--;
+                            notifyAll();
+                        } else if(virhe != null || (suljettu && puskuri.isEmpty())) {
+                            seuraava = null;
+                            annettu = virhe;
+                            lopeta();
+                            ajossa = false;
+                        } else {
+                            ajossa = false;
+                            return;
+                        }
+                    }
+                    if(seuraava != null) {
+                        tilaaja.seuraava(seuraava);
+                    } else if(annettu != null) {
+                        tilaaja.virhe(annettu);
+                        return;
+                    } else {
+                        tilaaja.valmis();
+                        return;
+                    }
+                }
+            } catch(RuntimeException e) {
+                synchronized(this) {
+                    lopeta();
+                    ajossa = false;
+                }
+                tilaaja.virhe(e);
+            }
+        }
+    }
+}
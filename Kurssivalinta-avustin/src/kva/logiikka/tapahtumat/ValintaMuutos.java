@@ -0,0 +1,105 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka.tapahtumat;
+
+import java.util.Collections;
+import java.util.List;
+import kva.logiikka.Kurssitarjotin;
+import kva.logiikka.Ryhma;
+import kva.logiikka.ValintaTila;
+
+/**Yksi {@code Kurssitarjottimen} valintojen muutos kokonaisuudessaan.
+ * <p>
+ * Muutos sisältää muutoksessa valitut ja valinnasta poistetut {@code Ryhmat}, mukaan
+ * lukien päällekkäisyyksien vuoksi automaattisesti poistetut valinnat, sekä valintojen
+ * {@link kva.logiikka.ValintaTila}n muutoksen jälkeen. Muutokset numeroidaan
+ * juoksevasti, joten tilaaja huomaa, jos muutoksia on jäänyt välistä, ja voi tällöin
+ * käyttää tilaa sellaisenaan.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.tapahtumat.ValintaJulkaisija
+ * @since Kurssivalinta-avustin 1.1
+ */
+public final class ValintaMuutos {
+
+    private final Kurssitarjotin tarjotin;
+    private final long jarjestysnumero;
+    private final List<Ryhma> valitut;
+    private final List<Ryhma> poistetut;
+    private final ValintaTila tila;
+
+    /**Luo uuden {@code ValintaMuutoksen}.
+     *
+     * @param tarjotin {@code Kurssitarjotin}, jonka valinnat muuttuivat
+     * @param jarjestysnumero muutoksen juokseva numero
+     * @param valitut muutoksessa valitut {@code Ryhmat}
+     * @param poistetut muutoksessa valinnasta poistetut {@code Ryhmat}
+     * @param tila valintojen tila muutoksen jälkeen
+     */
+    public ValintaMuutos(Kurssitarjotin tarjotin, long jarjestysnumero, List<Ryhma> valitut, List<Ryhma> poistetut, ValintaTila tila) {
+        this.tarjotin = tarjotin;
+        this.jarjestysnumero = jarjestysnumero;
+        this.valitut = Collections.unmodifiableList(valitut);
+        this.poistetut = Collections.unmodifiableList(poistetut);
+        this.tila = tila;
+    }
+
+    /**{@code Kurssitarjotin}, jonka valinnat muuttuivat.
+     *
+     * @return muuttunut {@code Kurssitarjotin}
+     */
+    public Kurssitarjotin getTarjotin() {
+        return tarjotin;
+    }
+
+    /**Palauttaa muutoksen juoksevan numeron. Ensimmäisen julkaistun muutoksen numero on 1.
+     *
+     * @return muutoksen numero
+     */
+    public long getJarjestysnumero() {
+        return jarjestysnumero;
+    }
+
+    /**Palauttaa muutoksessa valitut {@code Ryhmat}.
+     *
+     * @return muuttumaton lista valituista {@code Ryhmista}
+     */
+    public List<Ryhma> getValitut() {
+        return valitut;
+    }
+
+    /**Palauttaa muutoksessa valinnasta poistetut {@code Ryhmat}.
+     *
+     * @return muuttumaton lista valinnasta poistetuista {@code Ryhmista}
+     */
+    public List<Ryhma> getPoistetut() {
+        return poistetut;
+    }
+
+    /**Palauttaa valintojen tilan muutoksen jälkeen.
+     *
+     * @return {@code ValintaTila} muutoksen jälkeen
+     */
+    public ValintaTila getTila() {
+        return tila;
+    }
+
+    @Override
+    public String toString() {
+        return "ValintaMuutos{jarjestysnumero=" + jarjestysnumero + ", valitut=" + valitut + ", poistetut=" + poistetut + '}';
+    }
+}
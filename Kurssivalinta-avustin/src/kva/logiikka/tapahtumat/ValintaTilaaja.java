@@ -0,0 +1,54 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.logiikka.tapahtumat;
+
+/**Vastaanottaa {@link kva.logiikka.tapahtumat.ValintaJulkaisija}lta {@code Kurssitarjottimen}
+ * valintojen muutoksia.
+ * <p>
+ * Rajapinta vastaa {@code java.util.concurrent.Flow.Subscriber}-rajapintaa: tilaaja saa
+ * ensin {@link kva.logiikka.tapahtumat.ValintaJulkaisija.Tilaus}-olion, jolla se pyytää
+ * muutoksia sitä mukaa kuin ehtii käsitellä niitä. Saman tilaajan metodeja kutsutaan
+ * yksi kerrallaan ja muutosten julkaisujärjestyksessä, mutta ei JavaFX-säikeessä.
+ *
+ * @author Väinö Viinikka
+ * @see kva.logiikka.tapahtumat.ValintaJulkaisija
+ * @since Kurssivalinta-avustin 1.1
+ */
+public interface ValintaTilaaja {
+
+    /**Metodia kutsutaan kerran ennen muita metodeja, kun tilaus alkaa.
+     *
+     * @param tilaus tilaus, jolla muutoksia pyydetään tai tilaus perutaan
+     */
+    public void tilattu(ValintaJulkaisija.Tilaus tilaus);
+
+    /**Metodia kutsutaan jokaiselle pyydetylle muutokselle.
+     *
+     * @param muutos valintojen muutos
+     */
+    public void seuraava(ValintaMuutos muutos);
+
+    /**Metodia kutsutaan, jos tilaus päättyy virheeseen. Muita metodeja ei sen jälkeen kutsuta.
+     *
+     * @param virhe tilauksen päättänyt virhe
+     */
+    public void virhe(Throwable virhe);
+
+    /**Metodia kutsutaan, kun julkaisija on suljettu ja kaikki muutokset on välitetty.
+     */
+    public void valmis();
+}
@@ -18,6 +18,8 @@ package kva.ui;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.WeakHashMap;
+import javafx.beans.InvalidationListener;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableSet;
 import kva.logiikka.Moduuli;
@@ -69,6 +71,18 @@ public class Asetukset {
      */
     public final ObservableSet<String> piilotetutModuulit;
     
+    /**Metodin {@code pitaisiPiilottaaAineenPerusteella} päätökset {@code Moduuleittain}. 
+     * Tyhjennetään, kun jompikumpi aineiden kokoelmista muuttuu.*/
+    private final WeakHashMap<Moduuli, Boolean> paatokset = new WeakHashMap<>();
+    
+    /**{@code piilotetutAineet}-kokoelmasta käännetty automaatti, tai {@code null}, 
+     * jos kokoelma on muuttunut kääntämisen jälkeen.*/
+    private KoodiAutomaatti piilotetutAutomaatti;
+    
+    /**{@code epakiinnostavatAineet}-kokoelmasta käännetty automaatti, tai {@code null}, 
+     * jos kokoelma on muuttunut kääntämisen jälkeen.*/
+    private KoodiAutomaatti epakiinnostavatAutomaatti;
+    
     /**Luo uuden {@code Asetukset}-olion, johon ei vielä ole merkitty piilotettavia 
      * aineita tai kursseja.
      * 
@@ -77,6 +91,10 @@ public class Asetukset {
         piilotetutAineet = FXCollections.observableSet(new HashSet<>());
         epakiinnostavatAineet = FXCollections.observableSet(new HashSet<>());
         piilotetutModuulit = FXCollections.observableSet(new HashSet<>());
+        
+        InvalidationListener tyhjentaja = (o) -> tyhjennaPaatokset();
+        piilotetutAineet.addListener(tyhjentaja);
+        epakiinnostavatAineet.addListener(tyhjentaja);
     }
     
     /**Luo uuden {@code Asetukset}-olion, johon on lisätty valmiiksi piilotettavia 
@@ -108,24 +126,67 @@ public class Asetukset {
      * Moduuli piilotetaan, mikäli 1) sen kurssikoodi on {@code piilotetutModuulit}-listalla, 
      * 2) osa sen kurssikoodista on {@code piilotetutAineet}-listalla tai 3) se ei 
      * ole pakollinen ja osa sen kurssikoodista on {@code epakiinnostavatAineet}-listalla.
-     * 
+     *
      * @param moduuli {@code Moduuli}, josta halutaan selvittää, pitäisikö se piilottaa
      * @return {@code true}, jos {@code moduuli} on asetusten mukaan piilotettava.
+     * @see #pitaisiPiilottaaAineenPerusteella(kva.logiikka.Moduuli)
      */
     public boolean pitaisiPiilottaa(Moduuli moduuli) {
-        if(piilotetutModuulit.contains(moduuli.getKoodi())) {
-            return true;
+        return piilotetutModuulit.contains(moduuli.getKoodi()) 
+                || pitaisiPiilottaaAineenPerusteella(moduuli);
+    }
+    
+    /**Kertoo, pitäisikö annettu {@code Moduuli} piilottaa aineiden kokoelmien mukaan.
+     * <p>
+     * Toisin kuin {@link #pitaisiPiilottaa(kva.logiikka.Moduuli)}, metodi ei huomioi 
+     * {@code piilotetutModuulit}-listaa. Käyttöliittymä ei piilota valittuja {@code Ryhmia} 
+     * aineen perusteella, mutta piilottaa ne, jos niiden kurssikoodi on merkitty piilotettavaksi.
+     * <p>
+     * Päätös tallennetaan {@code Moduulikohtaisesti}, ja se lasketaan uudelleen vasta,
+     * kun jompikumpi aineiden kokoelmista muuttuu.
+     *
+     * @param moduuli {@code Moduuli}, josta halutaan selvittää, pitäisikö se piilottaa
+     * @return {@code true}, jos {@code moduuli} on piilotettava aineensa perusteella
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public boolean pitaisiPiilottaaAineenPerusteella(Moduuli moduuli) {
+        Boolean paatos = paatokset.get(moduuli);
+        if(paatos == null) {
+            paatos = paata(moduuli);
+            paatokset.put(moduuli, paatos);
+        }
+        return paatos;
+    }
+    
+    /**Selvittää, pitäisikö {@code Moduuli} piilottaa aineensa perusteella. Aineiden 
+     * kokoelmista käännetään tarvittaessa {@link kva.ui.KoodiAutomaatti}, jolloin 
+     * kurssikoodi käydään läpi vain kerran kokoelman koosta riippumatta.
+     */
+    private boolean paata(Moduuli moduuli) {
+        if(piilotetutAutomaatti == null) {
+            piilotetutAutomaatti = new KoodiAutomaatti(piilotetutAineet);
         }
-        if(piilotetutAineet.stream()
-                .anyMatch((koodi) -> moduuli.getKoodi().contains(koodi))) {
+        if(piilotetutAutomaatti.loytyy(moduuli.getKoodi())) {
             return true;
         }
         if(moduuli.getTyyppi() != Tyyppi.PAKOLLINEN) {
-            if(epakiinnostavatAineet.stream()
-                    .anyMatch((koodi) -> moduuli.getKoodi().contains(koodi))) {
+            if(epakiinnostavatAutomaatti == null) {
+                epakiinnostavatAutomaatti = new KoodiAutomaatti(epakiinnostavatAineet);
+            }
+            if(epakiinnostavatAutomaatti.loytyy(moduuli.getKoodi())) {
                 return true;
             }
         }
         return false;
     }
+    
+    /**Unohtaa tallennetut päätökset ja käännetyt automaatit. Kutsutaan ennen 
+     * aineiden kokoelmien muutoskuuntelijoita, joten ne saavat jo uusien asetusten 
+     * mukaiset päätökset.
+     */
+    private void tyhjennaPaatokset() {
+        paatokset.clear();
+        piilotetutAutomaatti = null;
+        epakiinnostavatAutomaatti = null;
+    }
 }
@@ -46,6 +46,9 @@ public class Kayttoliittyma {
     
     /**Sisältää käyttöliittymän välilehdet*/
     private TabPane valilehdet;
+    
+    /**Kurssitarjotin-välilehden nykyinen {@code Nakyma}, joka vapautetaan, kun se korvataan.*/
+    private Nakyma tarjotinValilehti;
 
     /**Luo uuden käyttöliittymän, joka käyttää parametrina annettua sovelluslogiikkaa.
      * <p>
@@ -78,6 +81,7 @@ public class Kayttoliittyma {
         AsetusNakyma asetusnakyma = new AsetusNakyma("Asetukset", this);
         //LatausNakyma valintanakyma = new TestiLatausNakyma("Kurssitarjotin", this);
         LatausNakyma valintanakyma = new WebEngineLatausNakyma("Kurssitarjotin", this);
+        tarjotinValilehti = valintanakyma;
         
         valilehdet = new TabPane(asetusnakyma.getValilehti(), valintanakyma.getValilehti());
         valilehdet.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
@@ -106,11 +110,17 @@ public class Kayttoliittyma {
     }
     
     /**Luo {@code Kayttoliittymalle KurssitarjotinNakyman} ja korvaa sillä {@code KurssitarjottimenValintaNakyman}. 
-     * 
+     * <p>
+     * Korvattu {@code Nakyma} vapautetaan, jotta sen kuuntelijat eivät pidä vanhaa 
+     * {@code Kurssitarjotinta} muistissa.
      */
     private void luoKurssitarjotinNakyma() {
         valilehdet.getTabs().removeIf((tab) -> tab.getText().equals("Kurssitarjotin"));
+        if(tarjotinValilehti != null) {
+            tarjotinValilehti.vapauta();
+        }
         KurssitarjotinNakyma tarjotinNakyma = new KurssitarjotinNakyma("Kurssitarjotin", this, logiikka.getTarjotin());
+        tarjotinValilehti = tarjotinNakyma;
         valilehdet.getTabs().add(tarjotinNakyma.getValilehti());
         valilehdet.getSelectionModel().select(tarjotinNakyma.getValilehti());
     }
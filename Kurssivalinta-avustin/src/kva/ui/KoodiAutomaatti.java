@@ -0,0 +1,135 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.ui;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**Aho–Corasick-automaatti, joka kertoo, sisältääkö kurssikoodi jonkin annetuista
+ * merkkijonoista.
+ * <p>
+ * Automaatti käännetään kerran merkkijonojen joukosta deterministiseksi
+ * tilasiirtotauluksi, jonka jälkeen jokainen haku käy kurssikoodin läpi kerran
+ * merkki kerrallaan. Haun kesto riippuu siis vain kurssikoodin pituudesta, ei
+ * merkkijonojen määrästä.
+ *
+ * @author Väinö Viinikka
+ * @see kva.ui.Asetukset#pitaisiPiilottaa(kva.logiikka.Moduuli)
+ * @since Kurssivalinta-avustin 1.1
+ */
+final class KoodiAutomaatti {
+
+    private final HashMap<Character, Integer> merkit = new HashMap<>();
+    private final int aakkosia;
+    private final int[] siirrot;
+    private final boolean[] hyvaksyvat;
+
+    /**Kääntää automaatin annetuista merkkijonoista.
+     *
+     * @param koodit merkkijonot, joita kurssikoodeista etsitään
+     */
+    KoodiAutomaatti(Collection<String> koodit) {
+        for(String koodi : koodit) {
+            for(int i = 0; i < koodi.length(); i++) {
+                merkit.putIfAbsent(koodi.charAt(i), merkit.size());
+            }
+        }
+        aakkosia = merkit.size();
+
+        ArrayList<int[]> lapset = new ArrayList<>();
+        ArrayList<Boolean> loppuu = new ArrayList<>();
+        lapset.add(uusiSolmu(aakkosia));
+        loppuu.add(false);
+        for(String koodi : koodit) {
+            int tila = 0;
+            for(int i = 0; i < koodi.length(); i++) {
+                int merkki = merkit.get(koodi.charAt(i));
+                if(lapset.get(tila)[merkki] < 0) {
+                    lapset.get(tila)[merkki] = lapset.size();
+                    lapset.add(uusiSolmu(aakkosia));
+                    loppuu.add(false);
+                }
+                tila = lapset.get(tila)[merkki];
+            }
+            loppuu.set(tila, true);
+        }
+
+        int tiloja = lapset.size();
+        siirrot = new int[tiloja * aakkosia];
+        hyvaksyvat = new boolean[tiloja];
+        int[] paluut = new int[tiloja];
+        for(int i = 0; i < tiloja; i++) {
+            hyvaksyvat[i] = loppuu.get(i);
+        }
+
+        ArrayDeque<Integer> jono = new ArrayDeque<>();
+        for(int merkki = 0; merkki < aakkosia; merkki++) {
+            int lapsi = lapset.get(0)[merkki];
+            if(lapsi < 0) {
+                siirrot[merkki] = 0;
+            } else {
+                siirrot[merkki] = lapsi;
+                paluut[lapsi] = 0;
+                hyvaksyvat[lapsi] |= hyvaksyvat[0];
+                jono.add(lapsi);
+            }
+        }
+        while(!jono.isEmpty()) {
+            int tila = jono.poll();
+            for(int merkki = 0; merkki < aakkosia; merkki++) {
+                int lapsi = lapset.get(tila)[merkki];
+                if(lapsi < 0) {
+                    siirrot[tila * aakkosia + merkki] = siirrot[paluut[tila] * aakkosia + merkki];
+                } else {
+                    siirrot[tila * aakkosia + merkki] = lapsi;
+                    paluut[lapsi] = siirrot[paluut[tila] * aakkosia + merkki];
+                    hyvaksyvat[lapsi] |= hyvaksyvat[paluut[lapsi]];
+                    jono.add(lapsi);
+                }
+            }
+        }
+    }
+
+    /**Kertoo, sisältääkö teksti jonkin automaatin merkkijonoista.
+     *
+     * @param teksti tutkittava kurssikoodi
+     * @return {@code true}, jos {@code teksti} sisältää jonkin merkkijonoista
+     */
+    boolean loytyy(String teksti) {
+        int tila = 0;
+        if(hyvaksyvat[tila]) {
+            return true;
+        }
+        for(int i = 0; i < teksti.length(); i++) {
+            Integer merkki = merkit.get(teksti.charAt(i));
+            tila = merkki == null ? 0 : siirrot[tila * aakkosia + merkki];
+            if(hyvaksyvat[tila]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] uusiSolmu(int aakkosia) {
+        int[] solmu = new int[aakkosia];
+        Arrays.fill(solmu, -1);
+        return solmu;
+    }
+}
@@ -16,16 +16,23 @@
  */
 package kva.ui;
 
+import java.util.ArrayList;
 import javafx.geometry.Insets;
 import javafx.scene.Node;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import kva.logiikka.Kurssitarjotin;
 import kva.logiikka.PalkinTunniste;
+import kva.logiikka.tapahtumat.PulssiJakelija;
+import kva.ui.tarjotinnakyma.NakyvyysPalvelu;
 import kva.ui.tarjotinnakyma.PalkkiEsitys;
 
 /**Toteuttaa {@code Nakyman}, jossa käyttäjä valitsee kurssit.
@@ -35,13 +42,28 @@ import kva.ui.tarjotinnakyma.PalkkiEsitys;
  * {@code getMahdollisetPalkit()}-metodin kuvaamassa järjestyksessä. Ne puolestaan 
  * sisältävät yksittäisiä {@link kva.logiikka.Ryhma}-olioita kuvaavat {@link kva.ui.tarjotinnakyma.ValintaNappi}-napit.
  * Lisäksi näkymä sisältää oppilaitoksen ja periodin vaihtumista kuvaavat otsikot.
+ * <p>
+ * Valintojen muutokset voi kumota näppäinyhdistelmällä Ctrl+Z ja tehdä uudelleen 
+ * yhdistelmällä Ctrl+Y tai Ctrl+Vaihto+Z. Valintojen muutokset välitetään 
+ * {@code PalkkiEsityksille} {@link kva.logiikka.tapahtumat.PulssiJakelija}n kautta, 
+ * joten näkymä asetellaan uudelleen vain kerran jokaista muutosta kohden. Asetusten 
+ * muutokset välitetään kaikille {@code PalkkiEsityksille} yhteisen 
+ * {@link kva.ui.tarjotinnakyma.NakyvyysPalvelu}n kautta, joka päivittää vain ne 
+ * {@code ValintaNapit}, joiden näkyvyys muuttuu.
  *
  * @author Väinö Viinikka
  * @since Kurssivalinta-avustin 1.0
  */
 public class KurssitarjotinNakyma extends Nakyma {
 
+    private static final KeyCombination KUMOA = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN);
+    private static final KeyCombination TEE_UUDELLEEN = new KeyCodeCombination(KeyCode.Y, KeyCombination.SHORTCUT_DOWN);
+    private static final KeyCombination TEE_UUDELLEEN_VAIHTO = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN);
+
     private final Kurssitarjotin tarjotin;
+    private final PulssiJakelija jakelija = new PulssiJakelija();
+    private final NakyvyysPalvelu nakyvyys;
+    private final ArrayList<PalkkiEsitys> esitykset = new ArrayList<>();
     
     /**Luo uuden kurssivalintanäkymän.
      * 
@@ -52,6 +74,7 @@ public class KurssitarjotinNakyma extends Nakyma {
     public KurssitarjotinNakyma(String otsikko, Kayttoliittyma kayttis, Kurssitarjotin tarjotin) {
         super(otsikko, kayttis);
         this.tarjotin = tarjotin;
+        this.nakyvyys = new NakyvyysPalvelu(kayttis.getAsetukset());
     }
 
     @Override
@@ -63,7 +86,7 @@ public class KurssitarjotinNakyma extends Nakyma {
         
         String oppilaitos = null;
         String periodi = null;
-        for(PalkinTunniste palkki : tarjotin.getMahdollisetPalkit()) {
+        for(PalkinTunniste palkki : tarjotin.getPalkkienNakyma()) {
             if(!palkki.getOppilaitos().equals(oppilaitos)) {
                 oppilaitos = palkki.getOppilaitos();
                 Label oppilaitosOtsikko = new Label(oppilaitos);
@@ -77,7 +100,8 @@ public class KurssitarjotinNakyma extends Nakyma {
                 kehikko.getChildren().add(periodiOtsikko);
             }
             
-            PalkkiEsitys esitys = new PalkkiEsitys(tarjotin, palkki, getKayttoliittyma().getAsetukset());
+            PalkkiEsitys esitys = new PalkkiEsitys(tarjotin, palkki, getKayttoliittyma().getAsetukset(), jakelija, nakyvyys);
+            esitykset.add(esitys);
             kehikko.getChildren().add(esitys.getEsitys());
         }
         
@@ -88,6 +112,26 @@ public class KurssitarjotinNakyma extends Nakyma {
         pohja.setVbarPolicy(ScrollPane.ScrollBarPolicy.AS_NEEDED);
         
         ylin.setCenter(pohja);
+        ylin.addEventHandler(KeyEvent.KEY_PRESSED, (tapahtuma) -> {
+            if(KUMOA.match(tapahtuma)) {
+                tarjotin.kumoa();
+                tapahtuma.consume();
+            } else if(TEE_UUDELLEEN.match(tapahtuma) || TEE_UUDELLEEN_VAIHTO.match(tapahtuma)) {
+                tarjotin.teeUudelleen();
+                tapahtuma.consume();
+            }
+        });
         return ylin;
     }
+
+    /**Vapauttaa {@code PalkkiEsitykset} ja {@code NakyvyysPalvelun} ja hylkää 
+     * välittämättömät valintojen muutokset.
+     */
+    @Override
+    public void vapauta() {
+        esitykset.forEach(PalkkiEsitys::vapauta);
+        esitykset.clear();
+        nakyvyys.vapauta();
+        jakelija.pysayta();
+    }
 }
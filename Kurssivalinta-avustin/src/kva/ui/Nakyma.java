@@ -90,6 +90,17 @@ public abstract class Nakyma {
         return valilehti.getContent();
     }
     
+    /**Vapauttaa {@code Nakyman} resurssit, kun se poistetaan käyttöliittymästä.
+     * <p>
+     * Alaluokan tulee poistaa metodissa kuuntelijat, jotka se on lisännyt {@code Nakymaa} 
+     * pitkäikäisemmille olioille, kuten {@link kva.ui.Asetukset}ille, jotta poistettu 
+     * {@code Nakyma} ei jää muistiin eikä reagoi enää muutoksiin. Oletustoteutus ei tee mitään.
+     * 
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public void vapauta() {
+    }
+    
     /**Vaihtaa {@code Nakyman} kuvaaman välilehden sisällön uuteen.
      * <p>
      * Metodia tulisi lähtökohtaisesti kutsua vain alaluokista.
@@ -32,14 +32,15 @@ import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebView;
 import kva.logiikka.PeriodinTunniste;
 
-/**Toteuttaa {@code Nakyman}, jossa {@code Kurssitarjotin} ladataan {@code WebEngineLataajan} 
- * avulla.
+/**Toteuttaa {@code Nakyman}, jossa {@code Kurssitarjotin} ladataan Wilmasta {@code WebEnginellä} 
+ * kirjautumalla.
  * <p>
  * Näkymässä käyttäjä pääsee aluksi syöttämään Wilma-palvelimensa osoitteen. Tämän 
  * jälkeen avautuu {@link javafx.scene.web.WebView}, jossa käyttäjä kirjautuu Wilmaan
  * tunnuksillaan ja sen jälkeen käskee napinpainalluksella {@code PeriodinTunnisteiden} 
  * latauksen. {@code WebView}'n {@link javafx.scene.web.WebEngine} annetaan 
- * {@link kva.logiikka.lataus.WebEngineLataaja}lle lataamista varten.
+ * {@link kva.logiikka.lataus.WebEngineLataaja}lle tai {@link kva.logiikka.lataus.HttpLataaja}lle 
+ * lataamista varten.
  * <p>
  * Kun {@code PeriodinTunnisteet} on ladattu, {@code LatausNakyma} huolehtii niiden 
  * valinnasta.
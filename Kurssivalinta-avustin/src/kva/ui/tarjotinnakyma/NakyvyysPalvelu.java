@@ -0,0 +1,262 @@
+/* Kurssivalinta-avustin – työkalu lukiolaisille helpottamaan kurssivalintojen tekoa
+ * Copyright (C) 2022 Väinö Viinikka
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package kva.ui.tarjotinnakyma;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import javafx.collections.SetChangeListener;
+import kva.logiikka.Moduuli;
+import kva.ui.Asetukset;
+
+/**Pitää kirjaa siitä, mitkä {@code Moduulit} {@link kva.ui.Asetukset} piilottavat,
+ * ja päivittää asetusten muuttuessa vain ne {@link kva.ui.tarjotinnakyma.ValintaNappi}t,
+ * joiden näkyvyys muuttuu.
+ * <p>
+ * Jokainen {@link kva.ui.tarjotinnakyma.PalkkiEsitys} rekisteröi {@code ValintaNappinsa}
+ * palvelulle, joka ryhmittelee ne {@code Moduulin} kurssikoodin mukaan ja kurssikoodit
+ * edelleen aineen tunnuksen, eli koodin alussa olevien kirjainten, mukaan. Kurssikoodin
+ * ja aineen perusteella piilotettujen {@code Moduulien} tiedot säilytetään kahdessa
+ * bittijoukossa. Kun asetuksiin lisätään tai niistä
+ * poistetaan aine, tarkistetaan vain ne {@code Moduulit}, joiden koodi voi sisältää
+ * aineen, ja kun lisätään tai poistetaan kurssi, tarkistetaan vain sen koodinen
+ * {@code Moduuli}. {@code ValintaNappeja} päivitetään vain niiden {@code Moduulien}
+ * osalta, joiden piilotus todella muuttui. Kunkin {@code PalkkiEsityksen}
+ * {@code ValintaNapit} pidetään myös omassa listassaan, joten esityksen poistaminen
+ * käy läpi vain sen omat {@code ValintaNapit}.
+ * <p>
+ * Aineen perusteella piilotettaessa valittuja {@code Ryhmia} ei piiloteta, mutta
+ * kurssikoodin perusteella piilotetaan myös valitut {@code Ryhmat}. Palvelua käytetään vain JavaFX:n sovellussäikeessä, ja kun sitä ei enää
+ * tarvita, sen kuuntelijat poistetaan {@code Asetuksista} metodilla {@link #vapauta()}.
+ *
+ * @author Väinö Viinikka
+ * @see kva.ui.Asetukset#pitaisiPiilottaa(kva.logiikka.Moduuli)
+ * @since Kurssivalinta-avustin 1.1
+ */
+public class NakyvyysPalvelu {
+
+    private final Asetukset asetukset;
+    private final HashMap<String, Moduulitieto> koodeittain = new HashMap<>();
+    private final HashMap<String, Aine> aineittain = new HashMap<>();
+    private final ArrayList<Moduulitieto> moduulit = new ArrayList<>();
+    private final HashMap<PalkkiEsitys, ArrayList<ValintaNappi>> esityksittain = new HashMap<>();
+    private final BitSet moduulinPerusteella = new BitSet();
+    private final BitSet aineenPerusteella = new BitSet();
+    private final SetChangeListener<String> aineidenKuuntelija;
+    private final SetChangeListener<String> moduulienKuuntelija;
+
+    /**Luo uuden {@code NakyvyysPalvelun} ja alkaa kuunnella annettuja {@code Asetuksia}.
+     *
+     * @param asetukset määrittää perusteet {@code ValintaNappien} piilottamiseen
+     */
+    public NakyvyysPalvelu(Asetukset asetukset) {
+        this.asetukset = asetukset;
+        aineidenKuuntelija = (muutos) -> paivitaAine(muutos.wasAdded()
+                ? muutos.getElementAdded() : muutos.getElementRemoved());
+        moduulienKuuntelija = (muutos) -> paivitaModuuli(muutos.wasAdded()
+                ? muutos.getElementAdded() : muutos.getElementRemoved());
+        asetukset.piilotetutAineet.addListener(aineidenKuuntelija);
+        asetukset.epakiinnostavatAineet.addListener(aineidenKuuntelija);
+        asetukset.piilotetutModuulit.addListener(moduulienKuuntelija);
+    }
+
+    /**Kertoo, onko annettu {@code Moduuli} piilotettu asetusten mukaan.
+     * <p>
+     * {@code Moduuli} on piilotettu, jos se on piilotettu kurssikoodinsa tai aineensa
+     * perusteella. Palvelulle rekisteröidyn {@code Moduulin} tieto luetaan bittijoukoista,
+     * muiden kysytään {@code Asetuksilta}.
+     *
+     * @param moduuli {@code Moduuli}, jonka piilotus halutaan tietää
+     * @return {@code true}, jos {@code moduuli} on piilotettu
+     */
+    public boolean onPiilotettu(Moduuli moduuli) {
+        Moduulitieto tieto = koodeittain.get(moduuli.getKoodi());
+        if(tieto == null || tieto.moduuli != moduuli) {
+            return asetukset.pitaisiPiilottaa(moduuli);
+        }
+        return moduulinPerusteella.get(tieto.indeksi) || aineenPerusteella.get(tieto.indeksi);
+    }
+
+    /**Poistaa palvelun kuuntelijat {@code Asetuksista} ja unohtaa rekisteröidyt
+     * {@code ValintaNapit}. Palvelua ei voi käyttää tämän jälkeen.
+     */
+    public void vapauta() {
+        asetukset.piilotetutAineet.removeListener(aineidenKuuntelija);
+        asetukset.epakiinnostavatAineet.removeListener(aineidenKuuntelija);
+        asetukset.piilotetutModuulit.removeListener(moduulienKuuntelija);
+        koodeittain.clear();
+        aineittain.clear();
+        moduulit.clear();
+        esityksittain.clear();
+        moduulinPerusteella.clear();
+        aineenPerusteella.clear();
+    }
+
+    /**Rekisteröi {@code ValintaNapin}, jonka näkyvyydestä annettu {@code PalkkiEsitys}
+     * huolehtii.
+     *
+     * @param nappi rekisteröitävä {@code ValintaNappi}
+     * @param esitys {@code PalkkiEsitys}, johon {@code nappi} kuuluu
+     */
+    void lisaa(ValintaNappi nappi, PalkkiEsitys esitys) {
+        Moduuli moduuli = nappi.getRyhma().getModuuli();
+        Moduulitieto tieto = koodeittain.get(moduuli.getKoodi());
+        if(tieto == null) {
+            tieto = new Moduulitieto(moduulit.size(), moduuli);
+            koodeittain.put(moduuli.getKoodi(), tieto);
+            moduulit.add(tieto);
+            moduulinPerusteella.set(tieto.indeksi, asetukset.piilotetutModuulit.contains(moduuli.getKoodi()));
+            aineenPerusteella.set(tieto.indeksi, asetukset.pitaisiPiilottaaAineenPerusteella(moduuli));
+
+            String tunnus = aineenTunnus(moduuli.getKoodi());
+            Aine aine = aineittain.get(tunnus);
+            if(aine == null) {
+                aine = new Aine(tunnus);
+                aineittain.put(tunnus, aine);
+            }
+            aine.moduulit.add(tieto);
+            if(sisaltaaKirjaimia(moduuli.getKoodi().substring(tunnus.length()))) {
+                aine.kirjaimiaLopussa = true;
+            }
+        }
+        tieto.napit.put(nappi, esitys);
+        esityksittain.computeIfAbsent(esitys, (avain) -> new ArrayList<>()).add(nappi);
+    }
+
+    /**Unohtaa kaikki annetun {@code PalkkiEsityksen} rekisteröimät {@code ValintaNapit}.
+     *
+     * @param esitys {@code PalkkiEsitys}, jonka {@code ValintaNapit} poistetaan
+     */
+    void poista(PalkkiEsitys esitys) {
+        ArrayList<ValintaNappi> napit = esityksittain.remove(esitys);
+        if(napit == null) {
+            return;
+        }
+        for(ValintaNappi nappi : napit) {
+            Moduulitieto tieto = koodeittain.get(nappi.getRyhma().getModuuli().getKoodi());
+            if(tieto != null) {
+                tieto.napit.remove(nappi);
+            }
+        }
+    }
+
+    /**Tarkistaa {@code Moduulit}, joiden kurssikoodi sisältää lisätyn tai poistetun aineen.
+     * <p>
+     * Jos aine on osa aineen tunnusta, kaikki tunnuksen {@code Moduulit} sisältävät sen.
+     * Pelkistä kirjaimista koostuva aine voi muuten löytyä vain sellaisen aineen
+     * {@code Moduuleista}, joiden koodissa on kirjaimia myös tunnuksen jälkeen.
+     */
+    private void paivitaAine(String koodi) {
+        boolean vainKirjaimia = !koodi.isEmpty() && aineenTunnus(koodi).length() == koodi.length();
+        for(Aine aine : aineittain.values()) {
+            if(aine.tunnus.contains(koodi)) {
+                aine.moduulit.forEach(this::paivita);
+            } else if(!vainKirjaimia || aine.kirjaimiaLopussa) {
+                for(Moduulitieto tieto : aine.moduulit) {
+                    if(tieto.moduuli.getKoodi().contains(koodi)) {
+                        paivita(tieto);
+                    }
+                }
+            }
+        }
+    }
+
+    /**Tarkistaa {@code Moduulin}, jonka kurssikoodi lisättiin tai poistettiin.
+     */
+    private void paivitaModuuli(String koodi) {
+        Moduulitieto tieto = koodeittain.get(koodi);
+        if(tieto != null) {
+            paivita(tieto);
+        }
+    }
+
+    /**Päivittää {@code Moduulin} piilotuksen ja, jos se muuttui, sen {@code ValintaNappien}
+     * näkyvyyden.
+     * <p>
+     * {@code ValintaNapit} näytetään, kun kumpikaan peruste ei enää piilota {@code Moduulia}.
+     * Kun kurssikoodi merkitään piilotettavaksi, piilotetaan kaikki {@code ValintaNapit},
+     * ja kun {@code Moduuli} piilotetaan pelkän aineen perusteella, vain valitsemattomat.
+     */
+    private void paivita(Moduulitieto tieto) {
+        boolean moduulinVuoksi = asetukset.piilotetutModuulit.contains(tieto.moduuli.getKoodi());
+        boolean aineenVuoksi = asetukset.pitaisiPiilottaaAineenPerusteella(tieto.moduuli);
+        boolean oliModuulinVuoksi = moduulinPerusteella.get(tieto.indeksi);
+        boolean oliPiilotettu = oliModuulinVuoksi || aineenPerusteella.get(tieto.indeksi);
+        moduulinPerusteella.set(tieto.indeksi, moduulinVuoksi);
+        aineenPerusteella.set(tieto.indeksi, aineenVuoksi);
+        
+        if(!moduulinVuoksi && !aineenVuoksi) {
+            if(oliPiilotettu) {
+                tieto.napit.forEach((nappi, esitys) -> esitys.asetaPiilotetuksi(nappi, false, false));
+            }
+        } else if(moduulinVuoksi) {
+            if(!oliModuulinVuoksi) {
+                tieto.napit.forEach((nappi, esitys) -> esitys.asetaPiilotetuksi(nappi, true, true));
+            }
+        } else if(!oliPiilotettu) {
+            tieto.napit.forEach((nappi, esitys) -> esitys.asetaPiilotetuksi(nappi, true, false));
+        }
+    }
+
+    /**Palauttaa kurssikoodin alussa olevat kirjaimet.
+     */
+    private static String aineenTunnus(String koodi) {
+        int loppu = 0;
+        while(loppu < koodi.length() && Character.isLetter(koodi.charAt(loppu))) {
+            loppu++;
+        }
+        return koodi.substring(0, loppu);
+    }
+
+    private static boolean sisaltaaKirjaimia(String teksti) {
+        for(int i = 0; i < teksti.length(); i++) {
+            if(Character.isLetter(teksti.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**Yhden {@code Moduulin} indeksi bittijoukoissa sekä sen {@code ValintaNapit} ja
+     * niiden {@code PalkkiEsitykset}.
+     */
+    private static final class Moduulitieto {
+
+        private final int indeksi;
+        private final Moduuli moduuli;
+        private final LinkedHashMap<ValintaNappi, PalkkiEsitys> napit = new LinkedHashMap<>();
+
+        private Moduulitieto(int indeksi, Moduuli moduuli) {
+            this.indeksi = indeksi;
+            this.moduuli = moduuli;
+        }
+    }
+
+    /**Saman aineen tunnuksella alkavat {@code Moduulit}.
+     */
+    private static final class Aine {
+
+        private final String tunnus;
+        private final ArrayList<Moduulitieto> moduulit = new ArrayList<>();
+        private boolean kirjaimiaLopussa;
+
+        private Aine(String tunnus) {
+            this.tunnus = tunnus;
+        }
+    }
+}
@@ -16,12 +16,11 @@
  */
 package kva.ui.tarjotinnakyma;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import javafx.collections.SetChangeListener;
 import javafx.geometry.Orientation;
 import javafx.scene.Node;
 import javafx.scene.control.Alert;
@@ -36,6 +35,8 @@ import javafx.scene.text.Font;
 import kva.logiikka.Kurssitarjotin;
 import kva.logiikka.PalkinTunniste;
 import kva.logiikka.Ryhma;
+import kva.logiikka.tapahtumat.PulssiJakelija;
+import kva.logiikka.tapahtumat.ValintaKuuntelija;
 import kva.ui.Asetukset;
 
 /**Luo esityksen, joka kuvaa yksittäistä kurssitarjottimessa esiintyvää palkkia.
@@ -44,9 +45,12 @@ import kva.ui.Asetukset;
  * ja huolehtii niiden esittämisestä {@link kva.logiikka.Kurssitarjotin}-olion tilan 
  * mukaisesti: valitut ryhmät korostetaan, ja muualta valitut ryhmät näytetään erillään 
  * muista omassa sarakkeessaan. Lisäksi luokka piilottaa halutut {@code ValintaNapit} 
- * sen mukaan mitä {@link kva.ui.Asetukset} käskee.
+ * sen mukaan mitä {@link kva.ui.Asetukset} käskee. Asetusten muutokset välitetään 
+ * {@link kva.ui.tarjotinnakyma.NakyvyysPalvelu}n kautta, joka voi olla useamman 
+ * {@code PalkkiEsityksen} yhteinen.
  * <p>
- * Palkkia kuvaava käyttöliittymäkomponentti saadaan metodilla {@link #getEsitys()}.
+ * Palkkia kuvaava käyttöliittymäkomponentti saadaan metodilla {@link #getEsitys()}. 
+ * Kun esitys poistetaan käyttöliittymästä, sen kuuntelijat poistetaan metodilla {@link #vapauta()}.
  *
  * @author Väinö Viinikka
  * @since Kurssivalinta-avustin 1.0
@@ -59,7 +63,10 @@ public class PalkkiEsitys {
     private ValintaNappiLista olennaiset;
     private ValintaNappiLista muualtaValitut;
     private Collection<ValintaNappi> sisalto;
-    private final Asetukset asetukset;
+    private final PulssiJakelija jakelija;
+    private final NakyvyysPalvelu nakyvyys;
+    private final boolean omaNakyvyys;
+    private final LinkedHashMap<Ryhma, ValintaKuuntelija> kuuntelijat = new LinkedHashMap<>();
 
     /**Luo uuden {@code PalkkiEsityksen}.
      * 
@@ -69,9 +76,44 @@ public class PalkkiEsitys {
      * @param asetukset määrittää perusteet {@code ValintaNappien} piilottamiseen
      */
     public PalkkiEsitys(Kurssitarjotin tarjotin, PalkinTunniste palkki, Asetukset asetukset) {
+        this(tarjotin, palkki, asetukset, null);
+    }
+
+    /**Luo uuden {@code PalkkiEsityksen}, joka päivittää {@code ValintaNapit} koottuina 
+     * kerran JavaFX:n pulssia kohden.
+     * 
+     * @param tarjotin {@code Kurssitarjotin}, jonka tiettyä palkkia {@code PalkkiEsitys}
+     *        kuvailee
+     * @param palkki sen palkin tunniste, jota {@code PalkkiEsitys} kuvailee
+     * @param asetukset määrittää perusteet {@code ValintaNappien} piilottamiseen
+     * @param jakelija {@code PulssiJakelija}, jonka kautta valintojen muutokset 
+     *        välitetään, tai {@code null}, jos ne käsitellään välittömästi
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public PalkkiEsitys(Kurssitarjotin tarjotin, PalkinTunniste palkki, Asetukset asetukset, PulssiJakelija jakelija) {
+        this(tarjotin, palkki, asetukset, jakelija, null);
+    }
+
+    /**Luo uuden {@code PalkkiEsityksen}, jonka {@code ValintaNappien} näkyvyyttä 
+     * päivitetään annetun {@code NakyvyysPalvelun} kautta.
+     * 
+     * @param tarjotin {@code Kurssitarjotin}, jonka tiettyä palkkia {@code PalkkiEsitys}
+     *        kuvailee
+     * @param palkki sen palkin tunniste, jota {@code PalkkiEsitys} kuvailee
+     * @param asetukset määrittää perusteet {@code ValintaNappien} piilottamiseen
+     * @param jakelija {@code PulssiJakelija}, jonka kautta valintojen muutokset 
+     *        välitetään, tai {@code null}, jos ne käsitellään välittömästi
+     * @param nakyvyys samoja {@code Asetuksia} kuunteleva {@code NakyvyysPalvelu}, 
+     *        tai {@code null}, jolloin {@code PalkkiEsitys} luo oman palvelunsa
+     * @since Kurssivalinta-avustin 1.1
+     */
+    public PalkkiEsitys(Kurssitarjotin tarjotin, PalkinTunniste palkki, Asetukset asetukset, 
+            PulssiJakelija jakelija, NakyvyysPalvelu nakyvyys) {
         this.tarjotin = tarjotin;
         this.palkki = palkki;
-        this.asetukset = asetukset;
+        this.jakelija = jakelija;
+        this.omaNakyvyys = nakyvyys == null;
+        this.nakyvyys = omaNakyvyys ? new NakyvyysPalvelu(asetukset) : nakyvyys;
         
         BorderPane kehikko = new BorderPane();
         
@@ -86,12 +128,8 @@ public class PalkkiEsitys {
         kehikko.setRight(muualtaValitut.getNode());
         
         sisalto = new HashSet<>();
-        alustaAsetustenKuuntelu();
         
-        
-        tarjotin.getKaikkiRyhmat().stream()
-                .filter((ryhma) -> ryhma.getSijainnit().contains(palkki))
-                .forEach((ryhma) -> lisaaRyhma(ryhma));
+        tarjotin.getPalkinRyhmat(palkki).forEach((ryhma) -> lisaaRyhma(ryhma));
         
         esitys = kehikko;
     }
@@ -122,35 +160,39 @@ public class PalkkiEsitys {
     private void lisaaRyhma(Ryhma ryhma) {
         ValintaNappi nappi = new ValintaNappi(ryhma);
         sisalto.add(nappi);
-        if(!asetukset.pitaisiPiilottaa(ryhma.getModuuli())) {
+        nakyvyys.lisaa(nappi, this);
+        if(!nakyvyys.onPiilotettu(ryhma.getModuuli())) {
             lisaaNakyviin(nappi);
         }
         
-        ryhma.lisaaValintaKuuntelija((t) -> {
+        ValintaKuuntelija kuuntelija = (t) -> {
             switch(t.getTyyppi()) {
                 case VALITTU:
                     nappi.setOnValittu(true);
                     break;
                 case VALINTA_POISTETTU:
                     nappi.setOnValittu(false);
-                    if(asetukset.pitaisiPiilottaa(ryhma.getModuuli())) {
+                    if(nakyvyys.onPiilotettu(ryhma.getModuuli())) {
                         poistaNakyvista(nappi);
                     }
                     break;
                 case VALITTU_MUUALTA:
-                    if(!asetukset.pitaisiPiilottaa(ryhma.getModuuli())) {
+                    if(!nakyvyys.onPiilotettu(ryhma.getModuuli())) {
                         olennaiset.poistaNappi(nappi);
                         muualtaValitut.lisaaNappi(nappi);
                     }
                     break;
                 case VALINTA_POISTETTU_MUUALTA:
-                    if(!asetukset.pitaisiPiilottaa(ryhma.getModuuli())) {
+                    if(!nakyvyys.onPiilotettu(ryhma.getModuuli())) {
                         muualtaValitut.poistaNappi(nappi);
                         olennaiset.lisaaNappi(nappi);
                     }
                     break;
             }
-        });
+        };
+        ValintaKuuntelija lisattava = jakelija == null ? kuuntelija : jakelija.kokoava(kuuntelija);
+        kuuntelijat.put(ryhma, lisattava);
+        ryhma.lisaaValintaKuuntelija(lisattava);
         
         nappi.setOnMouseClicked((me) -> {
             if(me.getButton() == MouseButton.PRIMARY) {
@@ -163,50 +205,27 @@ public class PalkkiEsitys {
         });
     }
     
-    /**Lisää {@code Asetukset}-oliolle tarvittvat kuuntelijat, jotka huolehtivat {@code ValintaNappien} 
-     * näyttämisestä ja piilottamisesta, kun asetuksia muutetaan.
+    /**Poistaa {@code PalkkiEsityksen} kuuntelijat {@code Ryhmista} ja sen {@code ValintaNapit} 
+     * {@code NakyvyysPalvelusta}. Jos palvelu on esityksen oma, se vapautetaan, jolloin 
+     * sen kuuntelijat poistetaan {@code Asetuksista}.
      * <p>
-     * Metodia kutsutaan ainoastaan kerran konstruktorista.
+     * {@code Asetukset} elävät koko sovelluksen ajan, ja {@code Kurssitarjotin} voi 
+     * jäädä välimuistiin, joten kuuntelijat pitäisivät muuten poistetun esityksen ja 
+     * sen {@code ValintaNapit} muistissa, ja esitystä päivitettäisiin edelleen jokaisen 
+     * asetuksen muutoksen yhteydessä. Metodia kutsutaan, kun esitys poistetaan 
+     * käyttöliittymästä, eikä esitystä voi käyttää sen jälkeen.
      * 
+     * @since Kurssivalinta-avustin 1.1
      */
-    private void alustaAsetustenKuuntelu() {
-        SetChangeListener<String> kuuntelija = (muutos) -> {
-            if(muutos.wasAdded()) {
-                sisalto.stream()
-                        .filter((nappi) -> nappi.getText().contains(muutos.getElementAdded()))
-                        .filter((nappi) -> asetukset.pitaisiPiilottaa(nappi.getRyhma().getModuuli()))
-                        .filter((nappi) -> !nappi.getRyhma().OnValittu())
-                        .forEach((nappi) -> {
-                            poistaNakyvista(nappi);
-                        });
-            } else {
-                sisalto.stream()
-                        .filter((nappi) -> nappi.getText().contains(muutos.getElementRemoved()))
-                        .filter((nappi) -> !asetukset.pitaisiPiilottaa(nappi.getRyhma().getModuuli()))
-                        .forEach((nappi) -> {
-                            lisaaNakyviin(nappi);
-                        });
-            }
-        };
-        asetukset.piilotetutAineet.addListener(kuuntelija);
-        asetukset.epakiinnostavatAineet.addListener(kuuntelija);
-        
-        asetukset.piilotetutModuulit.addListener((SetChangeListener.Change<? extends String> change) -> {
-            if(change.wasAdded()) {
-                sisalto.stream()
-                        .filter((nappi) -> nappi.getRyhma().getModuuli().getKoodi().equals(change.getElementAdded()))
-                        .forEach((nappi) -> {
-                            poistaNakyvista(nappi);
-                        });
-            } else {
-                sisalto.stream()
-                        .filter((nappi) -> nappi.getRyhma().getModuuli().getKoodi().equals(change.getElementRemoved()))
-                        .filter((nappi) -> !asetukset.pitaisiPiilottaa(nappi.getRyhma().getModuuli()))
-                        .forEach((nappi) -> {
-                            lisaaNakyviin(nappi);
-                        });
-            }
-        });
+    public void vapauta() {
+        if(omaNakyvyys) {
+            nakyvyys.vapauta();
+        } else {
+            nakyvyys.poista(this);
+        }
+        kuuntelijat.forEach((ryhma, kuuntelija) -> ryhma.poistaValintaKuuntelija(kuuntelija));
+        kuuntelijat.clear();
+        sisalto.forEach((nappi) -> nappi.setOnMouseClicked(null));
     }
     
     /**Kertoo, voidaanko parametrina annettu {@code Ryhma} valita.
@@ -221,12 +240,7 @@ public class PalkkiEsitys {
      * @return {@code true}, jos {@code tarkistettavan} voi merkitä valituksi
      */
     private boolean onkoValinnalleEstetta(Ryhma tarkistettava) {
-        ArrayList<Ryhma> paallekkaiset = tarkistettava.getTarjotin().getValitutRyhmat().stream()
-                .filter((ryhma) -> {
-                    return ryhma.getSijainnit().stream()
-                            .anyMatch((sijainti) -> tarkistettava.getSijainnit().contains(sijainti));
-                })
-                .collect(Collectors.toCollection(() -> new ArrayList<>()));
+        List<Ryhma> paallekkaiset = tarkistettava.getTarjotin().getPaallekkaisetValinnat(tarkistettava);
         
         if(!paallekkaiset.isEmpty()) {
             StringBuilder viesti = new StringBuilder("Valitsemasi ryhmä ")
@@ -291,6 +305,25 @@ public class PalkkiEsitys {
         }
     }
     
+    /**Näyttää tai piilottaa {@code ValintaNapin}, jonka {@code Moduulin} piilotus muuttui 
+     * asetuksissa. Valittu {@code ValintaNappi} piilotetaan vain, jos sen kurssikoodi 
+     * merkittiin piilotettavaksi.
+     * <p>
+     * Metodia kutsuu {@link kva.ui.tarjotinnakyma.NakyvyysPalvelu}.
+     * 
+     * @param nappi {@code ValintaNappi}, jonka näkyvyys muuttui
+     * @param piilotettu {@code true}, jos {@code Moduuli} piilotettiin
+     * @param kurssikoodinPerusteella {@code true}, jos {@code Moduuli} piilotettiin 
+     *        sen kurssikoodin perusteella
+     */
+    void asetaPiilotetuksi(ValintaNappi nappi, boolean piilotettu, boolean kurssikoodinPerusteella) {
+        if(!piilotettu) {
+            lisaaNakyviin(nappi);
+        } else if(kurssikoodinPerusteella || !nappi.getRyhma().OnValittu()) {
+            poistaNakyvista(nappi);
+        }
+    }
+    
     /**Poistaa annetun {@code ValintaNapin} näkyviltä.
      * 
      * @param nappi poistettava {@code ValintaNappi}